@@ -0,0 +1,52 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.AsyncEntityManager;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of find through an {@link AsyncEntityManager}, from the submission to the completion, with concurrent callers
+ * sharing a bounded executor. The sample mode reports the percentiles of the latency.
+ * The callers are as many as the bound of operations in flight, so no operation is rejected.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(AsyncFindBenchmark.CALLERS)
+@State(Scope.Benchmark)
+public class AsyncFindBenchmark {
+
+    static final int POOL_SIZE = 4;
+    static final int CALLERS = 4 * POOL_SIZE;
+
+    private static final int ROWS = 1000;
+
+    private BenchmarkDatabase database;
+    private AsyncEntityManager async;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(ROWS);
+        BasicEntityManager em = BasicEntityManager.create(database.getDataSource(), BenchmarkDatabase.CLASSES);
+        async = AsyncEntityManager.bounded(em, POOL_SIZE, CALLERS - POOL_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        async.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<User> find() {
+        return async.find(User.class, ThreadLocalRandom.current().nextLong(ROWS)).join();
+    }
+}
@@ -0,0 +1,159 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HSQLDB in memory database with the users table of the tests, each instance is a distinct database. The table of the
+ * {@link WideEntity} is created on demand.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    static final Set<Class<?>> CLASSES = Collections.singleton(User.class);
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final String[] WIDE_NAMES = {"text", "number", "amount", "date"};
+    private static final String[] WIDE_TYPES = {"VARCHAR(30)", "INTEGER", "BIGINT", "DATE"};
+
+    private final HikariDataSource dataSource = new HikariDataSource();
+
+    /**
+     * Create the database and insert users in the table
+     * @param rows the number of users inserted
+     */
+    BenchmarkDatabase(int rows) throws SQLException {
+        dataSource.setJdbcUrl("jdbc:hsqldb:mem:benchmark-" + COUNTER.incrementAndGet());
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users (" +
+                    "id BIGINT IDENTITY PRIMARY KEY, " +
+                    "first_name VARCHAR(30) NOT NULL, " +
+                    "last_name VARCHAR(30), " +
+                    "email VARCHAR(50), " +
+                    "birthDate DATE)");
+        }
+        insertUsers(rows);
+    }
+
+    HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Insert users with plain JDBC, outside of the code measured
+     */
+    void insertUsers(int rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO users (first_name, last_name, email, birthDate) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                statement.setString(1, "First" + i);
+                statement.setString(2, "Last" + i);
+                statement.setString(3, "user" + i + "@example.com");
+                statement.setObject(4, Date.valueOf(LocalDate.of(1970, 1, 1).plusDays(i % 10_000)));
+                statement.addBatch();
+                if (i % 1000 == 999 || i == rows - 1) {
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the table of the {@link WideEntity} and insert rows in it
+     * @param rows the number of rows inserted
+     */
+    void createWideTable(int rows) throws SQLException {
+        StringBuilder columns = new StringBuilder("id BIGINT PRIMARY KEY");
+        StringBuilder parameters = new StringBuilder("?");
+        for (int i = 0; i < WideEntity.COLUMNS; i++) {
+            columns.append(", ").append(WIDE_NAMES[i % 4]).append(i).append(' ').append(WIDE_TYPES[i % 4]);
+            parameters.append(", ?");
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE wide (" + columns + ")");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO wide VALUES (" + parameters + ")")) {
+                for (int row = 0; row < rows; row++) {
+                    statement.setLong(1, row);
+                    for (int i = 0; i < WideEntity.COLUMNS; i++) {
+                        switch (i % 4) {
+                            case 0:
+                                statement.setString(i + 2, "value " + row);
+                                break;
+                            case 1:
+                                statement.setInt(i + 2, row);
+                                break;
+                            case 2:
+                                statement.setLong(i + 2, row * 1000L);
+                                break;
+                            default:
+                                statement.setDate(i + 2, Date.valueOf(LocalDate.of(1970, 1, 1).plusDays(row % 10_000)));
+                        }
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * @return the id of the user inserted
+     */
+    long insertUser() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO users (first_name, last_name, email) VALUES ('Ada', 'Lovelace', 'ada@example.com')",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Delete the users with an id above a bound
+     */
+    void deleteUsersAfter(long id) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM users WHERE id > ?")) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+    }
+
+    static User newUser() {
+        User user = new User();
+        user.setFirstName("Ada");
+        user.setLastName("Lovelace");
+        user.setEmail("ada@example.com");
+        user.setBirthDate(LocalDate.of(1815, 12, 10));
+        return user;
+    }
+
+    @Override
+    public void close() {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        dataSource.close();
+    }
+}
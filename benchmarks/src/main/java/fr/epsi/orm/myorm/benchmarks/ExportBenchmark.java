@@ -0,0 +1,75 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import fr.epsi.orm.myorm.persistence.BulkFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of a table of {@value #ROWS} users to a file, by the BulkExporter and by findAll followed by the serialization
+ * of the entities. The scores are in rows per second, run with <code>-prof gc</code> to get the bytes allocated per row
+ * (<code>gc.alloc.rate.norm</code>).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ExportBenchmark.ROWS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    static final int ROWS = 10_000;
+
+    private BenchmarkDatabase database;
+    private BasicEntityManager em;
+    private Path file;
+
+    @Setup
+    public void setup() throws SQLException, IOException {
+        database = new BenchmarkDatabase(ROWS);
+        em = BasicEntityManager.create(database.getDataSource(), BenchmarkDatabase.CLASSES);
+        file = Files.createTempFile("export-benchmark", ".txt");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public long exportCsv() throws SQLException, IOException {
+        return em.bulkExporter(User.class).export(file);
+    }
+
+    @Benchmark
+    public long exportNdjson() throws SQLException, IOException {
+        return em.bulkExporter(User.class).format(BulkFormat.NDJSON).export(file);
+    }
+
+    /**
+     * The export written by hand before the BulkExporter, the entities are all read before being written
+     */
+    @Benchmark
+    public long findAllThenWriteCsv() throws SQLException, IOException {
+        long rows = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,first_name,last_name,email,birthDate\n");
+            for (User user : em.findAll(User.class)) {
+                writer.write(user.getId() + "," + user.getFirstName() + "," + user.getLastName() + ","
+                        + user.getEmail() + "," + user.getBirthDate() + "\n");
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
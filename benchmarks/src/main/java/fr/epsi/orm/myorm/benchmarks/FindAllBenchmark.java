@@ -0,0 +1,43 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query and mapping of a whole table by findAll, for several sizes of table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindAllBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private BasicEntityManager em;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(rows);
+        em = BasicEntityManager.create(database.getDataSource(), BenchmarkDatabase.CLASSES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<User> findAll() throws SQLException {
+        return em.findAll(User.class);
+    }
+}
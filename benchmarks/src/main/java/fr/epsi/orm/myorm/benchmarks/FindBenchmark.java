@@ -0,0 +1,52 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import fr.epsi.orm.myorm.persistence.MetricsListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip of find by id, without listener and with a {@link MetricsListener} to measure the cost of the metrics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"none", "metrics"})
+    public String listener;
+
+    private BenchmarkDatabase database;
+    private BasicEntityManager em;
+    private long id = 0;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(ROWS);
+        BasicEntityManager.Builder builder = BasicEntityManager.builder(database.getDataSource(), BenchmarkDatabase.CLASSES);
+        if (listener.equals("metrics")) {
+            builder.listener(new MetricsListener());
+        }
+        em = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<User> find() throws SQLException {
+        id = (id + 1) % ROWS;
+        return em.find(User.class, id);
+    }
+}
@@ -0,0 +1,105 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.EntityMetadata;
+import fr.epsi.orm.myorm.persistence.MappingHelper;
+import fr.epsi.orm.myorm.persistence.RowMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping between an entity and a row without database round-trip : the row is read again and again from a
+ * ResultSet positioned on it. The narrow User entity of 5 columns is compared with the {@link WideEntity} of 33 columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MappingBenchmark {
+
+    @Param({"user", "wide"})
+    public String entity;
+
+    private BenchmarkDatabase database;
+    private Connection connection;
+    private Statement statement;
+    private ResultSet resultSet;
+    private Mapping<?> mapping;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(1);
+        database.createWideTable(1);
+        connection = database.getDataSource().getConnection();
+        statement = connection.createStatement();
+        if (entity.equals("wide")) {
+            resultSet = statement.executeQuery("SELECT * FROM wide");
+            resultSet.next();
+            mapping = new Mapping<>(EntityMetadata.of(WideEntity.class), resultSet);
+        } else {
+            resultSet = statement.executeQuery("SELECT * FROM users");
+            resultSet.next();
+            mapping = new Mapping<>(EntityMetadata.of(User.class), resultSet);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        resultSet.close();
+        statement.close();
+        connection.close();
+        database.close();
+    }
+
+    /**
+     * The reflective mapping, the columns are resolved for each row
+     */
+    @Benchmark
+    public Object mapToInstance() throws SQLException {
+        return mapping.mapToInstance(resultSet);
+    }
+
+    /**
+     * The mapping used by the EntityManager, the mapper generated at compile time with the columns resolved once
+     */
+    @Benchmark
+    public Object rowMapper() throws SQLException {
+        return mapping.rowMapper.map(resultSet);
+    }
+
+    @Benchmark
+    public Map<String, Object> entityToParams() {
+        return mapping.entityToParams();
+    }
+
+    /**
+     * The metadata, the row mapper and an instance of the entity mapped
+     */
+    private static final class Mapping<T> {
+        final EntityMetadata<T> metadata;
+        final RowMapper<T> rowMapper;
+        final T instance;
+
+        Mapping(EntityMetadata<T> aMetadata, ResultSet resultSet) throws SQLException {
+            metadata = aMetadata;
+            rowMapper = MappingHelper.getMapper(aMetadata).rowMapper(resultSet.getMetaData());
+            instance = rowMapper.map(resultSet);
+        }
+
+        T mapToInstance(ResultSet resultSet) throws SQLException {
+            return MappingHelper.mapToInstance(resultSet, metadata);
+        }
+
+        Map<String, Object> entityToParams() {
+            return MappingHelper.entityToParams(instance, metadata);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import fr.epsi.orm.myorm.persistence.Page;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read of a page at increasing depths in the table, with findPage which seeks the page by id and with an OFFSET.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaginationBenchmark {
+
+    private static final int ROWS = 200_000;
+    private static final int PAGE_SIZE = 50;
+    private static final String OFFSET_SQL =
+            "SELECT id, first_name, last_name, email, birthDate FROM users ORDER BY id LIMIT ? OFFSET ?";
+
+    @Param({"0", "10000", "100000", "190000"})
+    public int depth;
+
+    private BenchmarkDatabase database;
+    private BasicEntityManager em;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(ROWS);
+        em = BasicEntityManager.create(database.getDataSource(), BenchmarkDatabase.CLASSES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Page<User> findPage() throws SQLException {
+        return em.findPage(User.class, depth == 0 ? null : (long) depth - 1, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void offset(Blackhole blackhole) throws SQLException {
+        try (Connection connection = database.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(OFFSET_SQL)) {
+            statement.setInt(1, PAGE_SIZE);
+            statement.setInt(2, depth);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    blackhole.consume(resultSet.getLong(1));
+                }
+            }
+        }
+    }
+}
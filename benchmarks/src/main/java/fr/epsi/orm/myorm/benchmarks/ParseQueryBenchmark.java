@@ -0,0 +1,40 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Parsing of the named parameters of a SQL statement, served by the cache of the parsed statements or not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseQueryBenchmark {
+
+    private static final String SQL = "INSERT INTO users (first_name, last_name, email, birthDate, city, country, phone, company) " +
+            "VALUES (:firstName, :lastName, :email, :birthDate, :city, :country, :phone, :company)";
+
+    /**
+     * More distinct statements than the cache holds, so almost each of them is parsed
+     */
+    private final String[] distinct = IntStream.range(0, 16_384).mapToObj(i -> SQL + " -- " + i).toArray(String[]::new);
+    private int next = 0;
+
+    @Benchmark
+    public List<?> parseQueryCached() {
+        return NamedPreparedStatement.parseQuery(SQL);
+    }
+
+    @Benchmark
+    public List<?> parseQuery() {
+        next = (next + 1) % distinct.length;
+        return NamedPreparedStatement.parseQuery(distinct[next]);
+    }
+}
@@ -0,0 +1,68 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write then read of every persistent field of a User, with the cached {@link PropertyAccessor} and with the
+ * Introspector lookup on each access formerly done by ReflectionUtil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyAccessBenchmark {
+
+    private final Field[] fields = Stream.of("id", "firstName", "lastName", "email", "birthDate")
+            .map(PropertyAccessBenchmark::field)
+            .toArray(Field[]::new);
+    private final Object[] values = {1L, "Linus", "Torvald", "linus.torvald@linux.org", LocalDate.of(1969, 12, 28)};
+    private final PropertyAccessor[] accessors = Stream.of(fields).map(PropertyAccessor::of).toArray(PropertyAccessor[]::new);
+
+    @Benchmark
+    public User accessor(Blackhole blackhole) {
+        User user = new User();
+        for (int i = 0; i < accessors.length; i++) {
+            accessors[i].set(user, values[i]);
+            blackhole.consume(accessors[i].get(user));
+        }
+        return user;
+    }
+
+    @Benchmark
+    public User introspector(Blackhole blackhole) throws ReflectiveOperationException, IntrospectionException {
+        User user = new User();
+        for (int i = 0; i < fields.length; i++) {
+            descriptor(fields[i]).getWriteMethod().invoke(user, values[i]);
+            blackhole.consume(descriptor(fields[i]).getReadMethod().invoke(user));
+        }
+        return user;
+    }
+
+    private static Field field(String name) {
+        try {
+            return User.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static PropertyDescriptor descriptor(Field field) throws IntrospectionException {
+        return Stream.of(Introspector.getBeanInfo(field.getDeclaringClass()).getPropertyDescriptors())
+                .filter(pd -> pd.getName().equals(field.getName()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No property " + field.getName()));
+    }
+}
@@ -0,0 +1,51 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.Id;
+
+import java.time.LocalDate;
+
+/**
+ * Entity of {@value #COLUMNS} columns besides its id, cycling over the text, integer, long and date types, to measure
+ * the mapping of wide rows. The fields are package-private without accessors, the generated mapper reads them directly.
+ */
+@Entity(table = "wide")
+public class WideEntity {
+
+    static final int COLUMNS = 32;
+
+    @Id
+    Long id;
+    String text0;
+    Integer number1;
+    Long amount2;
+    LocalDate date3;
+    String text4;
+    Integer number5;
+    Long amount6;
+    LocalDate date7;
+    String text8;
+    Integer number9;
+    Long amount10;
+    LocalDate date11;
+    String text12;
+    Integer number13;
+    Long amount14;
+    LocalDate date15;
+    String text16;
+    Integer number17;
+    Long amount18;
+    LocalDate date19;
+    String text20;
+    Integer number21;
+    Long amount22;
+    LocalDate date23;
+    String text24;
+    Integer number25;
+    Long amount26;
+    LocalDate date27;
+    String text28;
+    Integer number29;
+    Long amount30;
+    LocalDate date31;
+}
@@ -0,0 +1,99 @@
+package fr.epsi.orm.myorm.benchmarks;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trips of save and delete, each one in its own Session and auto-commit transaction, and the insert of
+ * {@value #BATCH} users by saveAll compared with a loop of save. The scores of the batches are per user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int BATCH = 1000;
+
+    private BenchmarkDatabase database;
+    private BasicEntityManager em;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(ROWS);
+        em = BasicEntityManager.create(database.getDataSource(), BenchmarkDatabase.CLASSES);
+    }
+
+    /**
+     * Keep the size of the table stable between the iterations
+     */
+    @TearDown(Level.Iteration)
+    public void deleteSaved() throws SQLException {
+        database.deleteUsersAfter(ROWS - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<User> save() throws SQLException {
+        return em.save(BenchmarkDatabase.newUser());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<User> saveAll() throws SQLException {
+        return em.saveAll(newUsers());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<User> saveLoop() throws SQLException {
+        List<User> users = newUsers();
+        for (User user : users) {
+            em.save(user);
+        }
+        return users;
+    }
+
+    private static List<User> newUsers() {
+        List<User> users = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            users.add(BenchmarkDatabase.newUser());
+        }
+        return users;
+    }
+
+    @Benchmark
+    public boolean delete(RowToDelete row) {
+        return em.delete(row.user);
+    }
+
+    /**
+     * The row deleted by each invocation is inserted outside of the measure. An invocation lasts several
+     * microseconds, long enough for the timestamps of a per-invocation setup to be negligible.
+     */
+    @State(Scope.Thread)
+    public static class RowToDelete {
+
+        private User user;
+
+        @Setup(Level.Invocation)
+        public void insert(WriteBenchmark benchmark) throws SQLException {
+            user = BenchmarkDatabase.newUser();
+            user.setId(benchmark.database.insertUser());
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package fr.epsi.orm.myorm.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generate an <code>EntityMapper</code> named <code>EntityName_Mapper</code> for each top level class annotated
+ * with <code>@Entity</code>.
+ *
+ * The generated mapper reads and binds the fields through their accessors with the built-in codecs of
+ * <code>TypeCodecs</code>, the primitive fields being read with typed JDBC calls, and holds
+ * the SQL templates of the entity as constants, so no reflection is needed to map the entity at runtime.
+ * An entity is skipped, with a note, when one of its persistent fields has a type without constant codec, is an
+ * association or can't be accessed from its package : the entity manager then uses the reflective mapping.
+ *
+ * The processor is built apart from myorm so it is not shipped in its jar : the annotations of the entities are
+ * read by their qualified name, without depending on their classes.
+ */
+public class EntityMapperProcessor extends AbstractProcessor {
+
+    static final String MAPPER_SUFFIX = "_Mapper";
+
+    private static final String ANNOTATIONS = "fr.epsi.orm.myorm.annotation.";
+    private static final String ENTITY = ANNOTATIONS + "Entity";
+    private static final String ID = ANNOTATIONS + "Id";
+    private static final String COLUMN = ANNOTATIONS + "Column";
+    private static final String TRANSIENT = ANNOTATIONS + "Transient";
+    private static final String MANY_TO_ONE = ANNOTATIONS + "ManyToOne";
+    private static final String ONE_TO_MANY = ANNOTATIONS + "OneToMany";
+
+    private static final Map<String, String> CODECS = new HashMap<>();
+    private static final Map<String, String> PRIMITIVE_READERS = new HashMap<>();
+    static {
+        CODECS.put("java.lang.String", "STRING");
+        CODECS.put("java.lang.Integer", "INTEGER");
+        CODECS.put("java.lang.Long", "LONG");
+        CODECS.put("java.lang.Short", "SHORT");
+        CODECS.put("java.lang.Double", "DOUBLE");
+        CODECS.put("java.lang.Float", "FLOAT");
+        CODECS.put("java.lang.Boolean", "BOOLEAN");
+        CODECS.put("int", "PRIMITIVE_INT");
+        CODECS.put("long", "PRIMITIVE_LONG");
+        CODECS.put("short", "PRIMITIVE_SHORT");
+        CODECS.put("double", "PRIMITIVE_DOUBLE");
+        CODECS.put("float", "PRIMITIVE_FLOAT");
+        CODECS.put("boolean", "PRIMITIVE_BOOLEAN");
+        CODECS.put("java.math.BigDecimal", "BIG_DECIMAL");
+        CODECS.put("java.time.LocalDate", "LOCAL_DATE");
+        CODECS.put("java.time.LocalTime", "LOCAL_TIME");
+        CODECS.put("java.time.LocalDateTime", "LOCAL_DATE_TIME");
+        CODECS.put("java.time.Instant", "INSTANT");
+        CODECS.put("java.util.UUID", "UUID_TEXT");
+        CODECS.put("byte[]", "BYTES");
+        PRIMITIVE_READERS.put("int", "rs.getInt(%s)");
+        PRIMITIVE_READERS.put("long", "rs.getLong(%s)");
+        PRIMITIVE_READERS.put("short", "rs.getShort(%s)");
+        PRIMITIVE_READERS.put("double", "rs.getDouble(%s)");
+        PRIMITIVE_READERS.put("float", "rs.getFloat(%s)");
+        PRIMITIVE_READERS.put("boolean", "rs.getBoolean(%s)");
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ENTITY);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement entity : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWithAny(annotations.toArray(new TypeElement[0])))) {
+            if (entity.getNestingKind() != NestingKind.TOP_LEVEL || entity.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            readEntity(entity).ifPresent(this::write);
+        }
+        return false;
+    }
+
+    private Optional<EntityModel> readEntity(TypeElement entity) {
+        List<VariableElement> fields = ElementFilter.fieldsIn(entity.getEnclosedElements()).stream()
+                .filter(field -> !field.getModifiers().contains(Modifier.STATIC))
+                .filter(field -> !annotation(field, TRANSIENT).isPresent())
+                .collect(Collectors.toList());
+        List<VariableElement> idFields = fields.stream()
+                .filter(field -> annotation(field, ID).isPresent())
+                .collect(Collectors.toList());
+        if (idFields.size() != 1) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "An @Entity should declare one and only one persistent @Id field", entity);
+            return Optional.empty();
+        }
+        if (!hasAccessibleConstructor(entity)) {
+            return skip(entity, "no accessible no-arg constructor");
+        }
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(entity.getEnclosedElements());
+        List<FieldModel> columns = new ArrayList<>();
+        for (VariableElement field : fields) {
+            if (annotation(field, MANY_TO_ONE).isPresent() || annotation(field, ONE_TO_MANY).isPresent()) {
+                return skip(entity, "field " + field.getSimpleName() + " is an association");
+            }
+            String type = field.asType().toString();
+            if (!CODECS.containsKey(type)) {
+                return skip(entity, "type " + type + " of field " + field.getSimpleName() + " is not supported");
+            }
+            Optional<String> getter = findGetter(field, methods);
+            Optional<String> setter = findSetter(field, methods);
+            if (!getter.isPresent() || !setter.isPresent()) {
+                return skip(entity, "field " + field.getSimpleName() + " has no accessible getter or setter");
+            }
+            String columnName = annotation(field, COLUMN).map(column -> value(column, "name").toString())
+                    .filter(name -> !name.isEmpty())
+                    .orElse(field.getSimpleName().toString());
+            columns.add(new FieldModel(field.getSimpleName().toString(), columnName, type, getter.get(), setter.get(),
+                    annotation(field, ID).isPresent()));
+        }
+
+        String table = value(annotation(entity, ENTITY).get(), "table").toString();
+        if (table.isEmpty()) {
+            table = entity.getSimpleName().toString();
+        }
+        Element generation = (Element) value(annotation(idFields.get(0), ID).get(), "generation");
+        boolean idGenerated = generation.getSimpleName().contentEquals("IDENTITY");
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(entity);
+        return Optional.of(new EntityModel(entity, packageElement.getQualifiedName().toString(),
+                entity.getSimpleName().toString(), table, columns, idGenerated));
+    }
+
+    private static Optional<? extends AnnotationMirror> annotation(Element element, String name) {
+        return element.getAnnotationMirrors().stream()
+                .filter(mirror -> ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name))
+                .findFirst();
+    }
+
+    /**
+     * @return the value of an element of the annotation, its default value when it is not given
+     */
+    private Object value(AnnotationMirror annotation, String name) {
+        return processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet().stream()
+                .filter(element -> element.getKey().getSimpleName().contentEquals(name))
+                .map(element -> element.getValue().getValue())
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No element " + name + " in " + annotation));
+    }
+
+    private Optional<EntityModel> skip(TypeElement entity, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "No mapper generated for " + entity.getQualifiedName() + ", " + reason + " : the reflective mapping will be used", entity);
+        return Optional.empty();
+    }
+
+    private static boolean hasAccessibleConstructor(TypeElement entity) {
+        return ElementFilter.constructorsIn(entity.getEnclosedElements()).stream()
+                .anyMatch(constructor -> constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE));
+    }
+
+    private static Optional<String> findGetter(VariableElement field, List<ExecutableElement> methods) {
+        String suffix = capitalize(field.getSimpleName().toString());
+        Optional<String> getter = methods.stream()
+                .filter(method -> !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC))
+                .filter(method -> method.getParameters().isEmpty())
+                .filter(method -> method.getReturnType().toString().equals(field.asType().toString()))
+                .map(method -> method.getSimpleName().toString())
+                .filter(name -> name.equals("get" + suffix) || name.equals("is" + suffix))
+                .findFirst()
+                .map(name -> name + "()");
+        if (!getter.isPresent() && !field.getModifiers().contains(Modifier.PRIVATE)) {
+            return Optional.of(field.getSimpleName().toString());
+        }
+        return getter;
+    }
+
+    private static Optional<String> findSetter(VariableElement field, List<ExecutableElement> methods) {
+        String name = "set" + capitalize(field.getSimpleName().toString());
+        Optional<String> setter = methods.stream()
+                .filter(method -> !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC))
+                .filter(method -> method.getSimpleName().contentEquals(name))
+                .filter(method -> method.getParameters().size() == 1
+                        && method.getParameters().get(0).asType().toString().equals(field.asType().toString()))
+                .filter(method -> method.getThrownTypes().isEmpty())
+                .findFirst()
+                .map(method -> name + "(%s)");
+        if (!setter.isPresent() && !field.getModifiers().contains(Modifier.PRIVATE) && !field.getModifiers().contains(Modifier.FINAL)) {
+            return Optional.of(field.getSimpleName() + " = %s");
+        }
+        return setter;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void write(EntityModel entity) {
+        String mapperName = entity.simpleName + MAPPER_SUFFIX;
+        FieldModel id = entity.columns.stream().filter(c -> c.id).findFirst().get();
+        String whereId = " WHERE " + id.column + " = :" + id.field;
+        String selectSql = "SELECT " + entity.columns.stream().map(c -> c.column).collect(Collectors.joining(", ")) +
+                " FROM " + entity.table;
+        List<FieldModel> inserted = entity.columns.stream()
+                .filter(c -> !(c.id && entity.idGenerated))
+                .collect(Collectors.toList());
+        String insertSql = "INSERT INTO " + entity.table +
+                " (" + inserted.stream().map(c -> c.column).collect(Collectors.joining(", ")) + ")" +
+                " VALUES (" + inserted.stream().map(c -> ":" + c.field).collect(Collectors.joining(", ")) + ")";
+        String updateSql = "UPDATE " + entity.table + " SET " +
+                entity.columns.stream().filter(c -> !c.id).map(c -> c.column + " = :" + c.field).collect(Collectors.joining(", ")) +
+                whereId;
+        String deleteSql = "DELETE FROM " + entity.table + whereId;
+
+        StringBuilder source = new StringBuilder();
+        if (!entity.packageName.isEmpty()) {
+            source.append("package ").append(entity.packageName).append(";\n\n");
+        }
+        source.append("import fr.epsi.orm.myorm.lib.NamedPreparedStatement;\n")
+                .append("import fr.epsi.orm.myorm.lib.TypeCodecs;\n")
+                .append("import fr.epsi.orm.myorm.persistence.EntityMapper;\n")
+                .append("import fr.epsi.orm.myorm.persistence.MappingHelper;\n")
+                .append("import fr.epsi.orm.myorm.persistence.RowMapper;\n")
+                .append("import fr.epsi.orm.myorm.persistence.SqlTemplates;\n\n")
+                .append("import java.sql.ResultSetMetaData;\n")
+                .append("import java.sql.SQLException;\n\n")
+                .append("/**\n * Mapper of {@link ").append(entity.simpleName).append("} generated by ")
+                .append(getClass().getName()).append(", do not edit.\n */\n")
+                .append("public final class ").append(mapperName).append(" implements EntityMapper<").append(entity.simpleName).append("> {\n\n")
+                .append("    public static final String SELECT_BY_ID_SQL = ").append(literal(selectSql + whereId)).append(";\n")
+                .append("    public static final String SELECT_SQL = ").append(literal(selectSql)).append(";\n")
+                .append("    public static final String INSERT_SQL = ").append(literal(insertSql)).append(";\n")
+                .append("    public static final String UPDATE_SQL = ").append(literal(updateSql)).append(";\n")
+                .append("    public static final String DELETE_SQL = ").append(literal(deleteSql)).append(";\n\n")
+                .append("    private static final SqlTemplates SQL_TEMPLATES =\n")
+                .append("            new SqlTemplates(SELECT_BY_ID_SQL, SELECT_SQL, INSERT_SQL, UPDATE_SQL, DELETE_SQL);\n\n")
+                .append("    private static final String[] COLUMNS = {")
+                .append(entity.columns.stream().map(c -> literal(c.column)).collect(Collectors.joining(", "))).append("};\n\n")
+                .append("    @Override\n")
+                .append("    public Class<").append(entity.simpleName).append("> getEntityClass() {\n")
+                .append("        return ").append(entity.simpleName).append(".class;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public RowMapper<").append(entity.simpleName).append("> rowMapper(ResultSetMetaData metaData) throws SQLException {\n")
+                .append("        int[] indexes = MappingHelper.columnIndexes(metaData, COLUMNS);\n");
+        for (int i = 0; i < entity.columns.size(); i++) {
+            source.append("        int c").append(i).append(" = indexes[").append(i).append("];\n");
+        }
+        source.append("        return rs -> {\n")
+                .append("            ").append(entity.simpleName).append(" entity = new ").append(entity.simpleName).append("();\n");
+        for (int i = 0; i < entity.columns.size(); i++) {
+            FieldModel column = entity.columns.get(i);
+            String read = PRIMITIVE_READERS.containsKey(column.type)
+                    ? String.format(PRIMITIVE_READERS.get(column.type), "c" + i)
+                    : "TypeCodecs." + CODECS.get(column.type) + ".read(rs, c" + i + ")";
+            source.append("            entity.").append(String.format(column.setter, read)).append(";\n");
+        }
+        source.append("            return entity;\n")
+                .append("        };\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void bind(").append(entity.simpleName).append(" entity, NamedPreparedStatement statement) {\n");
+        for (FieldModel column : entity.columns) {
+            source.append("        statement.setParameter(").append(literal(column.field)).append(", entity.").append(column.getter)
+                    .append(", TypeCodecs.").append(CODECS.get(column.type)).append(");\n");
+        }
+        source.append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public SqlTemplates getSqlTemplates() {\n")
+                .append("        return SQL_TEMPLATES;\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = entity.packageName.isEmpty() ? mapperName : entity.packageName + "." + mapperName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, entity.element);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedName + " : " + e.getMessage(), entity.element);
+        }
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static final class EntityModel {
+        final Element element;
+        final String packageName;
+        final String simpleName;
+        final String table;
+        final List<FieldModel> columns;
+        final boolean idGenerated;
+
+        EntityModel(Element aElement, String aPackageName, String aSimpleName, String aTable, List<FieldModel> aColumns, boolean aIdGenerated) {
+            element = aElement;
+            packageName = aPackageName;
+            simpleName = aSimpleName;
+            table = aTable;
+            columns = aColumns;
+            idGenerated = aIdGenerated;
+        }
+    }
+
+    private static final class FieldModel {
+        final String field;
+        final String column;
+        final String type;
+        final String getter;
+        final String setter;
+        final boolean id;
+
+        FieldModel(String aField, String aColumn, String aType, String aGetter, String aSetter, boolean aId) {
+            field = aField;
+            column = aColumn;
+            type = aType;
+            getter = aGetter;
+            setter = aSetter;
+            id = aId;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package fr.epsi.orm.myorm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies that the instances of the entity are kept in the second level cache
+ * shared by the sessions of an EntityManager.
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    /**
+     * (Optional) Keep also the result of findAll for the entity, until the next write in its table.
+     * Defaults to false.
+     * @return true if the result of findAll is cached
+     */
+    boolean findAll() default false;
+}
@@ -0,0 +1,19 @@
+package fr.epsi.orm.myorm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies that the field references another entity through a foreign key column holding its id.
+ * The type of the field should be an entity managed by the same EntityManager. The column is named after the field
+ * followed by <code>_id</code>, unless a <code>Column</code> annotation gives its name.
+ *
+ * The referenced entities of the entities found are read with one query per association, whatever the number of
+ * entities found.
+ */
+@Target({ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ManyToOne {
+}
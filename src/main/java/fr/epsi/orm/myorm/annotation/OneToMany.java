@@ -0,0 +1,25 @@
+package fr.epsi.orm.myorm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies that the field holds the entities referencing this entity through one of their <code>ManyToOne</code>
+ * fields. The field is not a column, its type should be a <code>List</code> or a <code>Collection</code> of the
+ * referencing entity.
+ *
+ * The collections of the entities found are read with one query per association, the referencing entities being
+ * selected with an IN list of the ids of the entities found.
+ */
+@Target({ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneToMany {
+
+    /**
+     * The name of the <code>ManyToOne</code> field of the referencing entity
+     * @return the name of the field owning the association
+     */
+    String mappedBy();
+}
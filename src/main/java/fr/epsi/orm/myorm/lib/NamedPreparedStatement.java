@@ -1,30 +1,40 @@
 package fr.epsi.orm.myorm.lib;
 
 import java.sql.*;
-import java.time.LocalDate;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.UUID;
 
 /**
  * Created by fteychene on 16/05/17.
  */
-public class NamedPreparedStatement {
+public class NamedPreparedStatement implements AutoCloseable {
 
     private PreparedStatement statement;
-    private List<Parameter> parameters;
+    private String sql;
+    private ParsedSql parsed;
+    private TypeCodecRegistry codecs;
+    private boolean countingBoundBytes = false;
+    private long boundBytes = 0;
 
-    private NamedPreparedStatement(PreparedStatement aStatement, List<Parameter> aParameters) {
+    private NamedPreparedStatement(PreparedStatement aStatement, String aSql, ParsedSql aParsed, TypeCodecRegistry aCodecs) {
         super();
         statement = aStatement;
-        parameters = aParameters;
+        sql = aSql;
+        parsed = aParsed;
+        codecs = aCodecs;
+    }
+
+    /**
+     * Prepare a statement with named parameters, the <code>:name</code> parameters are sent to the driver as <code>?</code>
+     */
+    public static NamedPreparedStatement prepare(Connection connection, String sql, int generatedKeys, TypeCodecRegistry codecs) throws SQLException {
+        ParsedSql parsed = ParsedSql.of(sql);
+        return new NamedPreparedStatement(connection.prepareStatement(parsed.getSql(), generatedKeys), sql, parsed, codecs);
     }
 
     public static NamedPreparedStatement prepare(Connection connection, String sql, int generatedKeys) throws SQLException {
-        return new NamedPreparedStatement(connection.prepareStatement(sql, generatedKeys), parseQuery(sql));
+        return prepare(connection, sql, generatedKeys, TypeCodecRegistry.defaults());
     }
 
     public static NamedPreparedStatement prepare(Connection connection, String sql) throws SQLException {
@@ -35,13 +45,55 @@ public class NamedPreparedStatement {
         return prepare(connection, sql, Statement.RETURN_GENERATED_KEYS);
     }
 
+    /**
+     * Bind a value with the codec registered for its class
+     * @throws IllegalArgumentException if the value can't be bound
+     */
+    @SuppressWarnings("unchecked")
     public void setParameter(final String parameterName, Object value) {
         try {
-            Optional<Parameter> parameter = parameters.stream()
-                    .filter((p) -> p.name.equals(parameterName)).findFirst();
-            if (parameter.isPresent()) parameter.get().setParameter(statement, value);
+            int[] indexes = parsed.indexesOf(parameterName);
+            if (indexes.length == 0) return;
+            if (value == null) {
+                for (int index : indexes) statement.setNull(index, Types.NULL);
+                return;
+            }
+            TypeCodec<Object> codec = (TypeCodec<Object>) codecs.get(value.getClass());
+            for (int index : indexes) codec.write(statement, index, value);
+            if (countingBoundBytes) boundBytes += indexes.length * sizeOf(value);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Error when applying parameter to NamedPreparedStatement "+parameterName+" value "+value, e);
+        }
+    }
+
+    /**
+     * Bind a value with a codec resolved by the caller
+     * @throws IllegalArgumentException if the value can't be bound
+     */
+    public <T> void setParameter(final String parameterName, T value, TypeCodec<T> codec) {
+        try {
+            int[] indexes = parsed.indexesOf(parameterName);
+            for (int index : indexes) codec.writeNullable(statement, index, value);
+            if (countingBoundBytes) boundBytes += indexes.length * sizeOf(value);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Error when applying parameter to NamedPreparedStatement "+parameterName+" value "+value, e);
+        }
+    }
+
+    /**
+     * Bind the value of a property of an instance, the property is read without boxing if its type is primitive
+     * @throws IllegalArgumentException if the value can't be bound
+     */
+    public void setProperty(final String parameterName, Object source, PropertyAccessor accessor, TypeCodec<?> codec) {
+        try {
+            int[] indexes = parsed.indexesOf(parameterName);
+            for (int index : indexes) codec.writeProperty(statement, index, source, accessor);
+            if (countingBoundBytes && indexes.length > 0) {
+                Class<?> type = codec.getType();
+                boundBytes += indexes.length * (type.isPrimitive() ? sizeOfPrimitive(type) : sizeOf(accessor.get(source)));
+            }
         } catch (SQLException e) {
-            throw new IllegalArgumentException("Error when applying parameter to NamedPreparedStatement "+parameterName+" value "+value.toString(), e);
+            throw new IllegalArgumentException("Error when applying parameter to NamedPreparedStatement "+parameterName+" of "+source, e);
         }
     }
 
@@ -49,11 +101,68 @@ public class NamedPreparedStatement {
         parameters.forEach(this::setParameter);
     }
 
+    /**
+     * Count the bytes of the values bound from now on, read them with {@link #takeBoundBytes()}.
+     * The count is an estimate of the size of the values sent to the driver : the length of the strings and the
+     * byte arrays, the size of the numbers and the dates.
+     */
+    public void countBoundBytes() {
+        countingBoundBytes = true;
+    }
+
+    /**
+     * @return the estimated bytes bound since the last call, 0 if the bound bytes are not counted
+     */
+    public long takeBoundBytes() {
+        long bytes = boundBytes;
+        boundBytes = 0;
+        return bytes;
+    }
+
+    static int sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof Integer || value instanceof Float) {
+            return 4;
+        } else if (value instanceof Short || value instanceof Character) {
+            return 2;
+        } else if (value instanceof Byte || value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof UUID) {
+            return 36;
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).name().length();
+        }
+        return 8;
+    }
+
+    private static int sizeOfPrimitive(Class<?> type) {
+        if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return 8;
+    }
+
+    /**
+     * @return the SQL with named parameters this statement was prepared from
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the named parameters of a SQL statement with their position, in the order of the SQL
+     */
     public static List<Parameter> parseQuery(String sql) {
-        List<String> params = Arrays.stream(sql.split("[ ,=.()]")).filter((s) -> s.startsWith(":")).map((s) -> s.substring(1)).collect(Collectors.toList());
-        return IntStream.range(0, params.size())
-                .mapToObj((index) -> new Parameter(params.get(index), index+1))
-                .collect(Collectors.toList());
+        return ParsedSql.of(sql).getParameters();
     }
 
     public ResultSet executeQuery() throws SQLException {
@@ -72,6 +181,32 @@ public class NamedPreparedStatement {
         return statement.executeUpdate();
     }
 
+    public void setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    public void setMaxRows(int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    public void addBatch() throws SQLException {
+        statement.addBatch();
+    }
+
+    public int[] executeBatch() throws SQLException {
+        return statement.executeBatch();
+    }
+
+    public void clearParameters() throws SQLException {
+        statement.clearParameters();
+        boundBytes = 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
 
     static class Parameter {
         public final String name;
@@ -82,20 +217,6 @@ public class NamedPreparedStatement {
             index = aIndex;
         }
 
-        public void setParameter(PreparedStatement statement, Object value) throws SQLException {
-            if (value == null) {
-                statement.setNull(index, Types.INTEGER);
-            } else if (value.getClass().equals(String.class)) {
-                statement.setString(index, (String) value);
-            } else if (value.getClass().equals(Integer.class)) {
-                statement.setInt(index, (Integer) value);
-            } else if (value.getClass().equals(Long.class)) {
-                statement.setLong(index, (Long) value);
-            } else if (value.getClass().equals(LocalDate.class)) {
-                statement.setDate(index, Date.valueOf((LocalDate) value));
-            }
-        }
-
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -0,0 +1,164 @@
+package fr.epsi.orm.myorm.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A SQL statement with named parameters rewritten into a JDBC statement with positional parameters.
+ *
+ * The SQL is read in one pass : the <code>:name</code> parameters are replaced by <code>?</code>, while the string
+ * literals, the quoted identifiers, the comments and the <code>::</code> casts are copied unchanged. A positional
+ * <code>?</code> already in the SQL keeps its position. A name used several times is bound at each of its positions.
+ * The parsed statements are cached by SQL string.
+ */
+final class ParsedSql {
+
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, ParsedSql> CACHE = new ConcurrentHashMap<>();
+    private static final int[] NO_INDEX = new int[0];
+
+    private final String sql;
+    private final List<NamedPreparedStatement.Parameter> parameters;
+    private final Map<String, int[]> indexes;
+
+    private ParsedSql(String aSql, List<NamedPreparedStatement.Parameter> aParameters, Map<String, int[]> aIndexes) {
+        sql = aSql;
+        parameters = aParameters;
+        indexes = aIndexes;
+    }
+
+    /**
+     * Get the parsed statement of a SQL string, parsed at its first use
+     * @param namedSql the SQL with <code>:name</code> parameters
+     * @return the parsed statement
+     */
+    static ParsedSql of(String namedSql) {
+        ParsedSql parsed = CACHE.get(namedSql);
+        if (parsed == null) {
+            parsed = parse(namedSql);
+            // Statements built at runtime could fill the cache, it is emptied at the bound so the statements
+            // used often are cached again
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(namedSql, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse a SQL string without using the cache
+     * @param namedSql the SQL with <code>:name</code> parameters
+     * @return the parsed statement
+     */
+    static ParsedSql parse(String namedSql) {
+        int length = namedSql.length();
+        StringBuilder sql = new StringBuilder(length);
+        List<NamedPreparedStatement.Parameter> parameters = new ArrayList<>();
+        int position = 0;
+        // The text between the parameters is copied in one append, up to the start of the next parameter
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            char c = namedSql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(namedSql, i, c);
+            } else if (c == '-' && i + 1 < length && namedSql.charAt(i + 1) == '-') {
+                i = skipLineComment(namedSql, i);
+            } else if (c == '/' && i + 1 < length && namedSql.charAt(i + 1) == '*') {
+                i = skipBlockComment(namedSql, i);
+            } else if (c == '?') {
+                position++;
+                i++;
+            } else if (c == ':' && i + 1 < length && namedSql.charAt(i + 1) == ':') {
+                i += 2;
+            } else if (c == ':' && i + 1 < length && isNamePart(namedSql.charAt(i + 1))) {
+                int end = i + 2;
+                while (end < length && isNamePart(namedSql.charAt(end))) {
+                    end++;
+                }
+                parameters.add(new NamedPreparedStatement.Parameter(namedSql.substring(i + 1, end), ++position));
+                sql.append(namedSql, copied, i).append('?');
+                copied = end;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        sql.append(namedSql, copied, length);
+        return new ParsedSql(sql.toString(), Collections.unmodifiableList(parameters), indexesOf(parameters));
+    }
+
+    private static Map<String, int[]> indexesOf(List<NamedPreparedStatement.Parameter> parameters) {
+        Map<String, int[]> result = new HashMap<>();
+        for (NamedPreparedStatement.Parameter parameter : parameters) {
+            int[] known = result.get(parameter.name);
+            int[] positions = known == null ? new int[1] : Arrays.copyOf(known, known.length + 1);
+            positions[positions.length - 1] = parameter.index;
+            result.put(parameter.name, positions);
+        }
+        return result;
+    }
+
+    private static boolean isNamePart(char c) {
+        if (c < 128) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '$';
+        }
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    /**
+     * @return the index after the closing quote, the quote is escaped by doubling it
+     */
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return sql.length();
+    }
+
+    private static int skipLineComment(String sql, int start) {
+        int end = sql.indexOf('\n', start + 2);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlockComment(String sql, int start) {
+        int end = sql.indexOf("*/", start + 2);
+        return end < 0 ? sql.length() : end + 2;
+    }
+
+    /**
+     * @return the SQL with positional parameters, to prepare with JDBC
+     */
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the named parameters in the order of the SQL, a name used several times appears at each of its positions
+     */
+    List<NamedPreparedStatement.Parameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @param name the name of a parameter, without the colon
+     * @return the positions of the parameter, empty if the SQL doesn't use it
+     */
+    int[] indexesOf(String name) {
+        return indexes.getOrDefault(name, NO_INDEX);
+    }
+}
@@ -0,0 +1,386 @@
+package fr.epsi.orm.myorm.lib;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Read and write access to a field of a class.
+ *
+ * The getter and setter of the property are resolved once into <code>MethodHandle</code>s, the
+ * field is accessed directly when the class does not declare them.
+ * Properties of a primitive type can be read and written without boxing with the typed methods like {@link #getInt(Object)},
+ * the typed handles are built once for each primitive type and convert the values of the properties of another type.
+ * Accessors are cached by field, use {@link #of(Field)} to get one.
+ */
+public final class PropertyAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodHandle REQUIRE_VALUE;
+
+    static {
+        try {
+            REQUIRE_VALUE = MethodHandles.lookup().findStatic(PropertyAccessor.class, "requireValue",
+                    MethodType.methodType(Object.class, String.class, Class.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final Map<Field, PropertyAccessor> CACHE = new ConcurrentHashMap<>();
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final MethodHandle intGetter;
+    private final MethodHandle intSetter;
+    private final MethodHandle longGetter;
+    private final MethodHandle longSetter;
+    private final MethodHandle shortGetter;
+    private final MethodHandle shortSetter;
+    private final MethodHandle doubleGetter;
+    private final MethodHandle doubleSetter;
+    private final MethodHandle floatGetter;
+    private final MethodHandle floatSetter;
+    private final MethodHandle booleanGetter;
+    private final MethodHandle booleanSetter;
+
+    private PropertyAccessor(Field aField, MethodHandle aGetter, MethodHandle aSetter) throws ReflectiveOperationException {
+        field = aField;
+        getter = aGetter.asType(GETTER_TYPE);
+        setter = aSetter == null ? null : aSetter.asType(SETTER_TYPE);
+        intGetter = typedGetter(aGetter, int.class);
+        intSetter = typedSetter(aSetter, int.class);
+        longGetter = typedGetter(aGetter, long.class);
+        longSetter = typedSetter(aSetter, long.class);
+        shortGetter = typedGetter(aGetter, short.class);
+        shortSetter = typedSetter(aSetter, short.class);
+        doubleGetter = typedGetter(aGetter, double.class);
+        doubleSetter = typedSetter(aSetter, double.class);
+        floatGetter = typedGetter(aGetter, float.class);
+        floatSetter = typedSetter(aSetter, float.class);
+        booleanGetter = typedGetter(aGetter, boolean.class);
+        booleanSetter = typedSetter(aSetter, boolean.class);
+    }
+
+    /**
+     * Build the getter of the property as a primitive type, of type <code>(Object)type</code>. The getter of a property
+     * of another type reads the boxed value and converts it, a null value fails with the name of the property.
+     */
+    private MethodHandle typedGetter(MethodHandle aGetter, Class<?> type) throws ReflectiveOperationException {
+        if (field.getType() == type) {
+            return aGetter.asType(MethodType.methodType(type, Object.class));
+        }
+        MethodHandle unbox = type == boolean.class
+                ? MethodHandles.lookup().findVirtual(Boolean.class, "booleanValue", MethodType.methodType(boolean.class))
+                : MethodHandles.lookup().findVirtual(Number.class, type.getName() + "Value", MethodType.methodType(type));
+        MethodHandle required = MethodHandles.insertArguments(REQUIRE_VALUE, 0, describe(field), type)
+                .asType(MethodType.methodType(unbox.type().parameterType(0), Object.class));
+        return MethodHandles.filterReturnValue(aGetter.asType(GETTER_TYPE), MethodHandles.filterReturnValue(required, unbox));
+    }
+
+    /**
+     * Build the setter of the property from a primitive type, of type <code>(Object, type)void</code>. The setter of a
+     * property of another type boxes the value.
+     * @return null if the property is read only
+     */
+    private MethodHandle typedSetter(MethodHandle aSetter, Class<?> type) {
+        if (aSetter == null) {
+            return null;
+        }
+        MethodType setterType = MethodType.methodType(void.class, Object.class, type);
+        return field.getType() == type ? aSetter.asType(setterType) : aSetter.asType(SETTER_TYPE).asType(setterType);
+    }
+
+    private static Object requireValue(String property, Class<?> type, Object value) {
+        if (value == null) {
+            throw new IllegalStateException("The property " + property + " is null, it can't be read as a " + type.getName());
+        }
+        return value;
+    }
+
+    /**
+     * Get the accessor of a field, resolving it on the first call
+     * @param field the field to access
+     * @return the accessor of the field
+     * @throws IllegalArgumentException if the field can't be accessed
+     */
+    public static PropertyAccessor of(Field field) {
+        return CACHE.computeIfAbsent(field, PropertyAccessor::resolve);
+    }
+
+    private static PropertyAccessor resolve(Field field) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        PropertyDescriptor descriptor = getPropertyDescriptor(field);
+        try {
+            MethodHandle getter;
+            if (descriptor != null && descriptor.getReadMethod() != null) {
+                getter = lookup.unreflect(accessible(descriptor.getReadMethod()));
+            } else {
+                getter = lookup.unreflectGetter(accessible(field));
+            }
+            MethodHandle setter = null;
+            if (descriptor != null && descriptor.getWriteMethod() != null) {
+                setter = lookup.unreflect(accessible(descriptor.getWriteMethod()));
+            } else if (!Modifier.isFinal(field.getModifiers())) {
+                setter = lookup.unreflectSetter(accessible(field));
+            }
+            return new PropertyAccessor(field, getter, setter);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Unable to access property " + describe(field), e);
+        }
+    }
+
+    private static PropertyDescriptor getPropertyDescriptor(Field field) {
+        try {
+            return Stream.of(Introspector.getBeanInfo(field.getDeclaringClass()).getPropertyDescriptors())
+                    .filter(pd -> pd.getName().equals(field.getName()) && !"class".equals(pd.getName()))
+                    .filter(pd -> pd.getPropertyType() == field.getType())
+                    .findFirst()
+                    .orElse(null);
+        } catch (IntrospectionException e) {
+            return null;
+        }
+    }
+
+    private static <A extends AccessibleObject> A accessible(A member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static String describe(Field field) {
+        return field.getDeclaringClass().getName() + "." + field.getName();
+    }
+
+    /**
+     * @return the accessed field
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Read the value of the property
+     * @param instance the instance to read
+     * @return the value of the property, can be null
+     * @throws IllegalStateException if the getter has failed
+     */
+    public Object get(Object instance) {
+        try {
+            return (Object) getter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of the property
+     * @param instance the instance to update
+     * @param value the new value of the property
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void set(Object instance, Object value) {
+        MethodHandle handle = writable(setter);
+        if (value == null && field.getType().isPrimitive()) {
+            throw new IllegalArgumentException("Can't set null to the primitive property " + describe(field));
+        }
+        try {
+            handle.invokeExact(instance, value);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Can't set a " + value.getClass().getName() + " to the property " + describe(field), e);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>int</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public int getInt(Object instance) {
+        try {
+            return (int) intGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>int</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setInt(Object instance, int value) {
+        try {
+            writable(intSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>long</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public long getLong(Object instance) {
+        try {
+            return (long) longGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>long</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setLong(Object instance, long value) {
+        try {
+            writable(longSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>short</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public short getShort(Object instance) {
+        try {
+            return (short) shortGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>short</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setShort(Object instance, short value) {
+        try {
+            writable(shortSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>double</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public double getDouble(Object instance) {
+        try {
+            return (double) doubleGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>double</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setDouble(Object instance, double value) {
+        try {
+            writable(doubleSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>float</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public float getFloat(Object instance) {
+        try {
+            return (float) floatGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>float</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setFloat(Object instance, float value) {
+        try {
+            writable(floatSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * Read the value of a <code>boolean</code> property without boxing
+     * @throws IllegalStateException if the getter has failed or the value of a property of another type is null
+     */
+    public boolean getBoolean(Object instance) {
+        try {
+            return (boolean) booleanGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw failure(false, e);
+        }
+    }
+
+    /**
+     * Write the value of a <code>boolean</code> property without boxing
+     * @throws IllegalArgumentException if the value can't be assigned to the property
+     * @throws IllegalStateException if the property is read only or the setter has failed
+     */
+    public void setBoolean(Object instance, boolean value) {
+        try {
+            writable(booleanSetter).invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw failure(true, e);
+        }
+    }
+
+    /**
+     * @return the setter given, if the property is not read only
+     * @throws IllegalStateException if the property is read only
+     */
+    private MethodHandle writable(MethodHandle handle) {
+        if (handle == null) {
+            throw new IllegalStateException("The property " + describe(field) + " is read only");
+        }
+        return handle;
+    }
+
+    /**
+     * @param writing true if the setter has failed, false if the getter has failed
+     * @return the exception to throw for a failure of the getter or the setter, a value of the wrong type given to the
+     * setter is an illegal argument and the other unchecked exceptions are kept as is
+     */
+    private RuntimeException failure(boolean writing, Throwable e) {
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (writing && e instanceof ClassCastException) {
+            return new IllegalArgumentException("Can't set a value of the wrong type to the property " + describe(field), e);
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new IllegalStateException("Error while " + (writing ? "writing" : "reading") + " property " + describe(field), e);
+    }
+}
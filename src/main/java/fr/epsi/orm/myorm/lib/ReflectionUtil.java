@@ -5,16 +5,15 @@ import fr.epsi.orm.myorm.annotation.Id;
 import fr.epsi.orm.myorm.annotation.Transient;
 import javaslang.Predicates;
 
-import javax.swing.text.html.Option;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -65,55 +64,53 @@ public final class ReflectionUtil {
         }
     }
 
-    private static Optional<PropertyDescriptor> getPropertyDescriptorForField(Class<?> entityClass, Field field) {
-        try {
-            return Stream.of(Introspector.getBeanInfo(entityClass).getPropertyDescriptors())
-                    .filter(pd -> pd.getName().equals(field.getName()) && !"class".equals(pd.getName()))
-                    .findFirst();
-        } catch (IntrospectionException e) {
-            return Optional.empty();
-        }
-    }
-
-    private static Optional<Method> getGetterMethod(Field field, Object instance) {
-        return getPropertyDescriptorForField(instance.getClass(), field)
-                .map((pd) -> pd.getReadMethod() != null ? pd.getReadMethod(): null);
-    }
-
-    private static Optional<Method> getSetterMethod(Field field, Object instance) {
-        return getPropertyDescriptorForField(instance.getClass(), field)
-                .map((pd) -> pd.getWriteMethod() != null ? pd.getWriteMethod(): null);
-    }
-
+    /**
+     * Read the value of a field, using its getter if there is one
+     * @throws IllegalStateException if the getter has failed
+     */
     public static <T> Optional<T> getValue(Field field, Object instance) {
-        Optional<T> getterAccess = getGetterMethod(field, instance).flatMap((method) -> {
-            try {
-                return Optional.ofNullable((T) method.invoke(instance));
-            } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
-                e.printStackTrace();
-                return Optional.empty();
-            }
-        });
-        return getterAccess.isPresent() ? getterAccess : getByDirectAccessValue(field, instance);
+        return Optional.ofNullable((T) PropertyAccessor.of(field).get(instance));
     }
 
+    /**
+     * Write the value of a field, using its setter if there is one
+     * @throws IllegalArgumentException if the value can't be assigned to the field
+     * @throws IllegalStateException if the setter has failed
+     */
     public static void setValue(Field field, Object instance, final Object newValue) {
-        getSetterMethod(field, instance).ifPresent((method) -> {
-            try {
-                method.invoke(instance, newValue);
-            } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
-                e.printStackTrace();
-            }
-        });
+        PropertyAccessor.of(field).set(instance, newValue);
     }
 
     public static <T> Optional<T> instanciate(Class<? extends T> entityClass) {
         try {
             return Optional.of(entityClass.newInstance());
         } catch (IllegalAccessException|InstantiationException e) {
-            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Resolve once the no-arg constructor of a class into a Supplier of new instances
+     * @throws IllegalArgumentException if the class has no accessible no-arg constructor
+     */
+    public static <T> Supplier<T> instantiator(Class<T> entityClass) {
+        MethodHandle constructor;
+        try {
+            Constructor<T> declared = entityClass.getDeclaredConstructor();
+            declared.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(declared).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("The class " + entityClass.getName() + " should have a no-arg constructor", e);
         }
-        return Optional.empty();
+        return () -> {
+            try {
+                return entityClass.cast((Object) constructor.invokeExact());
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Error while instantiating " + entityClass.getName(), e);
+            }
+        };
     }
 
     public static boolean isFieldIdGenerated(Field field) {
@@ -0,0 +1,95 @@
+package fr.epsi.orm.myorm.lib;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Conversion between a Java type and a JDBC column.
+ *
+ * A codec is resolved once for a field or a parameter with a {@link TypeCodecRegistry}, reading or binding a value
+ * is then a single call on the codec. The codecs of the primitive types override {@link #readProperty} and
+ * {@link #writeProperty} to move the values between the JDBC driver and the entity without boxing.
+ *
+ * @param <T> The Java type converted
+ */
+public interface TypeCodec<T> {
+
+    /**
+     * @return the Java type converted by this codec
+     */
+    Class<T> getType();
+
+    /**
+     * @return the SQL type from {@link java.sql.Types} used to bind a null value
+     */
+    int getSqlType();
+
+    /**
+     * Read the value of a column from the current row of a ResultSet
+     * @param rs the ResultSet positioned on the row to read
+     * @param index the index of the column
+     * @return the value of the column, null if the column is SQL NULL
+     */
+    T read(ResultSet rs, int index) throws SQLException;
+
+    /**
+     * Bind a non null value to a parameter of a statement
+     * @param statement the statement
+     * @param index the index of the parameter
+     * @param value the value to bind, never null
+     */
+    void write(PreparedStatement statement, int index, T value) throws SQLException;
+
+    /**
+     * Read the value of a column into a property of an instance
+     * @param rs the ResultSet positioned on the row to read
+     * @param index the index of the column
+     * @param target the instance to fill
+     * @param accessor the accessor of the property
+     */
+    default void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+        accessor.set(target, read(rs, index));
+    }
+
+    /**
+     * Bind the value of a property of an instance to a parameter of a statement, SQL NULL if the property is null
+     * @param statement the statement
+     * @param index the index of the parameter
+     * @param source the instance to read
+     * @param accessor the accessor of the property
+     */
+    default void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+        writeNullable(statement, index, getType().cast(accessor.get(source)));
+    }
+
+    /**
+     * Convert the text form of a value, as written by {@link #format}, to read the values of a file
+     * @param text the text of a non null value
+     * @return the value
+     * @throws IllegalArgumentException if the text is not a value of the type, or the type has no text form
+     */
+    default T parse(String text) {
+        throw new IllegalArgumentException("The values of " + getType().getName() + " have no text form");
+    }
+
+    /**
+     * Convert a value to its text form, read back by {@link #parse}
+     * @param value a non null value
+     * @return the text of the value
+     */
+    default String format(T value) {
+        return value.toString();
+    }
+
+    /**
+     * Bind a value to a parameter of a statement, SQL NULL if the value is null
+     */
+    default void writeNullable(PreparedStatement statement, int index, T value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, getSqlType());
+        } else {
+            write(statement, index, value);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package fr.epsi.orm.myorm.lib;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable registry resolving the {@link TypeCodec} of a Java type.
+ *
+ * The codecs registered by the user take precedence over the built-in codecs of {@link TypeCodecs}, a type
+ * without codec is converted by the codec of its closest superclass. The resolution is cached per type.
+ */
+public final class TypeCodecRegistry {
+
+    private static final TypeCodecRegistry DEFAULTS = new TypeCodecRegistry(Collections.emptyMap());
+
+    private final Map<Class<?>, TypeCodec<?>> codecs;
+    private final ClassValue<Optional<TypeCodec<?>>> resolved = new ClassValue<Optional<TypeCodec<?>>>() {
+        @Override
+        protected Optional<TypeCodec<?>> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    private TypeCodecRegistry(Map<Class<?>, TypeCodec<?>> aCodecs) {
+        codecs = aCodecs;
+    }
+
+    /**
+     * @return the registry of the built-in codecs
+     */
+    public static TypeCodecRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Create a registry with an additional codec
+     * @param type the Java type converted
+     * @param codec the codec to use for the type, replacing the codec registered or built-in for this type
+     * @return a new registry, this registry is not modified
+     */
+    public <T> TypeCodecRegistry with(Class<T> type, TypeCodec<T> codec) {
+        Map<Class<?>, TypeCodec<?>> result = new HashMap<>(codecs);
+        result.put(type, codec);
+        return new TypeCodecRegistry(Collections.unmodifiableMap(result));
+    }
+
+    /**
+     * Find the codec of a type
+     * @param type the Java type
+     * @return the codec of the type, empty if the type is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<TypeCodec<T>> find(Class<T> type) {
+        return resolved.get(type).map(codec -> (TypeCodec<T>) codec);
+    }
+
+    /**
+     * Get the codec of a type
+     * @param type the Java type
+     * @return the codec of the type
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    public <T> TypeCodec<T> get(Class<T> type) {
+        return find(type).orElseThrow(() -> new IllegalArgumentException("No TypeCodec registered for the type " + type.getName()));
+    }
+
+    /**
+     * @param type the Java type
+     * @return true if the type is converted by a codec registered in this registry instead of a built-in codec
+     */
+    public boolean isCustom(Class<?> type) {
+        return resolved.get(type).map(codec -> !TypeCodecs.builtIn(type).filter(codec::equals).isPresent()).orElse(false);
+    }
+
+    private Optional<TypeCodec<?>> resolve(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            TypeCodec<?> codec = codecs.get(current);
+            if (codec != null) {
+                return Optional.of(codec);
+            }
+            Optional<TypeCodec<?>> builtIn = TypeCodecs.builtIn(current);
+            if (builtIn.isPresent()) {
+                return builtIn;
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,479 @@
+package fr.epsi.orm.myorm.lib;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * The built-in {@link TypeCodec}s.
+ *
+ * The wrapper types read SQL NULL as null, the primitive types read it as the default value of the type.
+ * UUIDs and enums are stored as text, enums by the name of the constant.
+ * The text form of the values is their ISO or <code>toString</code> form, the byte arrays are written in Base64.
+ */
+public final class TypeCodecs {
+
+    private TypeCodecs() {
+    }
+
+    /**
+     * Base of the built-in codecs
+     */
+    private abstract static class BaseCodec<T> implements TypeCodec<T> {
+        private final Class<T> type;
+        private final int sqlType;
+        private final Function<String, T> parser;
+
+        BaseCodec(Class<T> aType, int aSqlType, Function<String, T> aParser) {
+            type = aType;
+            sqlType = aSqlType;
+            parser = aParser;
+        }
+
+        /**
+         * The blanks around the text of a value are ignored, except for the strings
+         */
+        @Override
+        public T parse(String text) {
+            try {
+                return parser.apply(type == String.class ? text : text.trim());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid " + type.getSimpleName() + " value '" + text + "'", e);
+            }
+        }
+
+        @Override
+        public Class<T> getType() {
+            return type;
+        }
+
+        @Override
+        public int getSqlType() {
+            return sqlType;
+        }
+
+        @Override
+        public String toString() {
+            return "TypeCodec{" + type.getName() + '}';
+        }
+    }
+
+    public static final TypeCodec<String> STRING = new BaseCodec<String>(String.class, Types.VARCHAR, text -> text) {
+        @Override
+        public String read(ResultSet rs, int index) throws SQLException {
+            return rs.getString(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, String value) throws SQLException {
+            statement.setString(index, value);
+        }
+    };
+
+    public static final TypeCodec<Integer> INTEGER = new BaseCodec<Integer>(Integer.class, Types.INTEGER, Integer::valueOf) {
+        @Override
+        public Integer read(ResultSet rs, int index) throws SQLException {
+            int value = rs.getInt(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Integer value) throws SQLException {
+            statement.setInt(index, value);
+        }
+    };
+
+    public static final TypeCodec<Long> LONG = new BaseCodec<Long>(Long.class, Types.BIGINT, Long::valueOf) {
+        @Override
+        public Long read(ResultSet rs, int index) throws SQLException {
+            long value = rs.getLong(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Long value) throws SQLException {
+            statement.setLong(index, value);
+        }
+    };
+
+    public static final TypeCodec<Short> SHORT = new BaseCodec<Short>(Short.class, Types.SMALLINT, Short::valueOf) {
+        @Override
+        public Short read(ResultSet rs, int index) throws SQLException {
+            short value = rs.getShort(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Short value) throws SQLException {
+            statement.setShort(index, value);
+        }
+    };
+
+    public static final TypeCodec<Double> DOUBLE = new BaseCodec<Double>(Double.class, Types.DOUBLE, Double::valueOf) {
+        @Override
+        public Double read(ResultSet rs, int index) throws SQLException {
+            double value = rs.getDouble(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Double value) throws SQLException {
+            statement.setDouble(index, value);
+        }
+    };
+
+    public static final TypeCodec<Float> FLOAT = new BaseCodec<Float>(Float.class, Types.REAL, Float::valueOf) {
+        @Override
+        public Float read(ResultSet rs, int index) throws SQLException {
+            float value = rs.getFloat(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Float value) throws SQLException {
+            statement.setFloat(index, value);
+        }
+    };
+
+    public static final TypeCodec<Boolean> BOOLEAN = new BaseCodec<Boolean>(Boolean.class, Types.BOOLEAN, TypeCodecs::parseBoolean) {
+        @Override
+        public Boolean read(ResultSet rs, int index) throws SQLException {
+            boolean value = rs.getBoolean(index);
+            return rs.wasNull() ? null : value;
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Boolean value) throws SQLException {
+            statement.setBoolean(index, value);
+        }
+    };
+
+    public static final TypeCodec<Integer> PRIMITIVE_INT = new BaseCodec<Integer>(int.class, Types.INTEGER, Integer::valueOf) {
+        @Override
+        public Integer read(ResultSet rs, int index) throws SQLException {
+            return rs.getInt(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Integer value) throws SQLException {
+            statement.setInt(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setInt(target, rs.getInt(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setInt(index, accessor.getInt(source));
+        }
+    };
+
+    public static final TypeCodec<Long> PRIMITIVE_LONG = new BaseCodec<Long>(long.class, Types.BIGINT, Long::valueOf) {
+        @Override
+        public Long read(ResultSet rs, int index) throws SQLException {
+            return rs.getLong(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Long value) throws SQLException {
+            statement.setLong(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setLong(target, rs.getLong(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setLong(index, accessor.getLong(source));
+        }
+    };
+
+    public static final TypeCodec<Short> PRIMITIVE_SHORT = new BaseCodec<Short>(short.class, Types.SMALLINT, Short::valueOf) {
+        @Override
+        public Short read(ResultSet rs, int index) throws SQLException {
+            return rs.getShort(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Short value) throws SQLException {
+            statement.setShort(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setShort(target, rs.getShort(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setShort(index, accessor.getShort(source));
+        }
+    };
+
+    public static final TypeCodec<Double> PRIMITIVE_DOUBLE = new BaseCodec<Double>(double.class, Types.DOUBLE, Double::valueOf) {
+        @Override
+        public Double read(ResultSet rs, int index) throws SQLException {
+            return rs.getDouble(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Double value) throws SQLException {
+            statement.setDouble(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setDouble(target, rs.getDouble(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setDouble(index, accessor.getDouble(source));
+        }
+    };
+
+    public static final TypeCodec<Float> PRIMITIVE_FLOAT = new BaseCodec<Float>(float.class, Types.REAL, Float::valueOf) {
+        @Override
+        public Float read(ResultSet rs, int index) throws SQLException {
+            return rs.getFloat(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Float value) throws SQLException {
+            statement.setFloat(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setFloat(target, rs.getFloat(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setFloat(index, accessor.getFloat(source));
+        }
+    };
+
+    public static final TypeCodec<Boolean> PRIMITIVE_BOOLEAN = new BaseCodec<Boolean>(boolean.class, Types.BOOLEAN, TypeCodecs::parseBoolean) {
+        @Override
+        public Boolean read(ResultSet rs, int index) throws SQLException {
+            return rs.getBoolean(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Boolean value) throws SQLException {
+            statement.setBoolean(index, value);
+        }
+
+        @Override
+        public void readProperty(ResultSet rs, int index, Object target, PropertyAccessor accessor) throws SQLException {
+            accessor.setBoolean(target, rs.getBoolean(index));
+        }
+
+        @Override
+        public void writeProperty(PreparedStatement statement, int index, Object source, PropertyAccessor accessor) throws SQLException {
+            statement.setBoolean(index, accessor.getBoolean(source));
+        }
+    };
+
+    public static final TypeCodec<BigDecimal> BIG_DECIMAL = new BaseCodec<BigDecimal>(BigDecimal.class, Types.DECIMAL, BigDecimal::new) {
+        @Override
+        public BigDecimal read(ResultSet rs, int index) throws SQLException {
+            return rs.getBigDecimal(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, BigDecimal value) throws SQLException {
+            statement.setBigDecimal(index, value);
+        }
+
+        @Override
+        public String format(BigDecimal value) {
+            return value.toPlainString();
+        }
+    };
+
+    public static final TypeCodec<LocalDate> LOCAL_DATE = new BaseCodec<LocalDate>(LocalDate.class, Types.DATE, LocalDate::parse) {
+        @Override
+        public LocalDate read(ResultSet rs, int index) throws SQLException {
+            Date value = rs.getDate(index);
+            return value == null ? null : value.toLocalDate();
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, LocalDate value) throws SQLException {
+            statement.setDate(index, Date.valueOf(value));
+        }
+    };
+
+    public static final TypeCodec<LocalTime> LOCAL_TIME = new BaseCodec<LocalTime>(LocalTime.class, Types.TIME, LocalTime::parse) {
+        @Override
+        public LocalTime read(ResultSet rs, int index) throws SQLException {
+            Time value = rs.getTime(index);
+            return value == null ? null : value.toLocalTime();
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, LocalTime value) throws SQLException {
+            statement.setTime(index, Time.valueOf(value));
+        }
+    };
+
+    public static final TypeCodec<LocalDateTime> LOCAL_DATE_TIME = new BaseCodec<LocalDateTime>(LocalDateTime.class, Types.TIMESTAMP, LocalDateTime::parse) {
+        @Override
+        public LocalDateTime read(ResultSet rs, int index) throws SQLException {
+            Timestamp value = rs.getTimestamp(index);
+            return value == null ? null : value.toLocalDateTime();
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, LocalDateTime value) throws SQLException {
+            statement.setTimestamp(index, Timestamp.valueOf(value));
+        }
+    };
+
+    public static final TypeCodec<Instant> INSTANT = new BaseCodec<Instant>(Instant.class, Types.TIMESTAMP, Instant::parse) {
+        @Override
+        public Instant read(ResultSet rs, int index) throws SQLException {
+            Timestamp value = rs.getTimestamp(index);
+            return value == null ? null : value.toInstant();
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, Instant value) throws SQLException {
+            statement.setTimestamp(index, Timestamp.from(value));
+        }
+    };
+
+    public static final TypeCodec<UUID> UUID_TEXT = new BaseCodec<UUID>(UUID.class, Types.VARCHAR, UUID::fromString) {
+        @Override
+        public UUID read(ResultSet rs, int index) throws SQLException {
+            String value = rs.getString(index);
+            return value == null ? null : UUID.fromString(value);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, UUID value) throws SQLException {
+            statement.setString(index, value.toString());
+        }
+    };
+
+    public static final TypeCodec<byte[]> BYTES = new BaseCodec<byte[]>(byte[].class, Types.VARBINARY, Base64.getDecoder()::decode) {
+        @Override
+        public byte[] read(ResultSet rs, int index) throws SQLException {
+            return rs.getBytes(index);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, byte[] value) throws SQLException {
+            statement.setBytes(index, value);
+        }
+
+        @Override
+        public String format(byte[] value) {
+            return Base64.getEncoder().encodeToString(value);
+        }
+    };
+
+    /**
+     * Unlike {@link Boolean#parseBoolean}, only true and false are accepted
+     */
+    private static Boolean parseBoolean(String text) {
+        if (text.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        } else if (text.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("A boolean should be true or false");
+    }
+
+    private static final Map<Class<?>, TypeCodec<?>> BUILT_IN;
+    static {
+        Map<Class<?>, TypeCodec<?>> codecs = new HashMap<>();
+        for (TypeCodec<?> codec : new TypeCodec<?>[]{
+                STRING, INTEGER, LONG, SHORT, DOUBLE, FLOAT, BOOLEAN,
+                PRIMITIVE_INT, PRIMITIVE_LONG, PRIMITIVE_SHORT, PRIMITIVE_DOUBLE, PRIMITIVE_FLOAT, PRIMITIVE_BOOLEAN,
+                BIG_DECIMAL, LOCAL_DATE, LOCAL_TIME, LOCAL_DATE_TIME, INSTANT, UUID_TEXT, BYTES}) {
+            codecs.put(codec.getType(), codec);
+        }
+        BUILT_IN = Collections.unmodifiableMap(codecs);
+    }
+
+    private static final ClassValue<TypeCodec<?>> ENUMS = new ClassValue<TypeCodec<?>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected TypeCodec<?> computeValue(Class<?> type) {
+            return new EnumCodec(type);
+        }
+    };
+
+    private static final class EnumCodec<E extends Enum<E>> extends BaseCodec<E> {
+        EnumCodec(Class<E> aType) {
+            super(aType, Types.VARCHAR, text -> Enum.valueOf(aType, text));
+        }
+
+        @Override
+        public String format(E value) {
+            return value.name();
+        }
+
+        @Override
+        public E read(ResultSet rs, int index) throws SQLException {
+            String value = rs.getString(index);
+            return value == null ? null : Enum.valueOf(getType(), value);
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, E value) throws SQLException {
+            statement.setString(index, value.name());
+        }
+    }
+
+    /**
+     * Get the codec storing the constants of an enum by name, the codec is created once per enum
+     * @param type the enum
+     * @return the codec of the enum
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> TypeCodec<E> enumCodec(Class<E> type) {
+        return (TypeCodec<E>) ENUMS.get(type);
+    }
+
+    /**
+     * Find the built-in codec of a type
+     * @param type the Java type, an enum constant with a body is converted by the codec of its enum
+     * @return the built-in codec of the type, empty if there is none
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Optional<TypeCodec<?>> builtIn(Class<?> type) {
+        TypeCodec<?> codec = BUILT_IN.get(type);
+        if (codec != null) {
+            return Optional.of(codec);
+        }
+        if (Enum.class.isAssignableFrom(type) && type != Enum.class) {
+            Class enumType = type.isEnum() ? type : type.getSuperclass();
+            return Optional.of(enumCodec(enumType));
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,192 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous API over an {@link EntityManager}, each operation runs on an executor and returns a CompletableFuture.
+ *
+ * The number of operations in flight, running or waiting for a thread, is bounded : when the bound is reached a new
+ * operation is rejected, its future completes exceptionally with a RejectedExecutionException, so the work waiting for
+ * a connection can't pile up beyond the bound and the caller is never blocked. A failed operation completes its future
+ * exceptionally with the SQLException.
+ * <pre>
+ * AsyncEntityManager async = AsyncEntityManager.bounded(entityManager, poolSize, 4 * poolSize);
+ * async.find(User.class, 1L).thenAccept(user -&gt; ...);
+ * </pre>
+ */
+public class AsyncEntityManager implements AutoCloseable {
+
+    private final EntityManager entityManager;
+    private final Executor executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final boolean ownsExecutor;
+
+    private AsyncEntityManager(EntityManager aEntityManager, Executor aExecutor, int aMaxInFlight, boolean aOwnsExecutor) {
+        if (aMaxInFlight < 1) {
+            throw new IllegalArgumentException("The maximum number of operations in flight should be positive");
+        }
+        entityManager = aEntityManager;
+        executor = aExecutor;
+        maxInFlight = aMaxInFlight;
+        inFlight = new Semaphore(aMaxInFlight);
+        ownsExecutor = aOwnsExecutor;
+    }
+
+    /**
+     * Run the operations on a pool of threads sized like the connection pool, the pool is shut down by {@link #close()}
+     * @param entityManager the EntityManager running the operations
+     * @param poolSize the number of threads, the size of the connection pool
+     * @param queueCapacity the number of operations waiting for a thread before the new operations are rejected
+     * @return the AsyncEntityManager
+     */
+    public static AsyncEntityManager bounded(EntityManager entityManager, int poolSize, int queueCapacity) {
+        if (poolSize < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("The pool size should be positive and the queue capacity can't be negative");
+        }
+        int maxInFlight = poolSize + queueCapacity;
+        // A thread still finishing an operation has already released its permit, the queue is sized to the bound
+        // of operations in flight so it can never reject an operation
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxInFlight), new DaemonThreadFactory());
+        return new AsyncEntityManager(entityManager, executor, maxInFlight, true);
+    }
+
+    /**
+     * Run the operations on an executor managed by the caller, a virtual thread per task executor for example
+     * @param entityManager the EntityManager running the operations
+     * @param executor the executor running the operations, it is not shut down by {@link #close()}
+     * @param maxInFlight the maximum number of operations submitted and not completed, the others are rejected
+     * @return the AsyncEntityManager
+     */
+    public static AsyncEntityManager withExecutor(EntityManager entityManager, Executor executor, int maxInFlight) {
+        return new AsyncEntityManager(entityManager, executor, maxInFlight, false);
+    }
+
+    /**
+     * @see EntityManager#find(Class, Object)
+     */
+    public <T> CompletableFuture<Optional<T>> find(Class<T> entityClass, Object id) {
+        return submit(() -> entityManager.find(entityClass, id));
+    }
+
+    /**
+     * @see EntityManager#findAll(Class)
+     */
+    public <T> CompletableFuture<List<T>> findAll(Class<T> entityClass) {
+        return submit(() -> entityManager.findAll(entityClass));
+    }
+
+    /**
+     * @see EntityManager#findAllById(Class, Collection)
+     */
+    public <T> CompletableFuture<List<T>> findAllById(Class<T> entityClass, Collection<?> ids) {
+        return submit(() -> entityManager.findAllById(entityClass, ids));
+    }
+
+    /**
+     * @see EntityManager#save(Object)
+     */
+    public <T> CompletableFuture<Optional<T>> save(T entity) {
+        return submit(() -> entityManager.save(entity));
+    }
+
+    /**
+     * @see EntityManager#saveAll(Collection)
+     */
+    public <T> CompletableFuture<List<T>> saveAll(Collection<T> entities) {
+        return submit(() -> entityManager.saveAll(entities));
+    }
+
+    /**
+     * @see EntityManager#update(Object)
+     */
+    public <T> CompletableFuture<Boolean> update(T entity) {
+        return submit(() -> entityManager.update(entity));
+    }
+
+    /**
+     * @see EntityManager#delete(Object)
+     */
+    public <T> CompletableFuture<Boolean> delete(T entity) {
+        return submit(() -> entityManager.delete(entity));
+    }
+
+    /**
+     * @return the number of operations submitted and not completed
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Shut down the pool of threads created by {@link #bounded}, the operations already submitted are completed
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<R> {
+        R call() throws SQLException;
+    }
+
+    /**
+     * Run an operation on the executor, or reject it without waiting if the bound of operations in flight is reached
+     */
+    private <R> CompletableFuture<R> submit(SqlCall<R> call) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        if (!inFlight.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    "The operation is rejected, " + maxInFlight + " operations are already in flight"));
+            return result;
+        }
+        try {
+            executor.execute(() -> {
+                R value;
+                try {
+                    value = call.call();
+                } catch (SQLException | RuntimeException | Error e) {
+                    inFlight.release();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                inFlight.release();
+                result.complete(value);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOLS = new AtomicInteger();
+        private final int pool = POOLS.incrementAndGet();
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "myorm-async-" + pool + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,58 +1,157 @@
 package fr.epsi.orm.myorm.persistence;
 
-import fr.epsi.orm.myorm.annotation.Entity;
-import fr.epsi.orm.myorm.annotation.Id;
-import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+import fr.epsi.orm.myorm.annotation.Cacheable;
 import fr.epsi.orm.myorm.lib.ReflectionUtil;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+import fr.epsi.orm.myorm.lib.TypeCodecRegistry;
 
 import javax.sql.DataSource;
-import java.lang.reflect.Field;
-import java.sql.ResultSet;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by fteychene on 14/05/17.
  */
-public class BasicEntityManager implements EntityManager {
+public class BasicEntityManager implements EntityManager, AutoCloseable {
 
-    private final DataSource datasource;
-    private final Set<Class<?>> persistentClasses;
+    /**
+     * Default number of rows sent in one JDBC batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Default number of rows fetched from the database in one round-trip when streaming
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * Default maximum number of entities kept in the second level cache
+     */
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 10_000;
+
+    /**
+     * Default maximum number of ids sent in the IN list of one query by findAllById
+     */
+    public static final int DEFAULT_IN_LIST_SIZE = 100;
 
+    /**
+     * Default number of flushes trying a write of the write-behind buffer before it is given up, when a handler of the
+     * writes given up is set
+     */
+    public static final int DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS = 3;
+
+    private final DataSource datasource;
+    private final Map<Class<?>, EntityMetadata<?>> metadata;
+    private final Map<Class<?>, EntityMapper<?>> mappers;
+    private final int batchSize;
+    private final int fetchSize;
+    private final int inListSize;
+    private final Map<Class<?>, String[]> selectByIdsSql = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String[]> selectPageSql = new ConcurrentHashMap<>();
+    private final Map<ColumnMetadata, String[]> selectByReferenceSql = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<Class<?>, ProjectionMapper<?>>> projections = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Map<BitSet, String>> updateSql = new ConcurrentHashMap<>();
+    private final TypeCodecRegistry codecs;
+    private final Set<Class<?>> cachedClasses;
+    private final SecondLevelCache secondLevelCache;
+    private final Set<Class<?>> findAllCachedClasses;
+    private final QueryCache queryCache = new QueryCache();
+    private final WriteBehindBuffer writeBehind;
+    private final EntityManagerListener[] listeners;
+    private final ByteBufferPool bufferPool = new ByteBufferPool(4);
 
-    private BasicEntityManager(DataSource aDataSource, Set<Class<?>> aPersistentClasses) {
-        datasource = aDataSource;
-        persistentClasses = aPersistentClasses;
+    private BasicEntityManager(Builder builder, Map<Class<?>, EntityMetadata<?>> aMetadata) {
+        datasource = builder.dataSource;
+        batchSize = builder.batchSize;
+        fetchSize = builder.fetchSize;
+        inListSize = builder.inListSize;
+        codecs = builder.codecs;
+        listeners = builder.listeners.toArray(new EntityManagerListener[0]);
+        metadata = aMetadata;
+        Set<Class<?>> cached = new HashSet<>(builder.cachedClasses);
+        aMetadata.keySet().stream()
+                .filter(entityClass -> ReflectionUtil.getAnnotationForClass(entityClass, Cacheable.class).isPresent())
+                .forEach(cached::add);
+        cachedClasses = Collections.unmodifiableSet(cached);
+        Set<Class<?>> findAllCached = new HashSet<>(builder.findAllCachedClasses);
+        aMetadata.keySet().stream()
+                .filter(entityClass -> ReflectionUtil.getAnnotationForClass(entityClass, Cacheable.class).map(Cacheable::findAll).orElse(false))
+                .forEach(findAllCached::add);
+        findAllCached.stream()
+                .filter(entityClass -> aMetadata.containsKey(entityClass) && aMetadata.get(entityClass).hasAssociations())
+                .findFirst()
+                .ifPresent(entityClass -> {
+                    throw new IllegalArgumentException("The result of findAll of " + entityClass.getName() + " can't be cached, its associations would be shared by the sessions");
+                });
+        findAllCachedClasses = Collections.unmodifiableSet(findAllCached);
+        secondLevelCache = new SecondLevelCache(builder.cacheMaxEntries, builder.cacheTimeToLive.toNanos());
+        Map<Class<?>, EntityMapper<?>> entityMappers = new HashMap<>();
+        aMetadata.forEach((entityClass, entityMetadata) -> entityMappers.put(entityClass, MappingHelper.getMapper(entityMetadata, codecs)));
+        mappers = Collections.unmodifiableMap(entityMappers);
+        writeBehind = builder.writeBehindCapacity == 0 ? null
+                : new WriteBehindBuffer(this, builder.writeBehindCapacity, batchSize, builder.writeBehindInterval.toNanos(),
+                builder.writeBehindMaxAttempts, builder.failedWrites, listeners);
     }
 
     /**
-     * Check the Persistent classes to be managed by the EntityManager to have the minimal configuration.
+     * Read the mapping of the Persistent classes to be managed by the EntityManager.
      *
      * Each class should respect the following rules :
      *  - Class should be annotated with @Entity
      *  - Class should have one and only one field with the @Id annotation
+     *  - The classes of its associations should be persistent classes too
      *
      * @param persistentClasses
+     * @param codecs the registry resolving the codec of each field
+     * @return the metadata of each class
      * @throws IllegalArgumentException if a class does not match the conditions
      */
-    private static void checkPersistentClasses(Set<Class<?>> persistentClasses) {
-        persistentClasses.forEach(entityClass -> {
-            ReflectionUtil.getAnnotationForClass(entityClass, Entity.class)
-                    .orElseThrow(() -> new IllegalArgumentException("Illegal class passed to EntityManager"));
-            if (ReflectionUtil.getFieldsDeclaringAnnotation(entityClass, Id.class).count() != 1) {
-                throw new IllegalArgumentException("This is not good");
+    private static Map<Class<?>, EntityMetadata<?>> readPersistentClasses(Set<Class<?>> persistentClasses, TypeCodecRegistry codecs) {
+        Map<Class<?>, EntityMetadata<?>> result = new HashMap<>();
+        persistentClasses.forEach(entityClass -> result.put(entityClass, EntityMetadata.of(entityClass, codecs)));
+        for (EntityMetadata<?> entityMetadata : result.values()) {
+            List<Class<?>> associated = new ArrayList<>();
+            entityMetadata.getColumns().stream().filter(ColumnMetadata::isReference).forEach(column -> associated.add(column.getType()));
+            entityMetadata.getCollections().forEach(collection -> associated.add(collection.getElementClass()));
+            for (Class<?> associatedClass : associated) {
+                if (!result.containsKey(associatedClass)) {
+                    throw new IllegalArgumentException("The class " + associatedClass.getName() + " associated to "
+                            + entityMetadata.getEntityClass().getName() + " should be a persistent class of the EntityManager");
+                }
             }
-        });
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     /**
-     * Check id a Class is managed by this EntityManager
-     * @param checkClass
+     * Get the metadata of a Class managed by this EntityManager
+     * @param entityClass
+     * @throws IllegalArgumentException if the class is not managed
      */
-    private void isManagedClass(Class<?> checkClass) throws IllegalArgumentException {
-        if (!persistentClasses.contains(checkClass)) {
-            throw new IllegalArgumentException("The class "+checkClass.getName()+" is not managed by this EntityManager ...");
+    @SuppressWarnings("unchecked")
+    <T> EntityMetadata<T> getMetadata(Class<T> entityClass) throws IllegalArgumentException {
+        EntityMetadata<T> entityMetadata = (EntityMetadata<T>) metadata.get(entityClass);
+        if (entityMetadata == null) {
+            throw new IllegalArgumentException("The class "+entityClass.getName()+" is not managed by this EntityManager ...");
         }
+        return entityMetadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> EntityMapper<T> getMapper(Class<T> entityClass) {
+        return (EntityMapper<T>) mappers.get(entityClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> EntityMetadata<T> getMetadataForEntity(T entity) throws IllegalArgumentException {
+        return getMetadata((Class<T>) entity.getClass());
     }
 
     /**
@@ -62,25 +161,198 @@ public class BasicEntityManager implements EntityManager {
      * @return The BasicEntityManager created
      */
     public static BasicEntityManager create(DataSource dataSource, Set<Class<?>> persistentClasses) {
-        checkPersistentClasses(persistentClasses);
-        return new BasicEntityManager(dataSource, persistentClasses);
+        return builder(dataSource, persistentClasses).build();
     }
 
     /**
-     * @see EntityManager#find(Class, Object)
+     * Start the configuration of a BasicEntityManager
+     * @param dataSource The Datasource to use for connecting to DB
+     * @param persistentClasses The Set of Classes to be managed in this EntityManager
+     * @return a Builder with the default configuration
      */
-    @Override
-    public <T> Optional<T> find(Class<T> entityClass, Object id) throws SQLException {
-        isManagedClass(entityClass);
+    public static Builder builder(DataSource dataSource, Set<Class<?>> persistentClasses) {
+        return new Builder(dataSource, persistentClasses);
+    }
 
-        String selectQuery = "SELECT * FROM " + SqlGenerator.getTableForEntity(entityClass) + " WHERE id = '" + id.toString() + "'";
-        System.out.println(selectQuery);
-        NamedPreparedStatement statement = NamedPreparedStatement.prepare(datasource.getConnection(), selectQuery);
+    int getBatchSize() {
+        return batchSize;
+    }
 
-        ResultSet resultSet = statement.executeQuery();
-        resultSet.next();
+    int getFetchSize() {
+        return fetchSize;
+    }
 
-        return Optional.of(MappingHelper.mapToInstance(resultSet, entityClass));
+    int getInListSize() {
+        return inListSize;
+    }
+
+    /**
+     * Get the number of parameters of the IN list used to query a number of ids.
+     * The lists are padded to a power of two, up to the maximum size, so only a few statements have to be prepared.
+     */
+    int inListSizeFor(int count) {
+        return count <= 1 ? 1 : Math.min(inListSize, Integer.highestOneBit(count - 1) << 1);
+    }
+
+    /**
+     * Get the select by a list of ids, the queries are generated once per entity class and size of IN list
+     * @param size a size returned by {@link #inListSizeFor(int)}
+     */
+    String getSelectByIdsSql(EntityMetadata<?> entityMetadata, int size) {
+        String[] bySize = selectByIdsSql.computeIfAbsent(entityMetadata.getEntityClass(), entityClass -> new String[inListSize + 1]);
+        String sql = bySize[size];
+        if (sql == null) {
+            sql = SqlGenerator.generateSelectByIdsSql(entityMetadata, size);
+            bySize[size] = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * Get the select of the entities referencing a list of ids through a <code>@ManyToOne</code> column, the queries are
+     * generated once per column and size of IN list
+     * @param size a size returned by {@link #inListSizeFor(int)}
+     */
+    String getSelectByReferenceSql(EntityMetadata<?> entityMetadata, ColumnMetadata reference, int size) {
+        String[] bySize = selectByReferenceSql.computeIfAbsent(reference, column -> new String[inListSize + 1]);
+        String sql = bySize[size];
+        if (sql == null) {
+            sql = SqlGenerator.generateSelectByReferenceSql(entityMetadata, reference, size);
+            bySize[size] = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * @return the SQL selecting the first page of entities, or the page after an id
+     */
+    String getSelectPageSql(EntityMetadata<?> entityMetadata, boolean first) {
+        return selectPageSql.computeIfAbsent(entityMetadata.getEntityClass(), entityClass -> new String[]{
+                SqlGenerator.generateSelectPageSql(entityMetadata, true),
+                SqlGenerator.generateSelectPageSql(entityMetadata, false)
+        })[first ? 0 : 1];
+    }
+
+    /**
+     * @param columns the indexes of the updated columns, not modified by the caller afterwards
+     * @return the SQL updating some columns of an entity, built at the first use of each set of columns
+     */
+    String getUpdateSql(EntityMetadata<?> entityMetadata, BitSet columns) {
+        return updateSql
+                .computeIfAbsent(entityMetadata.getEntityClass(), entityClass -> new ConcurrentHashMap<>())
+                .computeIfAbsent(columns, updated -> SqlGenerator.generateUpdateSql(entityMetadata, updated));
+    }
+
+    /**
+     * @return the mapper of a projection of an entity, built at the first use
+     * @throws IllegalArgumentException if a property of the projection doesn't match a field of the entity
+     */
+    @SuppressWarnings("unchecked")
+    <P> ProjectionMapper<P> getProjection(EntityMetadata<?> entityMetadata, Class<P> projection) {
+        return (ProjectionMapper<P>) projections
+                .computeIfAbsent(entityMetadata.getEntityClass(), entityClass -> new ConcurrentHashMap<>())
+                .computeIfAbsent(projection, projectionClass -> ProjectionMapper.of(entityMetadata, projectionClass));
+    }
+
+    TypeCodecRegistry getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * @return the pool of the buffers reading and writing the files of the bulk loads and exports
+     */
+    ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Get an entity from the second level cache
+     * @return a new instance of the entity, empty if the class is not cached or the entity is not in the cache
+     */
+    <T> Optional<T> findInCache(EntityMetadata<T> entityMetadata, Object id) {
+        if (!cachedClasses.contains(entityMetadata.getEntityClass())) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(secondLevelCache.get(entityMetadata, id));
+    }
+
+    /**
+     * @return the generation of the entity class to give to {@link #cacheLoaded} once the entity has been read
+     */
+    long cacheGeneration(Class<?> entityClass) {
+        return cachedClasses.contains(entityClass) ? secondLevelCache.generation(entityClass) : 0;
+    }
+
+    /**
+     * Keep an entity read from the database in the second level cache if its class is cached
+     */
+    <T> void cacheLoaded(EntityMetadata<T> entityMetadata, T entity, long generation) {
+        if (cachedClasses.contains(entityMetadata.getEntityClass())) {
+            secondLevelCache.put(entityMetadata, entity, generation);
+        }
+    }
+
+    /**
+     * Remove an entity written in the database from the second level cache and the results of findAll of its table
+     */
+    <T> void invalidate(EntityMetadata<T> entityMetadata, T entity) {
+        if (cachedClasses.contains(entityMetadata.getEntityClass())) {
+            secondLevelCache.invalidate(entityMetadata, entity);
+        }
+        if (!findAllCachedClasses.isEmpty()) {
+            queryCache.invalidate(entityMetadata);
+        }
+    }
+
+    /**
+     * @return true if the result of findAll is cached for the class
+     */
+    boolean isFindAllCached(Class<?> entityClass) {
+        return findAllCachedClasses.contains(entityClass);
+    }
+
+    /**
+     * Get the cached result of findAll, the loader is run on a miss
+     * @return the unmodifiable list of the entities
+     */
+    <T> List<T> findAllCached(EntityMetadata<T> entityMetadata, QueryCache.Loader<T> loader) throws SQLException {
+        return queryCache.get(entityMetadata, loader);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the second level cache
+     */
+    public CacheStats getSecondLevelCacheStats() {
+        return secondLevelCache.stats();
+    }
+
+    /**
+     * @return the hit and miss counters of the cache of the findAll results, a caller waiting for the query of a concurrent miss counts as a hit
+     */
+    public CacheStats getQueryCacheStats() {
+        return queryCache.stats();
+    }
+
+    /**
+     * The entities with associations are found by a Session, which fetches the entities they are associated to
+     * @see EntityManager#find(Class, Object)
+     */
+    @Override
+    public <T> Optional<T> find(Class<T> entityClass, Object anyId) throws SQLException {
+        EntityMetadata<T> entityMetadata = getMetadata(entityClass);
+        Object id = entityMetadata.normalizeId(anyId);
+        if (entityMetadata.hasAssociations()) {
+            try (Session session = openSession()) {
+                return session.find(entityClass, id);
+            }
+        }
+        Optional<T> cached = findInCache(entityMetadata, id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        try (BasicSession session = openBasicSession()) {
+            return session.observe(Operation.FIND, entityClass, () -> session.load(entityMetadata, id));
+        }
     }
 
     /**
@@ -88,44 +360,162 @@ public class BasicEntityManager implements EntityManager {
      */
     @Override
     public <T> List<T> findAll(Class<T> entityClass) throws SQLException {
-        isManagedClass(entityClass);
+        EntityMetadata<T> entityMetadata = getMetadata(entityClass);
+        if (isFindAllCached(entityClass)) {
+            return findAllCached(entityMetadata, () -> {
+                try (BasicSession session = openBasicSession()) {
+                    return session.observe(Operation.FIND_ALL, entityClass, () -> session.queryAll(entityMetadata));
+                }
+            });
+        }
+        try (Session session = openSession()) {
+            return session.findAll(entityClass);
+        }
+    }
 
-        String selectQuery = "SELECT * FROM " + SqlGenerator.getTableForEntity(entityClass);
-        System.out.println(selectQuery);
-        NamedPreparedStatement statement = NamedPreparedStatement.prepare(datasource.getConnection(), selectQuery);
+    /**
+     * The entities with associations are found by a Session, which fetches the entities they are associated to
+     * @see EntityManager#findAllById(Class, Collection)
+     */
+    @Override
+    public <T> List<T> findAllById(Class<T> entityClass, Collection<?> anyIds) throws SQLException {
+        EntityMetadata<T> entityMetadata = getMetadata(entityClass);
+        List<Object> ids = entityMetadata.normalizeIds(anyIds);
+        if (entityMetadata.hasAssociations()) {
+            try (Session session = openSession()) {
+                return session.findAllById(entityClass, ids);
+            }
+        }
+        Map<Object, T> found = new HashMap<>();
+        List<Object> missing = new ArrayList<>();
+        for (Object id : new LinkedHashSet<>(ids)) {
+            if (id == null) continue;
+            Optional<T> cached = findInCache(entityMetadata, id);
+            if (cached.isPresent()) {
+                found.put(id, cached.get());
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            try (BasicSession session = openBasicSession()) {
+                found.putAll(session.observe(Operation.FIND_ALL_BY_ID, entityClass, () -> session.loadAllById(entityMetadata, missing)));
+            }
+        }
+        return BasicSession.inOrderOf(ids, found);
+    }
 
-        return MappingHelper.mapFromResultSet(entityClass, statement.executeQuery());
+    /**
+     * @see EntityManager#find(Class, Object, Class)
+     */
+    @Override
+    public <T, P> Optional<P> find(Class<T> entityClass, Object id, Class<P> projection) throws SQLException {
+        getProjection(getMetadata(entityClass), projection);
+        try (Session session = openSession()) {
+            return session.find(entityClass, id, projection);
+        }
     }
 
     /**
-     * @see EntityManager#save(Object)
+     * @see EntityManager#findAll(Class, Class)
      */
     @Override
-    public <T> Optional<T> save(T entity) throws SQLException {
-        isManagedClass(entity.getClass());
+    public <T, P> List<P> findAll(Class<T> entityClass, Class<P> projection) throws SQLException {
+        getProjection(getMetadata(entityClass), projection);
+        try (Session session = openSession()) {
+            return session.findAll(entityClass, projection);
+        }
+    }
 
-        ArrayList<String> fieldNames = new ArrayList<>();
-        ArrayList<String> fieldValues = new ArrayList<>();
+    /**
+     * @see EntityManager#findPage(Class, Object, int)
+     */
+    @Override
+    public <T> Page<T> findPage(Class<T> entityClass, Object afterId, int limit) throws SQLException {
+        getMetadata(entityClass);
+        try (Session session = openSession()) {
+            return session.findPage(entityClass, afterId, limit);
+        }
+    }
 
-        Map<String, Object> map = MappingHelper.entityToParams(entity);
+    /**
+     * @see EntityManager#stream(Class)
+     */
+    @Override
+    public <T> Stream<T> stream(Class<T> entityClass) throws SQLException {
+        getMetadata(entityClass);
+        Session session = openSession();
+        try {
+            return session.stream(entityClass).onClose(() -> {
+                try {
+                    session.close();
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error while releasing the connection", e);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
 
-        fieldNames.addAll(map.keySet());
-        map.values().forEach(value -> {
-            fieldValues.add(value.toString());
-        });
+    /**
+     * Each subscriber holds a connection of the pool from its first request until its subscription ends
+     * @see EntityManager#publish(Class, Executor)
+     */
+    @Override
+    public <T> Flow.Publisher<T> publish(Class<T> entityClass, Executor executor) {
+        getMetadata(entityClass);
+        return new EntityPublisher<>(() -> stream(entityClass), executor);
+    }
 
-        boolean idDefault = true;
-        String insertQuery = "INSERT INTO " + SqlGenerator.getTableForEntity(entity.getClass()) + " (" + (idDefault ? "id, " : "") + String.join(", ", fieldNames) + ") VALUES (" + (idDefault ? "default, " : "") + "'" + String.join("', '", fieldValues) + "')";
-        System.out.println(insertQuery);
-        NamedPreparedStatement statement = NamedPreparedStatement.prepareWithGeneratedKeys(datasource.getConnection(), insertQuery);
+    /**
+     * @see EntityManager#save(Object)
+     */
+    @Override
+    public <T> Optional<T> save(T entity) throws SQLException {
+        EntityMetadata<T> entityMetadata = getMetadataForEntity(entity);
+        if (writeBehind != null) {
+            queue(WriteBehindBuffer.Kind.INSERT, entityMetadata, entity, entityMetadata.isIdGenerated()
+                    ? WriteBehindBuffer.instanceKey(entity) : keyOf(entityMetadata, entity));
+            return Optional.of(entity);
+        }
+        try (Session session = openSession()) {
+            return session.save(entity);
+        }
+    }
 
-        statement.execute();
-        ResultSet resultSet = statement.getGeneratedKeys();
-        resultSet.next();
-        Long generatedId = resultSet.getLong(1);
-        ReflectionUtil.setValue(ReflectionUtil.getFieldByName(entity.getClass(), "id").get(), entity, generatedId);
+    /**
+     * @see EntityManager#saveAll(Collection)
+     */
+    @Override
+    public <T> List<T> saveAll(Collection<T> entities) throws SQLException {
+        entities.forEach(this::getMetadataForEntity);
+        if (writeBehind != null) {
+            for (T entity : entities) {
+                save(entity);
+            }
+            return new ArrayList<>(entities);
+        }
+        try (Session session = openSession()) {
+            return session.saveAll(entities);
+        }
+    }
 
-        return Optional.of(entity);
+    /**
+     * The entity is not known by a Session, all its columns are written
+     * @see EntityManager#update(Object)
+     */
+    @Override
+    public <T> boolean update(T entity) throws SQLException {
+        EntityMetadata<T> entityMetadata = getMetadataForEntity(entity);
+        if (writeBehind != null) {
+            queue(WriteBehindBuffer.Kind.UPDATE, entityMetadata, entity, keyOf(entityMetadata, entity));
+            return true;
+        }
+        try (Session session = openSession()) {
+            return session.update(entity);
+        }
     }
 
     /**
@@ -133,23 +523,293 @@ public class BasicEntityManager implements EntityManager {
      */
     @Override
     public <T> boolean delete(T entity) {
-        isManagedClass(entity.getClass());
-        try {
-            Field idField = ReflectionUtil.getFieldDeclaringAnnotation(entity.getClass(), Id.class).get();
-            String sql = SqlGenerator.generateDeleteSql(entity.getClass());
-            int affectedRows = executeUpdate(sql, new HashMap<String, Object>() {{
-                put(idField.getName(), ReflectionUtil.getValue(idField, entity).get());
-            }});
-            return affectedRows > 0;
+        EntityMetadata<T> entityMetadata = getMetadataForEntity(entity);
+        if (writeBehind != null) {
+            try {
+                queue(WriteBehindBuffer.Kind.DELETE, entityMetadata, entity, keyOf(entityMetadata, entity));
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        try (Session session = openSession()) {
+            return session.delete(entity);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
-    private <T> int executeUpdate(String sql, Map<String, Object> parameters) throws SQLException {
-        NamedPreparedStatement statement = NamedPreparedStatement.prepare(datasource.getConnection(), sql);
-        statement.setParameters(parameters);
-        return statement.executeUpdate();
+    /**
+     * Write now the writes waiting in the write-behind buffer, in one transaction
+     * @return the number of writes flushed, 0 if the write-behind mode is not enabled
+     * @throws SQLException if writes failed, they stay in the buffer and are retried by the next flush until they are
+     * written or given up
+     * @see Builder#writeBehindFailures(int, Consumer)
+     */
+    public int flush() throws SQLException {
+        return writeBehind == null ? 0 : writeBehind.flush();
+    }
+
+    /**
+     * @return the number of writes waiting in the write-behind buffer
+     */
+    public int getPendingWrites() {
+        return writeBehind == null ? 0 : writeBehind.size();
+    }
+
+    /**
+     * Stop the background flushes of the write-behind buffer and flush the writes left, the writes made afterwards
+     * are rejected. The flushes are retried up to the maximum number of attempts of the writes. Does nothing if the
+     * write-behind mode is not enabled, the DataSource is not closed.
+     * @throws SQLException if some of the writes left could not be flushed, they are left in the buffer, or were given up
+     */
+    @Override
+    public void close() throws SQLException {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    private <T> void queue(WriteBehindBuffer.Kind kind, EntityMetadata<T> entityMetadata, T entity, EntityKey key) throws SQLException {
+        try {
+            writeBehind.add(key, kind, entity);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for space in the write-behind buffer", e);
+        }
+        invalidate(entityMetadata, entity);
+    }
+
+    /**
+     * @return the key of an entity by its id, null if it has no id
+     */
+    private static <T> EntityKey keyOf(EntityMetadata<T> entityMetadata, T entity) {
+        Object id = entityMetadata.getIdColumn().getAccessor().get(entity);
+        return id == null ? null : new EntityKey(entityMetadata.getEntityClass(), id);
+    }
+
+    /**
+     * Create a loader inserting the rows of CSV or NDJSON files as entities of a class
+     * @param entityClass a persistent class
+     * @return a new BulkLoader, configured with its own setters
+     */
+    public <T> BulkLoader<T> bulkLoader(Class<T> entityClass) {
+        return new BulkLoader<>(this, getMetadata(entityClass));
+    }
+
+    /**
+     * Create an exporter writing the rows of the table of a class into CSV or NDJSON files, without creating the entities
+     * @param entityClass a persistent class
+     * @return a new BulkExporter, configured with its own setters
+     */
+    public <T> BulkExporter<T> bulkExporter(Class<T> entityClass) {
+        return new BulkExporter<>(this, getMetadata(entityClass));
+    }
+
+    /**
+     * @see EntityManager#openSession()
+     */
+    @Override
+    public Session openSession() throws SQLException {
+        return openBasicSession();
+    }
+
+    /**
+     * Open a Session, the time spent to get its connection is measured when listeners are registered
+     */
+    BasicSession openBasicSession() throws SQLException {
+        if (listeners.length == 0) {
+            return new BasicSession(this, datasource.getConnection(), null);
+        }
+        long start = System.nanoTime();
+        Connection connection = datasource.getConnection();
+        return new BasicSession(this, connection, new OperationRecorder(listeners, System.nanoTime() - start));
+    }
+
+    /**
+     * Configuration of a BasicEntityManager
+     */
+    public static class Builder {
+
+        private final DataSource dataSource;
+        private final Set<Class<?>> persistentClasses;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+        private int inListSize = DEFAULT_IN_LIST_SIZE;
+        private TypeCodecRegistry codecs = TypeCodecRegistry.defaults();
+        private final Set<Class<?>> cachedClasses = new HashSet<>();
+        private int cacheMaxEntries = DEFAULT_CACHE_MAX_ENTRIES;
+        private Duration cacheTimeToLive = Duration.ZERO;
+        private final Set<Class<?>> findAllCachedClasses = new HashSet<>();
+        private int writeBehindCapacity = 0;
+        private Duration writeBehindInterval;
+        private int writeBehindMaxAttempts = DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS;
+        private Consumer<FailedWrite> failedWrites = null;
+        private final List<EntityManagerListener> listeners = new ArrayList<>();
+
+        private Builder(DataSource aDataSource, Set<Class<?>> aPersistentClasses) {
+            dataSource = aDataSource;
+            persistentClasses = aPersistentClasses;
+        }
+
+        /**
+         * @param size the number of rows sent in one JDBC batch by saveAll, default to {@value BasicEntityManager#DEFAULT_BATCH_SIZE}
+         * @return this Builder
+         */
+        public Builder batchSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("The batch size should be positive");
+            }
+            batchSize = size;
+            return this;
+        }
+
+        /**
+         * @param size the number of rows fetched in one round-trip by stream, default to {@value BasicEntityManager#DEFAULT_FETCH_SIZE}
+         * @return this Builder
+         */
+        public Builder fetchSize(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("The fetch size can't be negative");
+            }
+            fetchSize = size;
+            return this;
+        }
+
+        /**
+         * @param size the maximum number of ids sent in the IN list of one query by findAllById, default to {@value BasicEntityManager#DEFAULT_IN_LIST_SIZE}
+         * @return this Builder
+         */
+        public Builder inListSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("The IN list size should be positive");
+            }
+            inListSize = size;
+            return this;
+        }
+
+        /**
+         * Register the codec used to read and bind the values of a type, it replaces the built-in codec of the type
+         * @param type the Java type converted
+         * @param codec the codec of the type
+         * @return this Builder
+         */
+        public <T> Builder codec(Class<T> type, TypeCodec<T> codec) {
+            codecs = codecs.with(type, codec);
+            return this;
+        }
+
+        /**
+         * Keep the entities of a class in the second level cache, as if the class was annotated with <code>@Cacheable</code>
+         * @param entityClass a persistent class
+         * @return this Builder
+         */
+        public Builder cacheable(Class<?> entityClass) {
+            if (!persistentClasses.contains(entityClass)) {
+                throw new IllegalArgumentException("The class " + entityClass.getName() + " is not a persistent class of this EntityManager");
+            }
+            cachedClasses.add(entityClass);
+            return this;
+        }
+
+        /**
+         * Keep the result of findAll for a class until the next write in its table, as if the class was annotated with
+         * <code>@Cacheable(findAll = true)</code>.
+         * The list returned is unmodifiable and its entities are shared by all the callers, they should not be modified.
+         * @param entityClass a persistent class
+         * @return this Builder
+         */
+        public Builder cacheFindAll(Class<?> entityClass) {
+            cacheable(entityClass);
+            findAllCachedClasses.add(entityClass);
+            return this;
+        }
+
+        /**
+         * @param maxEntries the maximum number of entities kept in the second level cache, default to {@value BasicEntityManager#DEFAULT_CACHE_MAX_ENTRIES}
+         * @return this Builder
+         */
+        public Builder cacheMaxEntries(int maxEntries) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("The maximum number of cache entries should be positive");
+            }
+            cacheMaxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param timeToLive the time an entity stays in the second level cache after being read, zero for no expiration (the default)
+         * @return this Builder
+         */
+        public Builder cacheTimeToLive(Duration timeToLive) {
+            if (timeToLive.isNegative()) {
+                throw new IllegalArgumentException("The time to live of the cache entries can't be negative");
+            }
+            cacheTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Enable the write-behind mode : save, saveAll, update and delete queue their writes in a bounded buffer
+         * instead of writing them, the writes of the same entity are coalesced. The buffer is flushed in one transaction
+         * with JDBC batches by a background thread every flush interval, or as soon as a batch of writes is queued.
+         * The reads and the Sessions don't see the queued writes, use {@link BasicEntityManager#flush()} to write them
+         * now and {@link BasicEntityManager#close()} to flush them before shutting down.
+         * The generated ids of the saved entities are set when they are flushed.
+         * @param capacity the maximum number of entities waiting in the buffer, the writers wait for a flush when it is full
+         * @param flushInterval the maximum time a write waits in the buffer
+         * @return this Builder
+         */
+        public Builder writeBehind(int capacity, Duration flushInterval) {
+            if (capacity < 1 || flushInterval.isNegative() || flushInterval.isZero()) {
+                throw new IllegalArgumentException("The write-behind capacity and flush interval should be positive");
+            }
+            writeBehindCapacity = capacity;
+            writeBehindInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Give up the writes of the write-behind buffer that can't be written. The writes of a failed flush are applied
+         * again one by one, those failing again are retried by the next flushes and given up after their maximum number
+         * of attempts : they are removed from the buffer and handed to the handler, which is called by the thread running
+         * the flush. A flush failing to get a connection doesn't count as an attempt.
+         * Without handler the writes are never given up, they stay in the buffer until they are written and
+         * {@link BasicEntityManager#close()} fails if some are left. In both cases the failures of the background
+         * flushes are reported to the listeners by {@link EntityManagerListener#onWriteBehindFailure(Exception)}.
+         * @param maxAttempts the number of flushes trying a write, default to {@value BasicEntityManager#DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS}
+         * @param handler the handler of the writes given up
+         * @return this Builder
+         */
+        public Builder writeBehindFailures(int maxAttempts, Consumer<FailedWrite> handler) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("The maximum number of attempts should be positive");
+            }
+            writeBehindMaxAttempts = maxAttempts;
+            failedWrites = Objects.requireNonNull(handler);
+            return this;
+        }
+
+        /**
+         * Register a listener of the statements and the operations, the listeners are called in their order of
+         * registration. Without listener nothing is measured nor printed.
+         * @param listener a listener, such as a {@link MetricsListener} or a {@link LoggingListener}
+         * @return this Builder
+         */
+        public Builder listener(EntityManagerListener listener) {
+            listeners.add(Objects.requireNonNull(listener));
+            return this;
+        }
+
+        /**
+         * Create the BasicEntityManager and check the persistents classes
+         * @return The BasicEntityManager created
+         * @throws IllegalArgumentException if a class does not match the conditions to be persistent
+         */
+        public BasicEntityManager build() {
+            return new BasicEntityManager(this, readPersistentClasses(persistentClasses, codecs));
+        }
     }
 }
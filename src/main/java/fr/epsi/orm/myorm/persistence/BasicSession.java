@@ -0,0 +1,1118 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Session of a {@link BasicEntityManager}, running the operations on one connection.
+ *
+ * The statements are prepared once per SQL and kept open until the Session is closed.
+ * The entities found and saved are kept in an identity map indexed by {@link EntityKey}, except the cached results of findAll
+ * that are shared with the other sessions.
+ * The associations of the entities found are fetched with one query per association and chunk of ids, see
+ * {@link #fetchAssociations}.
+ * When the EntityManager has listeners, the operations are measured by an {@link OperationRecorder}.
+ */
+class BasicSession implements Session {
+
+    private final BasicEntityManager entityManager;
+    private final Connection connection;
+    private final Map<String, NamedPreparedStatement> statements = new HashMap<>();
+    private final Map<String, NamedPreparedStatement> statementsWithKeys = new HashMap<>();
+    private final Map<EntityKey, Object> identityMap = new HashMap<>();
+    private final Map<EntityKey, Object[]> snapshots = new HashMap<>();
+    private final Set<EntityKey> fetchedCollections = new HashSet<>();
+    private final OperationRecorder recorder;
+    private long identityMapHits = 0;
+    private long identityMapMisses = 0;
+    private int openings = 1;
+    private boolean closed = false;
+
+    /**
+     * @param aRecorder the recorder of the operations, null if the EntityManager has no listener
+     */
+    BasicSession(BasicEntityManager aEntityManager, Connection aConnection, OperationRecorder aRecorder) {
+        entityManager = aEntityManager;
+        connection = aConnection;
+        recorder = aRecorder;
+    }
+
+    /**
+     * Run an operation, measured if the Session has a recorder and no operation is already in progress
+     */
+    <R> R observe(Operation operation, Class<?> entityClass, SqlCall<R> call) throws SQLException {
+        if (recorder == null || !recorder.start(operation, entityClass)) {
+            return call.call();
+        }
+        Throwable failure = null;
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            recorder.finish(failure);
+        }
+    }
+
+    @FunctionalInterface
+    interface SqlCall<R> {
+        R call() throws SQLException;
+    }
+
+    /**
+     * Look for the entity in the identity map, then in the second level cache and query the database at last
+     * @see EntityManager#find(Class, Object)
+     */
+    @Override
+    public <T> Optional<T> find(Class<T> entityClass, Object anyId) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        Object id = entityMetadata.normalizeId(anyId);
+
+        checkOpen();
+        return observe(Operation.FIND, entityClass, () -> {
+            Object known = identityMap.get(new EntityKey(entityClass, id));
+            if (known != null) {
+                identityMapHits++;
+                T entity = entityClass.cast(known);
+                fetchAssociations(entityMetadata, Collections.emptyList(), Collections.singletonList(entity));
+                return Optional.of(entity);
+            }
+            identityMapMisses++;
+
+            Optional<T> found = entityManager.findInCache(entityMetadata, id);
+            if (found.isPresent()) {
+                found = Optional.of(manage(entityMetadata, found.get()));
+            } else {
+                found = load(entityMetadata, id);
+            }
+            if (found.isPresent()) {
+                List<T> loaded = Collections.singletonList(found.get());
+                fetchAssociations(entityMetadata, loaded, loaded);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Query an entity by id, the entity read is kept in the identity map and the second level cache
+     */
+    <T> Optional<T> load(EntityMetadata<T> entityMetadata, Object id) throws SQLException {
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+        long generation = entityManager.cacheGeneration(entityMetadata.getEntityClass());
+
+        NamedPreparedStatement statement = prepare(mapper.getSqlTemplates().getSelectById());
+        statement.setParameter(entityMetadata.getIdColumn().getFieldName(), id);
+
+        try (ResultSet resultSet = executeQuery(statement)) {
+            long start = startMapping();
+            if (!resultSet.next()) {
+                return Optional.empty();
+            }
+            T entity = mapper.rowMapper(resultSet.getMetaData()).map(resultSet);
+            mapped(start, 1);
+            entityManager.cacheLoaded(entityMetadata, entity, generation);
+            return Optional.of(manage(entityMetadata, entity));
+        }
+    }
+
+    /**
+     * Look for the entities in the identity map, then in the second level cache and query the others by chunks
+     * @see EntityManager#findAllById(Class, Collection)
+     */
+    @Override
+    public <T> List<T> findAllById(Class<T> entityClass, Collection<?> anyIds) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        List<Object> ids = entityMetadata.normalizeIds(anyIds);
+
+        checkOpen();
+        return observe(Operation.FIND_ALL_BY_ID, entityClass, () -> {
+            Map<Object, T> found = new HashMap<>();
+            List<T> loaded = new ArrayList<>();
+            List<Object> missing = new ArrayList<>();
+            for (Object id : new LinkedHashSet<>(ids)) {
+                if (id == null) continue;
+                Object known = identityMap.get(new EntityKey(entityClass, id));
+                if (known != null) {
+                    identityMapHits++;
+                    found.put(id, entityClass.cast(known));
+                    continue;
+                }
+                identityMapMisses++;
+                Optional<T> cached = entityManager.findInCache(entityMetadata, id);
+                if (cached.isPresent()) {
+                    T entity = manage(entityMetadata, cached.get());
+                    found.put(id, entity);
+                    loaded.add(entity);
+                } else {
+                    missing.add(id);
+                }
+            }
+            Map<Object, T> queried = loadAllById(entityMetadata, missing);
+            found.putAll(queried);
+            loaded.addAll(queried.values());
+            List<T> result = inOrderOf(ids, found);
+            fetchAssociations(entityMetadata, loaded, result);
+            return result;
+        });
+    }
+
+    /**
+     * Query entities by ids with one query per chunk of ids, the last chunk is padded by repeating its last id so the
+     * queries keep the shapes already prepared. The entities read are kept in the identity map and the second level cache.
+     * @param ids distinct non null ids
+     * @return the entities found indexed by id
+     */
+    <T> Map<Object, T> loadAllById(EntityMetadata<T> entityMetadata, List<?> ids) throws SQLException {
+        Map<Object, T> result = new HashMap<>();
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+        ColumnMetadata idColumn = entityMetadata.getIdColumn();
+        long generation = entityManager.cacheGeneration(entityMetadata.getEntityClass());
+        int maxSize = entityManager.getInListSize();
+
+        for (int start = 0; start < ids.size(); start += maxSize) {
+            List<?> chunk = ids.subList(start, Math.min(start + maxSize, ids.size()));
+            int size = entityManager.inListSizeFor(chunk.size());
+            NamedPreparedStatement statement = prepare(entityManager.getSelectByIdsSql(entityMetadata, size));
+            for (int i = 0; i < size; i++) {
+                statement.setParameter(idColumn.getFieldName() + i, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long mappingStart = startMapping();
+                int rows = 0;
+                RowMapper<T> rowMapper = mapper.rowMapper(resultSet.getMetaData());
+                while (resultSet.next()) {
+                    T entity = rowMapper.map(resultSet);
+                    entityManager.cacheLoaded(entityMetadata, entity, generation);
+                    entity = manage(entityMetadata, entity);
+                    result.put(idColumn.getAccessor().get(entity), entity);
+                    rows++;
+                }
+                mapped(mappingStart, rows);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetch the associations of the entities returned by an operation, with one query per association and chunk of ids
+     * whatever the number of entities. The references of the entities read are replaced by the entities referenced,
+     * which are read in turn with their own references, and the collections of the entities returned are loaded once per
+     * Session. The collections of the entities reached through a reference or a collection are not loaded.
+     * @param loaded the entities just read and now kept in the identity map, their references only hold the id of the
+     *               entity referenced
+     * @param roots the entities returned by the operation
+     */
+    private <T> void fetchAssociations(EntityMetadata<T> entityMetadata, List<T> loaded, List<T> roots) throws SQLException {
+        if (!entityMetadata.hasAssociations()) {
+            return;
+        }
+        Map<Class<?>, List<Object>> unresolved = new LinkedHashMap<>();
+        if (!loaded.isEmpty()) {
+            unresolved.put(entityMetadata.getEntityClass(), new ArrayList<>(loaded));
+        }
+        fetchCollections(entityMetadata, roots, unresolved);
+        while (!unresolved.isEmpty()) {
+            Iterator<Map.Entry<Class<?>, List<Object>>> next = unresolved.entrySet().iterator();
+            Map.Entry<Class<?>, List<Object>> entry = next.next();
+            next.remove();
+            resolveReferences(entityManager.getMetadata(entry.getKey()), entry.getValue(), unresolved);
+        }
+    }
+
+    /**
+     * Replace the references of entities by the entities referenced, looked for in the identity map, then in the second
+     * level cache and queried by chunks of ids at last. The snapshots of the entities are taken again with the entities
+     * referenced, so they are not seen as changed.
+     * @param unresolved the entities whose references are still to resolve by class, the entities read are added to it
+     */
+    private <E> void resolveReferences(EntityMetadata<E> entityMetadata, List<Object> entities, Map<Class<?>, List<Object>> unresolved) throws SQLException {
+        boolean resolved = false;
+        for (ColumnMetadata column : entityMetadata.getColumns()) {
+            if (column.isReference()) {
+                resolveReference(entityManager.getMetadata(column.getType()), column, entities, unresolved);
+                resolved = true;
+            }
+        }
+        if (resolved) {
+            for (Object entity : entities) {
+                E resolvedEntity = entityMetadata.getEntityClass().cast(entity);
+                snapshots.computeIfPresent(keyOf(entityMetadata, resolvedEntity), (key, snapshot) -> snapshot(entityMetadata, resolvedEntity));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void resolveReference(EntityMetadata<R> referenced, ColumnMetadata column, List<Object> entities,
+                                     Map<Class<?>, List<Object>> unresolved) throws SQLException {
+        Class<R> referencedClass = referenced.getEntityClass();
+        ReferenceCodec<R> codec = (ReferenceCodec<R>) column.getCodec();
+        PropertyAccessor accessor = column.getAccessor();
+        Map<Object, R> found = new HashMap<>();
+        Set<Object> missing = new LinkedHashSet<>();
+        List<Object> read = new ArrayList<>();
+        for (Object entity : entities) {
+            Object reference = accessor.get(entity);
+            if (reference == null) continue;
+            Object id = codec.idOf(referencedClass.cast(reference));
+            if (found.containsKey(id) || missing.contains(id)) continue;
+            Object known = identityMap.get(new EntityKey(referencedClass, id));
+            if (known != null) {
+                found.put(id, referencedClass.cast(known));
+                continue;
+            }
+            Optional<R> cached = entityManager.findInCache(referenced, id);
+            if (cached.isPresent()) {
+                R managed = manage(referenced, cached.get());
+                found.put(id, managed);
+                read.add(managed);
+            } else {
+                missing.add(id);
+            }
+        }
+        Map<Object, R> queried = loadAllById(referenced, new ArrayList<>(missing));
+        found.putAll(queried);
+        read.addAll(queried.values());
+
+        for (Object entity : entities) {
+            Object reference = accessor.get(entity);
+            if (reference == null) continue;
+            R target = found.get(codec.idOf(referencedClass.cast(reference)));
+            if (target != null) {
+                accessor.set(entity, target);
+            }
+        }
+        if (!read.isEmpty() && referenced.hasAssociations()) {
+            unresolved.computeIfAbsent(referencedClass, entityClass -> new ArrayList<>()).addAll(read);
+        }
+    }
+
+    /**
+     * Load the collections of the entities whose collections are not loaded yet in this Session, with one query per
+     * collection and chunk of ids
+     * @param unresolved the entities whose references are still to resolve by class, the entities read are added to it
+     */
+    private <T> void fetchCollections(EntityMetadata<T> entityMetadata, List<T> roots, Map<Class<?>, List<Object>> unresolved) throws SQLException {
+        if (entityMetadata.getCollections().isEmpty()) {
+            return;
+        }
+        Map<Object, T> owners = new LinkedHashMap<>();
+        for (T root : roots) {
+            EntityKey key = keyOf(entityMetadata, root);
+            if (!fetchedCollections.contains(key)) {
+                owners.put(key.getId(), root);
+            }
+        }
+        if (owners.isEmpty()) {
+            return;
+        }
+        for (CollectionMetadata collection : entityMetadata.getCollections()) {
+            fetchCollection(entityManager.getMetadata(collection.getElementClass()), collection, owners, unresolved);
+        }
+        for (T owner : owners.values()) {
+            fetchedCollections.add(keyOf(entityMetadata, owner));
+        }
+    }
+
+    /**
+     * Query the entities of a collection for all its owners, selected with an IN list of the ids of the owners. The
+     * reference of each entity read to the owner of the collection is set to the owner.
+     * @param owners the owners of the collection indexed by id
+     */
+    @SuppressWarnings("unchecked")
+    private <E> void fetchCollection(EntityMetadata<E> elements, CollectionMetadata collection, Map<Object, ?> owners,
+                                     Map<Class<?>, List<Object>> unresolved) throws SQLException {
+        ColumnMetadata reference = elements.getColumns().stream()
+                .filter(column -> column.getFieldName().equals(collection.getMappedBy()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No column " + collection.getMappedBy() + " in " + elements.getEntityClass().getName()));
+        ReferenceCodec<Object> codec = (ReferenceCodec<Object>) reference.getCodec();
+        EntityMapper<E> mapper = entityManager.getMapper(elements.getEntityClass());
+        long generation = entityManager.cacheGeneration(elements.getEntityClass());
+        int maxSize = entityManager.getInListSize();
+
+        List<Object> ids = new ArrayList<>(owners.keySet());
+        Map<Object, List<E>> byOwner = new HashMap<>();
+        for (Object id : ids) {
+            byOwner.put(id, new ArrayList<>());
+        }
+        List<Object> read = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += maxSize) {
+            List<Object> chunk = ids.subList(start, Math.min(start + maxSize, ids.size()));
+            int size = entityManager.inListSizeFor(chunk.size());
+            NamedPreparedStatement statement = prepare(entityManager.getSelectByReferenceSql(elements, reference, size));
+            for (int i = 0; i < size; i++) {
+                statement.setParameter(reference.getFieldName() + i, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long mappingStart = startMapping();
+                int rows = 0;
+                RowMapper<E> rowMapper = mapper.rowMapper(resultSet.getMetaData());
+                while (resultSet.next()) {
+                    E element = rowMapper.map(resultSet);
+                    Object ownerId = codec.idOf(reference.getAccessor().get(element));
+                    entityManager.cacheLoaded(elements, element, generation);
+                    E managed = manage(elements, element);
+                    if (managed == element) {
+                        reference.getAccessor().set(element, owners.get(ownerId));
+                        read.add(element);
+                    }
+                    byOwner.get(ownerId).add(managed);
+                    rows++;
+                }
+                mapped(mappingStart, rows);
+            }
+        }
+        for (Map.Entry<Object, ?> owner : owners.entrySet()) {
+            collection.getAccessor().set(owner.getValue(), byOwner.get(owner.getKey()));
+        }
+        if (!read.isEmpty()) {
+            unresolved.computeIfAbsent(elements.getEntityClass(), entityClass -> new ArrayList<>()).addAll(read);
+        }
+    }
+
+    /**
+     * @return the entities found for the ids, in the order of the ids
+     */
+    static <T> List<T> inOrderOf(Collection<?> ids, Map<Object, T> found) {
+        List<T> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            T entity = found.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The projections are not entities, they are neither kept in the identity map nor in the caches
+     * @see EntityManager#find(Class, Object, Class)
+     */
+    @Override
+    public <T, P> Optional<P> find(Class<T> entityClass, Object id, Class<P> projection) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        ProjectionMapper<P> mapper = entityManager.getProjection(entityMetadata, projection);
+
+        checkOpen();
+        return observe(Operation.FIND, entityClass, () -> {
+            NamedPreparedStatement statement = prepare(mapper.getSelectById());
+            statement.setParameter(entityMetadata.getIdColumn().getFieldName(), id);
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long start = startMapping();
+                if (!resultSet.next()) {
+                    return Optional.empty();
+                }
+                P found = mapper.map(resultSet);
+                mapped(start, 1);
+                return Optional.of(found);
+            }
+        });
+    }
+
+    /**
+     * The projections are not entities, they are neither kept in the identity map nor in the caches
+     * @see EntityManager#findAll(Class, Class)
+     */
+    @Override
+    public <T, P> List<P> findAll(Class<T> entityClass, Class<P> projection) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        ProjectionMapper<P> mapper = entityManager.getProjection(entityMetadata, projection);
+
+        checkOpen();
+        return observe(Operation.FIND_ALL, entityClass, () -> {
+            NamedPreparedStatement statement = prepare(mapper.getSelectAll());
+            List<P> result = new ArrayList<>();
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long start = startMapping();
+                while (resultSet.next()) {
+                    result.add(mapper.map(resultSet));
+                }
+                mapped(start, result.size());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * One more row than the limit is read to know if a next page exists, the entities read are kept in the identity map
+     * @see EntityManager#findPage(Class, Object, int)
+     */
+    @Override
+    public <T> Page<T> findPage(Class<T> entityClass, Object anyAfterId, int limit) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        Object afterId = entityMetadata.normalizeId(anyAfterId);
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit of a page should be positive, got " + limit);
+        }
+        EntityMapper<T> mapper = entityManager.getMapper(entityClass);
+        ColumnMetadata idColumn = entityMetadata.getIdColumn();
+
+        checkOpen();
+        return observe(Operation.FIND_PAGE, entityClass, () -> {
+            NamedPreparedStatement statement = prepare(entityManager.getSelectPageSql(entityMetadata, afterId == null));
+            if (afterId != null) {
+                statement.setParameter(idColumn.getFieldName(), afterId);
+            }
+            int maxRows = limit == Integer.MAX_VALUE ? 0 : limit + 1;
+            statement.setMaxRows(maxRows);
+            statement.setFetchSize(Math.min(maxRows, entityManager.getFetchSize()));
+
+            List<T> content = new ArrayList<>(Math.min(limit, entityManager.getFetchSize()));
+            List<T> loaded = new ArrayList<>();
+            boolean hasNext = false;
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long start = startMapping();
+                RowMapper<T> rowMapper = mapper.rowMapper(resultSet.getMetaData());
+                while (resultSet.next()) {
+                    if (content.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+                    T entity = rowMapper.map(resultSet);
+                    T managed = manage(entityMetadata, entity);
+                    if (managed == entity) {
+                        loaded.add(entity);
+                    }
+                    content.add(managed);
+                }
+                mapped(start, content.size());
+            }
+            fetchAssociations(entityMetadata, loaded, content);
+            Object lastId = content.isEmpty() ? afterId : idColumn.getAccessor().get(content.get(content.size() - 1));
+            return new Page<>(Collections.unmodifiableList(content), lastId, hasNext);
+        });
+    }
+
+    /**
+     * @see EntityManager#findAll(Class)
+     */
+    @Override
+    public <T> List<T> findAll(Class<T> entityClass) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadata(entityClass);
+        return observe(Operation.FIND_ALL, entityClass, () -> {
+            if (entityManager.isFindAllCached(entityClass)) {
+                return entityManager.findAllCached(entityMetadata, () -> queryAll(entityMetadata));
+            }
+            List<T> entities = queryAll(entityMetadata);
+            List<T> loaded = new ArrayList<>();
+            for (ListIterator<T> iterator = entities.listIterator(); iterator.hasNext(); ) {
+                T entity = iterator.next();
+                T managed = manage(entityMetadata, entity);
+                if (managed == entity) {
+                    loaded.add(entity);
+                } else {
+                    iterator.set(managed);
+                }
+            }
+            fetchAssociations(entityMetadata, loaded, entities);
+            return entities;
+        });
+    }
+
+    /**
+     * Query all the entities of a class, the entities read are not kept in the identity map
+     */
+    <T> List<T> queryAll(EntityMetadata<T> entityMetadata) throws SQLException {
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+
+        NamedPreparedStatement statement = prepare(mapper.getSqlTemplates().getSelectAll());
+        try (ResultSet resultSet = executeQuery(statement)) {
+            long start = startMapping();
+            List<T> entities = MappingHelper.mapFromResultSet(mapper, resultSet);
+            mapped(start, entities.size());
+            return entities;
+        }
+    }
+
+    /**
+     * The streamed entities are not kept in the identity map, the Stream is meant to read more rows than the memory can hold.
+     * Their associations are not fetched : their references only hold the id of the entity referenced and their collections
+     * are not loaded.
+     * @see EntityManager#stream(Class)
+     */
+    @Override
+    public <T> Stream<T> stream(Class<T> entityClass) throws SQLException {
+        entityManager.getMetadata(entityClass);
+        EntityMapper<T> mapper = entityManager.getMapper(entityClass);
+
+        checkOpen();
+        String sql = mapper.getSqlTemplates().getSelectAll();
+        NamedPreparedStatement statement = NamedPreparedStatement.prepare(connection, sql, Statement.NO_GENERATED_KEYS, entityManager.getCodecs());
+        try {
+            statement.setFetchSize(entityManager.getFetchSize());
+            ResultSet resultSet = executeQuery(statement);
+            return MappingHelper.streamFromResultSet(mapper, resultSet)
+                    .onClose(() -> closeAll(resultSet, statement));
+        } catch (SQLException | RuntimeException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Query all the rows of the table of an entity and give them to a handler without mapping them to entities, the rows
+     * are fetched by chunks of the fetch size. The time spent by the handler is measured as mapping time.
+     * @return the number of rows read
+     * @see BulkExporter
+     */
+    long forEachRow(EntityMetadata<?> entityMetadata, int fetchSize, RowHandler handler) throws SQLException {
+        String sql = entityManager.getMapper(entityMetadata.getEntityClass()).getSqlTemplates().getSelectAll();
+
+        checkOpen();
+        return observe(Operation.FIND_ALL, entityMetadata.getEntityClass(), () -> {
+            NamedPreparedStatement statement = prepare(sql);
+            statement.setFetchSize(fetchSize);
+            long rows = 0;
+            try (ResultSet resultSet = executeQuery(statement)) {
+                long start = startMapping();
+                while (resultSet.next()) {
+                    handler.handle(resultSet);
+                    rows++;
+                }
+                mapped(start, rows);
+            }
+            return rows;
+        });
+    }
+
+    @FunctionalInterface
+    interface RowHandler {
+        void handle(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * The session should stay open until the subscriptions end, the subscriptions share its connection
+     * @see EntityManager#publish(Class, Executor)
+     */
+    @Override
+    public <T> Flow.Publisher<T> publish(Class<T> entityClass, Executor executor) {
+        entityManager.getMetadata(entityClass);
+        return new EntityPublisher<>(() -> stream(entityClass), executor);
+    }
+
+    private static void closeAll(AutoCloseable... resources) {
+        Exception failure = null;
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                if (failure == null) failure = e; else failure.addSuppressed(e);
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException("Error while releasing the database resources", failure);
+        }
+    }
+
+    /**
+     * @see EntityManager#save(Object)
+     */
+    @Override
+    public <T> Optional<T> save(T entity) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadataForEntity(entity);
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+
+        return observe(Operation.SAVE, entityMetadata.getEntityClass(), () -> {
+            NamedPreparedStatement statement = prepareWithGeneratedKeys(mapper.getSqlTemplates().getInsert());
+            mapper.bind(entity, statement);
+            executeUpdate(statement);
+
+            if (entityMetadata.isIdGenerated()) {
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    if (!resultSet.next()) {
+                        return Optional.empty();
+                    }
+                    MappingHelper.readGeneratedKey(resultSet, entity, entityMetadata.getIdColumn());
+                }
+            }
+
+            entityManager.invalidate(entityMetadata, entity);
+            register(entityMetadata, entity);
+            return Optional.of(entity);
+        });
+    }
+
+    /**
+     * @see EntityManager#saveAll(Collection)
+     */
+    @Override
+    public <T> List<T> saveAll(Collection<T> entities) throws SQLException {
+        Map<Class<?>, List<T>> byClass = new LinkedHashMap<>();
+        for (T entity : entities) {
+            entityManager.getMetadataForEntity(entity);
+            byClass.computeIfAbsent(entity.getClass(), entityClass -> new ArrayList<>()).add(entity);
+        }
+        return observe(Operation.SAVE_ALL, byClass.size() == 1 ? byClass.keySet().iterator().next() : null, () -> {
+            inTransaction(() -> {
+                for (List<T> group : byClass.values()) {
+                    insertBatches(group);
+                }
+            });
+            for (T entity : entities) {
+                EntityMetadata<T> entityMetadata = entityManager.getMetadataForEntity(entity);
+                entityManager.invalidate(entityMetadata, entity);
+                register(entityMetadata, entity);
+            }
+            return new ArrayList<>(entities);
+        });
+    }
+
+    /**
+     * Insert entities of one class in JDBC batches in one transaction, the entities are not kept in the identity map
+     * @see BulkLoader
+     */
+    <T> void insertAll(EntityMetadata<T> entityMetadata, List<T> entities) throws SQLException {
+        checkOpen();
+        observe(Operation.SAVE_ALL, entityMetadata.getEntityClass(), () -> {
+            inTransaction(() -> insertBatches(entities));
+            for (T entity : entities) {
+                entityManager.invalidate(entityMetadata, entity);
+            }
+            return entities.size();
+        });
+    }
+
+    private <T> void insertBatches(List<T> entities) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadataForEntity(entities.get(0));
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+        ColumnMetadata idColumn = entityMetadata.getIdColumn();
+        int batchSize = entityManager.getBatchSize();
+
+        NamedPreparedStatement statement = prepareWithGeneratedKeys(mapper.getSqlTemplates().getInsert());
+        for (int start = 0; start < entities.size(); start += batchSize) {
+            List<T> chunk = entities.subList(start, Math.min(start + batchSize, entities.size()));
+            for (T entity : chunk) {
+                mapper.bind(entity, statement);
+                statement.addBatch();
+            }
+            executeBatch(statement);
+
+            if (entityMetadata.isIdGenerated()) {
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    for (T entity : chunk) {
+                        if (!resultSet.next()) {
+                            throw new SQLException("The driver returned less generated keys than inserted rows for " + entityMetadata.getTableName());
+                        }
+                        MappingHelper.readGeneratedKey(resultSet, entity, idColumn);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a work in a transaction, if the connection is in auto-commit the transaction is committed at the end of the work
+     * and rollbacked if it fails, else the work joins the transaction in progress
+     */
+    private void inTransaction(SqlWork work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            work.run();
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Apply the writes drained from a write-behind buffer in one transaction. The deletes are sent first, the classes
+     * referencing others by <code>@ManyToOne</code> before the classes they reference, then the inserts in the reverse
+     * order of the classes and the updates, each in JDBC batches.
+     */
+    void applyWrites(List<WriteBehindBuffer.PendingWrite> writes) throws SQLException {
+        Map<Class<?>, List<WriteBehindBuffer.PendingWrite>> byClass = WriteBehindBuffer.byClass(writes, entityManager::getMetadata);
+        List<Class<?>> parentsFirst = new ArrayList<>(byClass.keySet());
+        List<Class<?>> childrenFirst = new ArrayList<>(parentsFirst);
+        Collections.reverse(childrenFirst);
+        observe(Operation.FLUSH, null, () -> {
+            inTransaction(() -> {
+                for (Class<?> entityClass : childrenFirst) {
+                    applyDeletes(entityManager.getMetadata(entityClass), byClass.get(entityClass));
+                }
+                for (Class<?> entityClass : parentsFirst) {
+                    applyInserts(entityManager.getMetadata(entityClass), byClass.get(entityClass));
+                }
+                for (Class<?> entityClass : parentsFirst) {
+                    applyUpdates(entityManager.getMetadata(entityClass), byClass.get(entityClass));
+                }
+            });
+            for (WriteBehindBuffer.PendingWrite write : writes) {
+                entityManager.invalidate(entityManager.getMetadataForEntity(write.entity), write.entity);
+            }
+            return writes.size();
+        });
+    }
+
+    private <T> void applyDeletes(EntityMetadata<T> entityMetadata, List<WriteBehindBuffer.PendingWrite> writes) throws SQLException {
+        ColumnMetadata idColumn = entityMetadata.getIdColumn();
+        executeBatches(entityManager.getMapper(entityMetadata.getEntityClass()).getSqlTemplates().getDelete(),
+                entitiesOf(entityMetadata, writes, WriteBehindBuffer.Kind.DELETE, WriteBehindBuffer.Kind.REPLACE),
+                (entity, statement) -> statement.setProperty(idColumn.getFieldName(), entity, idColumn.getAccessor(), idColumn.getCodec()));
+    }
+
+    private <T> void applyInserts(EntityMetadata<T> entityMetadata, List<WriteBehindBuffer.PendingWrite> writes) throws SQLException {
+        List<T> inserts = entitiesOf(entityMetadata, writes, WriteBehindBuffer.Kind.INSERT, WriteBehindBuffer.Kind.REPLACE);
+        if (!inserts.isEmpty()) {
+            insertBatches(inserts);
+        }
+    }
+
+    private <T> void applyUpdates(EntityMetadata<T> entityMetadata, List<WriteBehindBuffer.PendingWrite> writes) throws SQLException {
+        EntityMapper<T> mapper = entityManager.getMapper(entityMetadata.getEntityClass());
+        executeBatches(mapper.getSqlTemplates().getUpdate(), entitiesOf(entityMetadata, writes, WriteBehindBuffer.Kind.UPDATE), mapper::bind);
+    }
+
+    /**
+     * @return the entities of the writes of the given kinds, in the order of the writes
+     */
+    private static <T> List<T> entitiesOf(EntityMetadata<T> entityMetadata, List<WriteBehindBuffer.PendingWrite> writes,
+                                          WriteBehindBuffer.Kind... kinds) {
+        List<WriteBehindBuffer.Kind> selected = Arrays.asList(kinds);
+        List<T> entities = new ArrayList<>();
+        for (WriteBehindBuffer.PendingWrite write : writes) {
+            if (selected.contains(write.kind)) {
+                entities.add(entityMetadata.getEntityClass().cast(write.entity));
+            }
+        }
+        return entities;
+    }
+
+    private <T> void executeBatches(String sql, List<T> entities, BiConsumer<T, NamedPreparedStatement> binder) throws SQLException {
+        if (entities.isEmpty()) {
+            return;
+        }
+        int batchSize = entityManager.getBatchSize();
+        NamedPreparedStatement statement = prepare(sql);
+        for (int start = 0; start < entities.size(); start += batchSize) {
+            for (T entity : entities.subList(start, Math.min(start + batchSize, entities.size()))) {
+                binder.accept(entity, statement);
+                statement.addBatch();
+            }
+            executeBatch(statement);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * An entity known by this Session is compared with its snapshot and only its changed columns are written,
+     * another instance has all its columns written and becomes known by the Session
+     * @see EntityManager#update(Object)
+     */
+    @Override
+    public <T> boolean update(T entity) throws SQLException {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadataForEntity(entity);
+
+        checkOpen();
+        EntityKey key = keyOf(entityMetadata, entity);
+        if (key.getId() == null) {
+            throw new IllegalArgumentException("The entity " + entity + " can't be updated without id");
+        }
+        return observe(Operation.UPDATE, entityMetadata.getEntityClass(), () -> {
+            Object[] snapshot = identityMap.get(key) == entity ? snapshots.get(key) : null;
+            if (snapshot != null) {
+                BitSet changed = changedColumns(entityMetadata, entity, snapshot);
+                if (changed.isEmpty()) {
+                    return true;
+                }
+                boolean updated = writeColumns(entityMetadata, entity, changed);
+                if (updated) {
+                    snapshots.put(key, snapshot(entityMetadata, entity));
+                }
+                return updated;
+            }
+
+            BitSet columns = new BitSet();
+            List<ColumnMetadata> all = entityMetadata.getColumns();
+            for (int i = 0; i < all.size(); i++) {
+                if (!all.get(i).isId()) columns.set(i);
+            }
+            boolean updated = columns.isEmpty() || writeColumns(entityMetadata, entity, columns);
+            if (updated) {
+                register(entityMetadata, entity);
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * @see Session#flush()
+     */
+    @Override
+    public int flush() throws SQLException {
+        checkOpen();
+        return observe(Operation.FLUSH, null, () -> {
+            int updated = 0;
+            for (Map.Entry<EntityKey, Object[]> entry : snapshots.entrySet()) {
+                Object entity = identityMap.get(entry.getKey());
+                if (entity != null && flush(entityManager.getMetadata(entry.getKey().getEntityClass()), entity, entry)) {
+                    updated++;
+                }
+            }
+            return updated;
+        });
+    }
+
+    private <T> boolean flush(EntityMetadata<T> entityMetadata, Object known, Map.Entry<EntityKey, Object[]> snapshot) throws SQLException {
+        T entity = entityMetadata.getEntityClass().cast(known);
+        BitSet changed = changedColumns(entityMetadata, entity, snapshot.getValue());
+        if (changed.isEmpty()) {
+            return false;
+        }
+        if (!writeColumns(entityMetadata, entity, changed)) {
+            return false;
+        }
+        snapshot.setValue(snapshot(entityMetadata, entity));
+        return true;
+    }
+
+    /**
+     * @return the indexes of the columns whose value differs from the snapshot, the id column excluded
+     */
+    private static <T> BitSet changedColumns(EntityMetadata<T> entityMetadata, T entity, Object[] snapshot) {
+        BitSet changed = new BitSet();
+        List<ColumnMetadata> columns = entityMetadata.getColumns();
+        for (int i = 0; i < snapshot.length; i++) {
+            ColumnMetadata column = columns.get(i);
+            if (!column.isId() && !Objects.deepEquals(snapshot[i], column.getAccessor().get(entity))) {
+                changed.set(i);
+            }
+        }
+        return changed;
+    }
+
+    private <T> boolean writeColumns(EntityMetadata<T> entityMetadata, T entity, BitSet columns) throws SQLException {
+        List<ColumnMetadata> all = entityMetadata.getColumns();
+        ColumnMetadata idColumn = entityMetadata.getIdColumn();
+        NamedPreparedStatement statement = prepare(entityManager.getUpdateSql(entityMetadata, columns));
+        for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+            ColumnMetadata column = all.get(i);
+            statement.setProperty(column.getFieldName(), entity, column.getAccessor(), column.getCodec());
+        }
+        statement.setProperty(idColumn.getFieldName(), entity, idColumn.getAccessor(), idColumn.getCodec());
+        boolean updated = executeUpdate(statement) > 0;
+        entityManager.invalidate(entityMetadata, entity);
+        return updated;
+    }
+
+    private static <T> Object[] snapshot(EntityMetadata<T> entityMetadata, T entity) {
+        List<ColumnMetadata> columns = entityMetadata.getColumns();
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = columns.get(i).getAccessor().get(entity);
+            values[i] = value instanceof byte[] ? ((byte[]) value).clone() : value;
+        }
+        return values;
+    }
+
+    /**
+     * @see EntityManager#delete(Object)
+     */
+    @Override
+    public <T> boolean delete(T entity) {
+        EntityMetadata<T> entityMetadata = entityManager.getMetadataForEntity(entity);
+        try {
+            return observe(Operation.DELETE, entityMetadata.getEntityClass(), () -> {
+                ColumnMetadata idColumn = entityMetadata.getIdColumn();
+                EntityKey key = keyOf(entityMetadata, entity);
+                identityMap.remove(key);
+                snapshots.remove(key);
+                fetchedCollections.remove(key);
+                NamedPreparedStatement statement = prepare(entityManager.getMapper(entityMetadata.getEntityClass()).getSqlTemplates().getDelete());
+                statement.setProperty(idColumn.getFieldName(), entity, idColumn.getAccessor(), idColumn.getCodec());
+                boolean deleted = executeUpdate(statement) > 0;
+                entityManager.invalidate(entityMetadata, entity);
+                return deleted;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static <T> EntityKey keyOf(EntityMetadata<T> entityMetadata, T entity) {
+        return new EntityKey(entityMetadata.getEntityClass(), entityMetadata.getIdColumn().getAccessor().get(entity));
+    }
+
+    /**
+     * Get the instance known by the identity map for the id of an entity read from the database
+     * @return the instance already known, the entity itself if it was unknown and is now kept in the identity map
+     */
+    private <T> T manage(EntityMetadata<T> entityMetadata, T entity) {
+        EntityKey key = keyOf(entityMetadata, entity);
+        Object known = identityMap.putIfAbsent(key, entity);
+        if (known != null) {
+            return entityMetadata.getEntityClass().cast(known);
+        }
+        snapshots.put(key, snapshot(entityMetadata, entity));
+        return entity;
+    }
+
+    /**
+     * Keep an entity written in the database in the identity map, replacing the instance known for its id.
+     * The collections of the instance are loaded again by the next find.
+     */
+    private <T> void register(EntityMetadata<T> entityMetadata, T entity) {
+        EntityKey key = keyOf(entityMetadata, entity);
+        if (key.getId() != null) {
+            identityMap.put(key, entity);
+            snapshots.put(key, snapshot(entityMetadata, entity));
+            fetchedCollections.remove(key);
+        }
+    }
+
+    /**
+     * @see Session#getIdentityMapStats()
+     */
+    @Override
+    public CacheStats getIdentityMapStats() {
+        return new CacheStats(identityMapHits, identityMapMisses, 0);
+    }
+
+    /**
+     * @see Session#openSession()
+     */
+    @Override
+    public Session openSession() {
+        checkOpen();
+        openings++;
+        return this;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @see Session#close()
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed || --openings > 0) return;
+        closed = true;
+        SQLException failure = null;
+        for (NamedPreparedStatement statement : allStatements()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (failure == null) failure = e; else failure.addSuppressed(e);
+            }
+        }
+        statements.clear();
+        statementsWithKeys.clear();
+        identityMap.clear();
+        snapshots.clear();
+        fetchedCollections.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            if (failure == null) failure = e; else failure.addSuppressed(e);
+        }
+        if (failure != null) throw failure;
+    }
+
+    private List<NamedPreparedStatement> allStatements() {
+        List<NamedPreparedStatement> all = new ArrayList<>(statements.values());
+        all.addAll(statementsWithKeys.values());
+        return all;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The Session is closed");
+        }
+    }
+
+    NamedPreparedStatement prepare(String sql) throws SQLException {
+        checkOpen();
+        NamedPreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = NamedPreparedStatement.prepare(connection, sql, Statement.NO_GENERATED_KEYS, entityManager.getCodecs());
+            if (recorder != null) statement.countBoundBytes();
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    NamedPreparedStatement prepareWithGeneratedKeys(String sql) throws SQLException {
+        checkOpen();
+        NamedPreparedStatement statement = statementsWithKeys.get(sql);
+        if (statement == null) {
+            statement = NamedPreparedStatement.prepare(connection, sql, Statement.RETURN_GENERATED_KEYS, entityManager.getCodecs());
+            if (recorder != null) statement.countBoundBytes();
+            statementsWithKeys.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    private ResultSet executeQuery(NamedPreparedStatement statement) throws SQLException {
+        if (recorder == null) {
+            return statement.executeQuery();
+        }
+        long start = System.nanoTime();
+        ResultSet resultSet = statement.executeQuery();
+        recorder.executed(statement, System.nanoTime() - start);
+        return resultSet;
+    }
+
+    private int executeUpdate(NamedPreparedStatement statement) throws SQLException {
+        if (recorder == null) {
+            return statement.executeUpdate();
+        }
+        long start = System.nanoTime();
+        int count = statement.executeUpdate();
+        recorder.executed(statement, System.nanoTime() - start);
+        return count;
+    }
+
+    private int[] executeBatch(NamedPreparedStatement statement) throws SQLException {
+        if (recorder == null) {
+            return statement.executeBatch();
+        }
+        long start = System.nanoTime();
+        int[] counts = statement.executeBatch();
+        recorder.executed(statement, System.nanoTime() - start);
+        return counts;
+    }
+
+    /**
+     * @return the start of the mapping of a ResultSet, to give to {@link #mapped(long, long)}
+     */
+    private long startMapping() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+    private void mapped(long start, long rows) {
+        if (recorder != null) {
+            recorder.mapped(rows, System.nanoTime() - start);
+        }
+    }
+}
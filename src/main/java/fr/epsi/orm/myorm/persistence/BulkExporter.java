@@ -0,0 +1,130 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Exporter of the rows of the table of an entity class into a CSV or NDJSON file, created by
+ * {@link BasicEntityManager#bulkExporter(Class)}. The files exported can be read back by a {@link BulkLoader}.
+ *
+ * The rows are read from the ResultSet by chunks of the fetch size and their values are written in their text form
+ * ({@link fr.epsi.orm.myorm.lib.TypeCodec#format}) straight into a pooled buffer, flushed to a FileChannel each
+ * time it is full. No entity is created, the columns and their codecs are taken from the metadata of the entity class,
+ * and the memory used doesn't depend on the size of the table.
+ *
+ * @param <T> The entity class exported
+ */
+public final class BulkExporter<T> {
+
+    /**
+     * Default number of rows fetched from the database in one round-trip
+     */
+    public static final int DEFAULT_FETCH_SIZE = 10_000;
+
+    private final BasicEntityManager entityManager;
+    private final EntityMetadata<T> entityMetadata;
+    private BulkFormat format = BulkFormat.CSV;
+    private Charset charset = StandardCharsets.UTF_8;
+    private char delimiter = ',';
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int bufferSize = BulkLoader.DEFAULT_BUFFER_SIZE;
+
+    BulkExporter(BasicEntityManager aEntityManager, EntityMetadata<T> aEntityMetadata) {
+        entityManager = aEntityManager;
+        entityMetadata = aEntityMetadata;
+    }
+
+    /**
+     * @param aFormat the format of the files, default to {@link BulkFormat#CSV}
+     * @return this BulkExporter
+     */
+    public BulkExporter<T> format(BulkFormat aFormat) {
+        format = Objects.requireNonNull(aFormat);
+        return this;
+    }
+
+    /**
+     * @param aCharset the encoding of the files, default to UTF-8
+     * @return this BulkExporter
+     */
+    public BulkExporter<T> charset(Charset aCharset) {
+        charset = Objects.requireNonNull(aCharset);
+        return this;
+    }
+
+    /**
+     * @param aDelimiter the delimiter of the fields of a CSV file, default to <code>,</code>
+     * @return this BulkExporter
+     */
+    public BulkExporter<T> delimiter(char aDelimiter) {
+        if (aDelimiter == '"' || aDelimiter == '\r' || aDelimiter == '\n') {
+            throw new IllegalArgumentException("The delimiter can't be a quote or a line break");
+        }
+        delimiter = aDelimiter;
+        return this;
+    }
+
+    /**
+     * @param size the number of rows fetched in one round-trip, default to {@value #DEFAULT_FETCH_SIZE}
+     * @return this BulkExporter
+     */
+    public BulkExporter<T> fetchSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The fetch size can't be negative");
+        }
+        fetchSize = size;
+        return this;
+    }
+
+    /**
+     * @param size the size in bytes of the buffer writing the file, default to {@value BulkLoader#DEFAULT_BUFFER_SIZE}
+     * @return this BulkExporter
+     */
+    public BulkExporter<T> bufferSize(int size) {
+        if (size < 16) {
+            throw new IllegalArgumentException("The buffer size should be at least 16 bytes");
+        }
+        bufferSize = size;
+        return this;
+    }
+
+    /**
+     * Write all the rows of the table into a file, the file is created or replaced
+     * @param file the file to write
+     * @return the number of rows written
+     * @throws IOException if the file can't be written or a value can't be encoded with the charset
+     */
+    public long export(Path file) throws IOException, SQLException {
+        ByteBuffer buffer = entityManager.getBufferPool().acquire(bufferSize);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+             BasicSession session = entityManager.openBasicSession()) {
+            CharSink sink = new CharSink(channel, charset, buffer);
+            RecordWriter writer = format == BulkFormat.CSV
+                    ? new RecordWriter.Csv(sink, entityMetadata.getColumns(), delimiter)
+                    : new RecordWriter.Ndjson(sink, entityMetadata.getColumns());
+
+            writer.writeHeader();
+            long rows = session.forEachRow(entityMetadata, fetchSize, resultSet -> {
+                try {
+                    writer.writeRecord(resultSet);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            sink.finish();
+            return rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            entityManager.getBufferPool().release(buffer);
+        }
+    }
+}
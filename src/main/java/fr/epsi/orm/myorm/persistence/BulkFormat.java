@@ -0,0 +1,21 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * The formats of the files loaded by a {@link BulkLoader} and written by a {@link BulkExporter}.
+ *
+ * The values are in the text form of the codecs of the columns, see {@link fr.epsi.orm.myorm.lib.TypeCodec#parse(String)}
+ * and {@link fr.epsi.orm.myorm.lib.TypeCodec#format(Object)}.
+ */
+public enum BulkFormat {
+    /**
+     * Comma-separated values as in RFC 4180, with a header line naming the columns. A field can be quoted with
+     * <code>"</code> to hold a delimiter, a quote (doubled) or a line break. An empty field is a null value, an empty
+     * quoted field is an empty string.
+     */
+    CSV,
+    /**
+     * Newline-delimited JSON, one flat object per line whose keys name the columns. The numbers and the booleans are
+     * read as their text, nested objects and arrays are not supported. A missing key or a null is a null value.
+     */
+    NDJSON
+}
@@ -0,0 +1,199 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Loader of the rows of a CSV or NDJSON file into the table of an entity class, created by
+ * {@link BasicEntityManager#bulkLoader(Class)}.
+ *
+ * The file is read through a FileChannel and a pooled buffer, and the entities are inserted in JDBC batches by chunks
+ * committed one after the other, so only one chunk of entities is in memory whatever the size of the file.
+ * The fields of the file are matched with the columns of the entity by their column name or their field name, ignoring
+ * the case, and their values are converted with {@link fr.epsi.orm.myorm.lib.TypeCodec#parse(String)}.
+ * A null value leaves the field of the entity with the value given by its constructor.
+ *
+ * The loaded entities are neither kept in a Session nor in the second level cache, the write-behind buffer is bypassed.
+ * If the load fails, the chunks committed before the failure stay in the table.
+ *
+ * @param <T> The entity class loaded
+ */
+public final class BulkLoader<T> {
+
+    /**
+     * Default number of rows inserted in one transaction
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    /**
+     * Default size in bytes of the buffer reading the file
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final BasicEntityManager entityManager;
+    private final EntityMetadata<T> entityMetadata;
+    private BulkFormat format = BulkFormat.CSV;
+    private Charset charset = StandardCharsets.UTF_8;
+    private char delimiter = ',';
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private Consumer<BulkProgress> progressListener = progress -> {};
+
+    BulkLoader(BasicEntityManager aEntityManager, EntityMetadata<T> aEntityMetadata) {
+        entityManager = aEntityManager;
+        entityMetadata = aEntityMetadata;
+    }
+
+    /**
+     * @param aFormat the format of the files, default to {@link BulkFormat#CSV}
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> format(BulkFormat aFormat) {
+        format = Objects.requireNonNull(aFormat);
+        return this;
+    }
+
+    /**
+     * @param aCharset the encoding of the files, default to UTF-8
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> charset(Charset aCharset) {
+        charset = Objects.requireNonNull(aCharset);
+        return this;
+    }
+
+    /**
+     * @param aDelimiter the delimiter of the fields of a CSV file, default to <code>,</code>
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> delimiter(char aDelimiter) {
+        if (aDelimiter == '"' || aDelimiter == '\r' || aDelimiter == '\n') {
+            throw new IllegalArgumentException("The delimiter can't be a quote or a line break");
+        }
+        delimiter = aDelimiter;
+        return this;
+    }
+
+    /**
+     * @param size the number of rows inserted in one transaction, default to {@value #DEFAULT_CHUNK_SIZE}
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> chunkSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The chunk size should be positive");
+        }
+        chunkSize = size;
+        return this;
+    }
+
+    /**
+     * @param size the size in bytes of the buffer reading the file, default to {@value #DEFAULT_BUFFER_SIZE}
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> bufferSize(int size) {
+        if (size < 16) {
+            throw new IllegalArgumentException("The buffer size should be at least 16 bytes");
+        }
+        bufferSize = size;
+        return this;
+    }
+
+    /**
+     * @param listener the callback called after each chunk committed and at the end of the file, on the loading thread
+     * @return this BulkLoader
+     */
+    public BulkLoader<T> onProgress(Consumer<BulkProgress> listener) {
+        progressListener = Objects.requireNonNull(listener);
+        return this;
+    }
+
+    /**
+     * Insert the rows of a file
+     * @param file the file to load
+     * @return the progress at the end of the file
+     * @throws IllegalArgumentException if the file names an unknown or a generated column, or has an invalid row
+     * @throws IOException if the file can't be read or is not encoded with the charset
+     */
+    public BulkProgress load(Path file) throws IOException, SQLException {
+        List<ColumnMetadata> columns = entityMetadata.getColumns();
+        long start = System.nanoTime();
+        ByteBuffer buffer = entityManager.getBufferPool().acquire(bufferSize);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BasicSession session = entityManager.openBasicSession()) {
+            long fileSize = channel.size();
+            CharSource source = new CharSource(channel, charset, buffer);
+            RecordReader reader = format == BulkFormat.CSV
+                    ? new RecordReader.Csv(source, delimiter, columnResolver())
+                    : new RecordReader.Ndjson(source, columnResolver());
+
+            String[] values = new String[columns.size()];
+            List<T> chunk = new ArrayList<>(Math.min(chunkSize, entityManager.getBatchSize()));
+            long rows = 0;
+            while (reader.next(values)) {
+                chunk.add(toEntity(values, reader.getLine()));
+                if (chunk.size() == chunkSize) {
+                    session.insertAll(entityMetadata, chunk);
+                    rows += chunk.size();
+                    chunk.clear();
+                    progressListener.accept(new BulkProgress(rows, source.getBytesRead(), fileSize, System.nanoTime() - start, false));
+                }
+            }
+            if (!chunk.isEmpty()) {
+                session.insertAll(entityMetadata, chunk);
+                rows += chunk.size();
+            }
+            BulkProgress done = new BulkProgress(rows, source.getBytesRead(), fileSize, System.nanoTime() - start, true);
+            progressListener.accept(done);
+            return done;
+        } finally {
+            entityManager.getBufferPool().release(buffer);
+        }
+    }
+
+    /**
+     * @return the function giving the index of the column named by a field of the file
+     */
+    private ToIntFunction<String> columnResolver() {
+        Map<String, Integer> indexes = new HashMap<>();
+        List<ColumnMetadata> columns = entityMetadata.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            indexes.put(columns.get(i).getFieldName().toLowerCase(Locale.ROOT), i);
+            indexes.put(columns.get(i).getName().toLowerCase(Locale.ROOT), i);
+        }
+        return name -> {
+            Integer index = indexes.get(name.toLowerCase(Locale.ROOT));
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown column " + name + " for " + entityMetadata.getEntityClass().getName());
+            }
+            if (columns.get(index).isId() && entityMetadata.isIdGenerated()) {
+                throw new IllegalArgumentException("The column " + name + " is generated by the database, it can't be loaded");
+            }
+            return index;
+        };
+    }
+
+    private T toEntity(String[] values, int line) {
+        List<ColumnMetadata> columns = entityMetadata.getColumns();
+        T entity = entityMetadata.newInstance();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                ColumnMetadata column = columns.get(i);
+                try {
+                    column.getAccessor().set(entity, column.getCodec().parse(values[i]));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + line + ", column " + column.getName() + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return entity;
+    }
+}
@@ -0,0 +1,75 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * Immutable progress of a {@link BulkLoader}, given to its callback after each chunk committed and at the end of the file.
+ */
+public final class BulkProgress {
+
+    private final long rows;
+    private final long bytesRead;
+    private final long fileSize;
+    private final long elapsedNanos;
+    private final boolean done;
+
+    BulkProgress(long aRows, long aBytesRead, long aFileSize, long aElapsedNanos, boolean aDone) {
+        rows = aRows;
+        bytesRead = aBytesRead;
+        fileSize = aFileSize;
+        elapsedNanos = aElapsedNanos;
+        done = aDone;
+    }
+
+    /**
+     * @return the number of rows inserted and committed
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of bytes read from the file, a buffer ahead of the rows inserted
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the size of the file when the load started
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the time elapsed since the load started
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return true if the whole file has been loaded
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return the mean number of rows inserted per second since the load started
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkProgress{" +
+                "rows=" + rows +
+                ", bytesRead=" + bytesRead +
+                ", fileSize=" + fileSize +
+                ", elapsedNanos=" + elapsedNanos +
+                ", rowsPerSecond=" + Math.round(getRowsPerSecond()) +
+                ", done=" + done +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of the buffers used to read and write files, so the loads and exports don't allocate a large buffer each.
+ *
+ * The buffers are heap buffers : the charset decoders and encoders only take their fast path when both buffers are
+ * backed by an array, and the FileChannel copies them into its own cached direct buffer. At most a few buffers are
+ * kept, a buffer released when the pool is full is left to the garbage collector.
+ */
+final class ByteBufferPool {
+
+    private final int maxBuffers;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    ByteBufferPool(int aMaxBuffers) {
+        maxBuffers = aMaxBuffers;
+    }
+
+    /**
+     * @param capacity the minimum capacity of the buffer
+     * @return a cleared heap buffer, to give back with {@link #release(ByteBuffer)}
+     */
+    synchronized ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null || buffer.capacity() < capacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+        return buffer;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        if (buffers.size() < maxBuffers) {
+            buffer.clear();
+            buffers.push(buffer);
+        }
+    }
+
+    synchronized int size() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,80 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * Immutable snapshot of the counters of a cache.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    CacheStats(long aHitCount, long aMissCount, long aEvictionCount) {
+        hitCount = aHitCount;
+        missCount = aMissCount;
+        evictionCount = aEvictionCount;
+    }
+
+    /**
+     * @return the number of lookups answered by the cache, each one is a database round-trip saved
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that had to query the database
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries removed to respect the bounds of the cache
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the total number of lookups
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the ratio of lookups answered by the cache, 1 if there was no lookup
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CacheStats that = (CacheStats) o;
+
+        return hitCount == that.hitCount && missCount == that.missCount && evictionCount == that.evictionCount;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(hitCount);
+        result = 31 * result + Long.hashCode(missCount);
+        result = 31 * result + Long.hashCode(evictionCount);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+}
@@ -0,0 +1,103 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Characters encoded into a channel through two fixed buffers, the counterpart of {@link CharSource}.
+ * The bytes are written to the channel each time the byte buffer is full and by {@link #finish()}, the characters that
+ * can't be encoded are reported as an error.
+ */
+final class CharSink {
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private long bytesWritten = 0;
+
+    /**
+     * @param aBytes the buffer of the bytes written, cleared
+     */
+    CharSink(WritableByteChannel aChannel, Charset charset, ByteBuffer aBytes) {
+        channel = aChannel;
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        bytes = aBytes;
+        chars = CharBuffer.allocate(Math.max(16, (int) (bytes.capacity() / encoder.maxBytesPerChar())));
+    }
+
+    void append(char c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+    }
+
+    void append(String text) throws IOException {
+        append(text, 0, text.length());
+    }
+
+    /**
+     * Append the characters of a text from start, inclusive, to end, exclusive
+     */
+    void append(String text, int start, int end) throws IOException {
+        while (start < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int copied = Math.min(end - start, chars.remaining());
+            text.getChars(start, start + copied, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + copied);
+            start += copied;
+        }
+    }
+
+    /**
+     * Encode the characters left and write all the bytes to the channel, nothing should be appended afterwards
+     */
+    void finish() throws IOException {
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            write();
+        }
+        write();
+    }
+
+    /**
+     * @return the number of bytes written to the channel
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            write();
+        }
+        chars.compact();
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
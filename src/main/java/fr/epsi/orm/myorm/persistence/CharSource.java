@@ -0,0 +1,100 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Characters decoded from a channel through two fixed buffers, so a file of any size is read in constant memory.
+ * A byte order mark at the start of the channel is skipped, the malformed input is reported as an error.
+ */
+final class CharSource {
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private long bytesRead = 0;
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+    private boolean started = false;
+
+    /**
+     * @param aBytes the buffer of the bytes read, cleared
+     */
+    CharSource(ReadableByteChannel aChannel, Charset charset, ByteBuffer aBytes) {
+        channel = aChannel;
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        bytes = aBytes;
+        bytes.flip();
+        chars = CharBuffer.allocate(bytes.capacity());
+        chars.flip();
+    }
+
+    /**
+     * @return the next character, -1 at the end of the channel
+     */
+    int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        char c = chars.get();
+        if (!started) {
+            started = true;
+            if (c == '\uFEFF') {
+                return read();
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return the character returned by the next read, -1 at the end of the channel
+     */
+    int peek() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get(chars.position());
+    }
+
+    /**
+     * @return the number of bytes read from the channel, some of them may not be decoded yet
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (chars.position() == 0 && !flushed) {
+            if (!endOfInput) {
+                bytes.compact();
+                int read = channel.read(bytes);
+                bytes.flip();
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += read;
+                }
+            }
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+}
@@ -0,0 +1,61 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+
+import java.lang.reflect.Field;
+
+/**
+ * Immutable description of a <code>@OneToMany</code> field of an entity : the entities of another class referencing
+ * the entity through one of their <code>@ManyToOne</code> fields.
+ */
+public final class CollectionMetadata {
+
+    private final Field field;
+    private final PropertyAccessor accessor;
+    private final Class<?> elementClass;
+    private final String mappedBy;
+
+    CollectionMetadata(Field aField, Class<?> aElementClass, String aMappedBy) {
+        field = aField;
+        accessor = PropertyAccessor.of(aField);
+        elementClass = aElementClass;
+        mappedBy = aMappedBy;
+    }
+
+    /**
+     * @return the mapped field of the entity
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return the accessor resolved for the field
+     */
+    public PropertyAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the class of the entities of the collection
+     */
+    public Class<?> getElementClass() {
+        return elementClass;
+    }
+
+    /**
+     * @return the name of the <code>@ManyToOne</code> field of the element class referencing the entity
+     */
+    public String getMappedBy() {
+        return mappedBy;
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionMetadata{" +
+                "field=" + field.getName() +
+                ", elementClass=" + elementClass.getName() +
+                ", mappedBy='" + mappedBy + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,94 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+
+import java.lang.reflect.Field;
+
+/**
+ * Immutable description of a persistent field of an entity and the column it is mapped to.
+ *
+ * Built once by {@link EntityMetadata} so the mapping paths never have to read the
+ * <code>@Column</code> or <code>@Id</code> annotations again.
+ */
+public final class ColumnMetadata {
+
+    private final Field field;
+    private final String name;
+    private final boolean id;
+    private final PropertyAccessor accessor;
+    private final TypeCodec<?> codec;
+
+    ColumnMetadata(Field aField, String aName, boolean aId, TypeCodec<?> aCodec) {
+        field = aField;
+        name = aName;
+        id = aId;
+        accessor = PropertyAccessor.of(aField);
+        codec = aCodec;
+    }
+
+    /**
+     * @return the mapped field of the entity
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return the name of the field in the entity
+     */
+    public String getFieldName() {
+        return field.getName();
+    }
+
+    /**
+     * @return the name of the column in the database
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the Java type of the field
+     */
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * @return true if the field is annotated with <code>@Id</code>
+     */
+    public boolean isId() {
+        return id;
+    }
+
+    /**
+     * @return true if the field is annotated with <code>@ManyToOne</code>, the column holds the id of the referenced entity
+     */
+    public boolean isReference() {
+        return codec instanceof ReferenceCodec;
+    }
+
+    /**
+     * @return the accessor resolved for the field
+     */
+    public PropertyAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the codec resolved for the type of the field
+     */
+    public TypeCodec<?> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnMetadata{" +
+                "field=" + field.getName() +
+                ", name='" + name + '\'' +
+                ", id=" + id +
+                '}';
+    }
+}
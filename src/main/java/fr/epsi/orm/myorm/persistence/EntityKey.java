@@ -0,0 +1,45 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.util.Objects;
+
+/**
+ * Identity of an entity instance, its class and the value of its id.
+ */
+final class EntityKey {
+
+    private final Class<?> entityClass;
+    private final Object id;
+
+    EntityKey(Class<?> aEntityClass, Object aId) {
+        entityClass = aEntityClass;
+        id = aId;
+    }
+
+    Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    Object getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EntityKey entityKey = (EntityKey) o;
+
+        return entityClass.equals(entityKey.entityClass) && Objects.equals(id, entityKey.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * entityClass.hashCode() + Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return entityClass.getSimpleName() + "#" + id;
+    }
+}
@@ -1,8 +1,12 @@
 package fr.epsi.orm.myorm.persistence;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 /**
  * Created by fteychene on 14/05/17.
@@ -29,6 +33,77 @@ public interface EntityManager {
      */
     <T> List<T> findAll(Class<T> entityClass) throws SQLException;
 
+    /**
+     * Find an entity in the database with its id and read only the columns of a projection
+     * @param entityClass the Class of the Entity to search in the database
+     * @param id the value of the searched Id
+     * @param projection a class with a no-arg constructor and fields named like fields of the entity,
+     *                   or an interface with getters named after fields of the entity
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @param <P> The projection class
+     * @return an Optional with the projection of the row from the database
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager or if a property of the
+     * projection doesn't match a field of the entity
+     */
+    <T, P> Optional<P> find(Class<T> entityClass, Object id, Class<P> projection) throws SQLException;
+
+    /**
+     * Return all the databases rows of an entity class, reading only the columns of a projection
+     * @param entityClass the Class of the Entity to search in the database
+     * @param projection a class with a no-arg constructor and fields named like fields of the entity,
+     *                   or an interface with getters named after fields of the entity
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @param <P> The projection class
+     * @return a List with the projections of the rows from database, empty List if there is none
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager or if a property of the
+     * projection doesn't match a field of the entity
+     */
+    <T, P> List<P> findAll(Class<T> entityClass, Class<P> projection) throws SQLException;
+
+    /**
+     * Find entities in the database with their ids, the ids are sent by chunks in the IN list of one query per chunk.
+     * The entities already in a cache are not queried.
+     * @param entityClass the Class of the Entity to search in the database
+     * @param ids the values of the searched ids, of the type of the id field
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @return the entities found in the order of the ids, the ids without row are skipped
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager
+     */
+    <T> List<T> findAllById(Class<T> entityClass, Collection<?> ids) throws SQLException;
+
+    /**
+     * Read a page of entities ordered by id, the page starts after an id so its latency doesn't depend on its depth
+     * @param entityClass the Class of the Entity to search in the database
+     * @param afterId the id after which the page starts, usually {@link Page#getNextAfterId()}, null for the first page
+     * @param limit the maximum number of entities in the page
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @return the page of entities
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager or if limit is not positive
+     */
+    <T> Page<T> findPage(Class<T> entityClass, Object afterId, int limit) throws SQLException;
+
+    /**
+     * Stream all the databases rows as entity for an entity class, the rows are read and mapped as the Stream is consumed.
+     * The Stream holds the database resources until it is closed, it should be used in a try-with-resources block.
+     * @param entityClass the Class of the Entity to search in the database
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @return a Stream of the rows of the table, to be closed by the caller
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager
+     */
+    <T> Stream<T> stream(Class<T> entityClass) throws SQLException;
+
+    /**
+     * Publish all the databases rows as entity for an entity class, the rows are read only when the subscriber requests them.
+     * Each subscriber runs its own query at its first request, the database resources are released when the rows are
+     * exhausted, when the subscription is cancelled or when the error is signaled with onError.
+     * @param entityClass the Class of the Entity to search in the database
+     * @param executor the executor sending the signals to the subscriber, Runnable::run to read the rows in the thread requesting them
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @return a Publisher of the rows of the table
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager
+     */
+    <T> Flow.Publisher<T> publish(Class<T> entityClass, Executor executor);
+
     /**
      * Save an entity in the database
      * @param entity the entity to save in database
@@ -38,6 +113,25 @@ public interface EntityManager {
      */
     <T> Optional<T> save(T entity) throws SQLException;
 
+    /**
+     * Save entities in the database with batched inserts, the entities are grouped by class and inserted by chunks
+     * @param entities the entities to save in database
+     * @param <T> The entity class
+     * @return the persisted entities (with generated id if needed) in the order of the collection
+     * @throws IllegalArgumentException if the class of an entity is not managed by the entity manager
+     */
+    <T> List<T> saveAll(Collection<T> entities) throws SQLException;
+
+    /**
+     * Update an entity in the database by id. A Session only writes the columns changed since the entity was loaded
+     * or saved by the Session, and sends no SQL if nothing changed ; the other entities have all their columns written.
+     * @param entity the entity to update in database, with its id
+     * @param <T> The entity class (redudant with entityClass but can't access to generics type due to type erasure)
+     * @return true if the row of the entity is up to date, false if no row has the id of the entity
+     * @throws IllegalArgumentException if entityClass is not managed by the entity manager or if the entity has no id
+     */
+    <T> boolean update(T entity) throws SQLException;
+
     /**
      * Delete an entity from the database
      * @param entity the entity to delete in database
@@ -47,4 +141,11 @@ public interface EntityManager {
      */
     <T> boolean delete(T entity);
 
+    /**
+     * Open a Session running the operations on one connection until it is closed
+     * @return the Session opened, to be closed by the caller
+     * @throws SQLException if no connection could be acquired
+     */
+    Session openSession() throws SQLException;
+
 }
@@ -0,0 +1,36 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * Listener of the statements and the operations of a {@link BasicEntityManager}, registered with
+ * {@link BasicEntityManager.Builder#listener(EntityManagerListener)}.
+ *
+ * The listeners are called synchronously by the thread running the operation, they should return quickly.
+ * An exception thrown by a listener is printed and does not fail the operation.
+ * Nothing is measured when no listener is registered.
+ */
+public interface EntityManagerListener {
+
+    /**
+     * Called after the execution of each statement
+     * @param sql the SQL with named parameters
+     * @param executeNanos the time spent by the driver to execute the statement, the rows read afterwards excluded
+     */
+    default void onStatement(String sql, long executeNanos) {
+    }
+
+    /**
+     * Called at the end of each operation, successful or failed. An operation run by another one is part of it and
+     * is not reported on its own.
+     * @param event the measures of the operation
+     */
+    default void onOperation(OperationEvent event) {
+    }
+
+    /**
+     * Called when a flush of the write-behind buffer run by its background thread fails, the writes that failed are
+     * retried by the next flush until they reach their maximum number of attempts
+     * @param failure the exception of the flush
+     */
+    default void onWriteBehindFailure(Exception failure) {
+    }
+}
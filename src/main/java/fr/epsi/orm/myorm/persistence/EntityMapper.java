@@ -0,0 +1,43 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Mapping of an entity class between the rows of its table and its instances.
+ *
+ * A mapper named <code>EntityName_Mapper</code> is generated at compile time for each <code>@Entity</code>
+ * by the {@link fr.epsi.orm.myorm.processor.EntityMapperProcessor}, the mapping falls back on the
+ * reflective implementation based on {@link EntityMetadata} when no mapper has been generated.
+ *
+ * @param <T> The entity class mapped
+ */
+public interface EntityMapper<T> {
+
+    /**
+     * @return the mapped entity class
+     */
+    Class<T> getEntityClass();
+
+    /**
+     * Resolve once per ResultSet the index of the columns of the entity
+     * @param metaData the metadata of the ResultSet to map
+     * @return the RowMapper creating an entity from the current row of the ResultSet
+     * @throws SQLException if a column of the entity is missing in the ResultSet
+     */
+    RowMapper<T> rowMapper(ResultSetMetaData metaData) throws SQLException;
+
+    /**
+     * Bind the values of an entity to the parameters of a statement, parameters are named with the name of the fields
+     * @param entity the entity to read
+     * @param statement the statement to bind
+     */
+    void bind(T entity, NamedPreparedStatement statement);
+
+    /**
+     * @return the parameterized SQL statements of the entity
+     */
+    SqlTemplates getSqlTemplates();
+}
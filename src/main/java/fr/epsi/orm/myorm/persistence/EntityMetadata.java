@@ -0,0 +1,265 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.GenerationType;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.annotation.ManyToOne;
+import fr.epsi.orm.myorm.annotation.OneToMany;
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+import fr.epsi.orm.myorm.lib.ReflectionUtil;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+import fr.epsi.orm.myorm.lib.TypeCodecRegistry;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable mapping model of an entity class.
+ *
+ * The annotations of the class are read once when the metadata is created, every persistence
+ * operation then works on this model instead of scanning the class again for each row.
+ *
+ * @param <T> The entity class described
+ */
+public final class EntityMetadata<T> {
+
+    private final Class<T> entityClass;
+    private final String tableName;
+    private final ColumnMetadata idColumn;
+    private final List<ColumnMetadata> columns;
+    private final List<CollectionMetadata> collections;
+    private final boolean associations;
+    private final GenerationType generation;
+    private final Supplier<T> instantiator;
+    private final Class<?> idType;
+
+    private EntityMetadata(Class<T> aEntityClass, String aTableName, ColumnMetadata aIdColumn,
+                           List<ColumnMetadata> aColumns, List<CollectionMetadata> aCollections, GenerationType aGeneration) {
+        entityClass = aEntityClass;
+        instantiator = ReflectionUtil.instantiator(aEntityClass);
+        tableName = aTableName;
+        idColumn = aIdColumn;
+        columns = aColumns;
+        collections = aCollections;
+        associations = !aCollections.isEmpty() || aColumns.stream().anyMatch(ColumnMetadata::isReference);
+        generation = aGeneration;
+        idType = MethodType.methodType(aIdColumn.getType()).wrap().returnType();
+    }
+
+    /**
+     * Read the mapping of an entity class with the built-in codecs
+     * @see #of(Class, TypeCodecRegistry)
+     */
+    public static <T> EntityMetadata<T> of(Class<T> entityClass) {
+        return of(entityClass, TypeCodecRegistry.defaults());
+    }
+
+    /**
+     * Read the mapping of an entity class.
+     *
+     * The class should respect the following rules :
+     *  - Class should be annotated with @Entity
+     *  - Class should have one and only one field with the @Id annotation
+     *  - The type of each persistent field should have a codec in the registry
+     *  - A @ManyToOne field should reference an @Entity whose id type has a codec in the registry
+     *  - A @OneToMany field should be a List or a Collection of an @Entity, mapped by a @ManyToOne field of this entity
+     *
+     * @param entityClass the class to read
+     * @param codecs the registry resolving the codec of each field
+     * @param <T> The entity class
+     * @return the metadata of the class
+     * @throws IllegalArgumentException if the class does not match the conditions
+     */
+    public static <T> EntityMetadata<T> of(Class<T> entityClass, TypeCodecRegistry codecs) {
+        ReflectionUtil.getAnnotationForClass(entityClass, Entity.class)
+                .orElseThrow(() -> new IllegalArgumentException("The class " + entityClass.getName() + " is not annotated with @Entity"));
+        List<Field> idFields = ReflectionUtil.getFieldsDeclaringAnnotation(entityClass, Id.class).collect(Collectors.toList());
+        if (idFields.size() != 1) {
+            throw new IllegalArgumentException("The class " + entityClass.getName() + " should declare one and only one @Id field, found " + idFields.size());
+        }
+        Field idField = idFields.get(0);
+
+        List<ColumnMetadata> columns = ReflectionUtil.getFieldsWithoutTransient(entityClass)
+                .filter(field -> !field.isSynthetic() && !Modifier.isStatic(field.getModifiers()))
+                .filter(field -> !field.isAnnotationPresent(OneToMany.class))
+                .map(field -> new ColumnMetadata(field, SqlGenerator.getColumnNameForField(field), field.equals(idField),
+                        field.isAnnotationPresent(ManyToOne.class) ? referenceCodec(entityClass, field, field.getType(), codecs)
+                                : codecs.find(field.getType()).orElseThrow(() -> new IllegalArgumentException(
+                                "The type " + field.getType().getName() + " of the field " + field.getName() + " of " + entityClass.getName() + " has no TypeCodec"))))
+                .collect(Collectors.toList());
+        ColumnMetadata idColumn = columns.stream().filter(ColumnMetadata::isId).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("The @Id field of " + entityClass.getName() + " can't be @Transient"));
+        if (idColumn.isReference()) {
+            throw new IllegalArgumentException("The @Id field of " + entityClass.getName() + " can't be @ManyToOne");
+        }
+        List<CollectionMetadata> collections = new ArrayList<>();
+        ReflectionUtil.getFieldsDeclaringAnnotation(entityClass, OneToMany.class)
+                .forEach(field -> collections.add(collection(entityClass, field)));
+
+        return new EntityMetadata<>(entityClass, SqlGenerator.getTableForEntity(entityClass), idColumn,
+                Collections.unmodifiableList(columns), Collections.unmodifiableList(collections), idField.getAnnotation(Id.class).generation());
+    }
+
+    /**
+     * @return the codec of a <code>@ManyToOne</code> field, binding the referenced entity as its id
+     */
+    private static <R> ReferenceCodec<R> referenceCodec(Class<?> entityClass, Field field, Class<R> referencedClass, TypeCodecRegistry codecs) {
+        String description = "The @ManyToOne field " + field.getName() + " of " + entityClass.getName();
+        if (!referencedClass.isAnnotationPresent(Entity.class)) {
+            throw new IllegalArgumentException(description + " should reference an @Entity, found " + referencedClass.getName());
+        }
+        Field referencedId = ReflectionUtil.getFieldDeclaringAnnotation(referencedClass, Id.class)
+                .orElseThrow(() -> new IllegalArgumentException(description + " references " + referencedClass.getName() + " which has no @Id field"));
+        TypeCodec<?> idCodec = codecs.find(referencedId.getType())
+                .orElseThrow(() -> new IllegalArgumentException(description + " references an id of type " + referencedId.getType().getName() + " which has no TypeCodec"));
+        return new ReferenceCodec<>(referencedClass, ReflectionUtil.instantiator(referencedClass), PropertyAccessor.of(referencedId), idCodec);
+    }
+
+    /**
+     * @return the description of a <code>@OneToMany</code> field, checked against the <code>@ManyToOne</code> field mapping it
+     */
+    private static CollectionMetadata collection(Class<?> entityClass, Field field) {
+        String description = "The @OneToMany field " + field.getName() + " of " + entityClass.getName();
+        if (!field.getType().isAssignableFrom(ArrayList.class)) {
+            throw new IllegalArgumentException(description + " should be a List or a Collection, found " + field.getType().getName());
+        }
+        Type type = field.getGenericType();
+        Type element = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : null;
+        if (!(element instanceof Class)) {
+            throw new IllegalArgumentException(description + " should declare the entity class of its elements");
+        }
+        Class<?> elementClass = (Class<?>) element;
+        String mappedBy = field.getAnnotation(OneToMany.class).mappedBy();
+        ReflectionUtil.getFieldByName(elementClass, mappedBy)
+                .filter(owner -> owner.isAnnotationPresent(ManyToOne.class) && owner.getType().equals(entityClass))
+                .orElseThrow(() -> new IllegalArgumentException(description + " should be mapped by a @ManyToOne field of "
+                        + elementClass.getName() + " referencing " + entityClass.getName() + ", found '" + mappedBy + "'"));
+        return new CollectionMetadata(field, elementClass, mappedBy);
+    }
+
+    /**
+     * @return the mapped entity class
+     */
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the name of the table of the entity
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the column mapped by the <code>@Id</code> field
+     */
+    public ColumnMetadata getIdColumn() {
+        return idColumn;
+    }
+
+    /**
+     * @return all the persistent columns, in the declaration order of the fields (id included)
+     */
+    public List<ColumnMetadata> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the <code>@OneToMany</code> fields, which are not columns
+     */
+    public List<CollectionMetadata> getCollections() {
+        return collections;
+    }
+
+    /**
+     * @return true if the entity has a <code>@ManyToOne</code> or a <code>@OneToMany</code> field
+     */
+    public boolean hasAssociations() {
+        return associations;
+    }
+
+    /**
+     * Convert an id given by a caller to the type of the id field, so it matches the ids read from the entities in the
+     * identity map and the caches. A number is converted to the numeric type of the id if its value is kept,
+     * <code>1</code> is the id <code>1L</code> of a <code>Long</code> id for example.
+     * @param id the id given by the caller, can be null
+     * @return the id of the type of the id field, null if the id is null
+     * @throws IllegalArgumentException if the id can't be converted to the type of the id field
+     */
+    public Object normalizeId(Object id) {
+        if (id == null || idType.isInstance(id)) {
+            return id;
+        }
+        if (id instanceof Number) {
+            try {
+                BigDecimal value = id instanceof BigDecimal ? (BigDecimal) id : new BigDecimal(id.toString());
+                if (idType == Long.class) return value.longValueExact();
+                if (idType == Integer.class) return value.intValueExact();
+                if (idType == Short.class) return value.shortValueExact();
+                if (idType == Byte.class) return value.byteValueExact();
+                if (idType == BigInteger.class) return value.toBigIntegerExact();
+                if (idType == BigDecimal.class) return value;
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("The id " + id + " can't be converted to the " + idType.getName() + " id of " + entityClass.getName(), e);
+            }
+        }
+        throw new IllegalArgumentException("The id " + id + " of type " + id.getClass().getName() + " doesn't match the "
+                + idType.getName() + " id of " + entityClass.getName());
+    }
+
+    /**
+     * Convert the ids given by a caller with {@link #normalizeId(Object)}
+     * @return the ids converted in their order, the null ids kept
+     */
+    public List<Object> normalizeIds(Collection<?> ids) {
+        List<Object> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            result.add(normalizeId(id));
+        }
+        return result;
+    }
+
+    /**
+     * @return the generation strategy of the id
+     */
+    public GenerationType getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return true if the id is generated by the database
+     */
+    public boolean isIdGenerated() {
+        return generation == GenerationType.IDENTITY;
+    }
+
+    /**
+     * @return a new instance of the entity created with its no-arg constructor
+     */
+    public T newInstance() {
+        return instantiator.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EntityMetadata{" +
+                "entityClass=" + entityClass.getName() +
+                ", tableName='" + tableName + '\'' +
+                ", columns=" + columns +
+                ", collections=" + collections +
+                ", generation=" + generation +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Publisher of the rows of a query mapped to entities.
+ *
+ * Each subscriber gets its own query, opened at its first request. A row is read from the ResultSet only when the
+ * subscriber has requested it, the database resources are released when the rows are exhausted, when the subscription
+ * is cancelled or when an error is reported with <code>onError</code>. The end of the rows is only found when a row
+ * is requested : a subscriber requesting exactly the number of rows gets <code>onComplete</code> at its next request.
+ * The signals are sent by a drain loop running on the executor, or on the thread calling <code>request</code> with
+ * <code>Runnable::run</code> ; a request made from <code>onNext</code> is only counted and served by the running loop.
+ *
+ * @param <T> The entity class published
+ */
+final class EntityPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Query opening the Stream of the rows, the Stream is closed by the subscription
+     */
+    @FunctionalInterface
+    interface StreamOpener<T> {
+        Stream<T> open() throws SQLException;
+    }
+
+    private final StreamOpener<T> opener;
+    private final Executor executor;
+
+    EntityPublisher(StreamOpener<T> aOpener, Executor aExecutor) {
+        opener = aOpener;
+        executor = aExecutor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "The subscriber can't be null");
+        RowSubscription<T> subscription = new RowSubscription<>(subscriber, opener, executor);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private static final class RowSubscription<T> implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final StreamOpener<T> opener;
+        private final Executor executor;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable invalidRequest;
+
+        // Only used by the drain loop
+        private Stream<T> stream;
+        private Iterator<T> rows;
+        private boolean terminated = false;
+
+        RowSubscription(Flow.Subscriber<? super T> aSubscriber, StreamOpener<T> aOpener, Executor aExecutor) {
+            subscriber = aSubscriber;
+            opener = aOpener;
+            executor = aExecutor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("The number of requested rows should be positive, got " + n);
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (terminated) {
+                return;
+            }
+            if (cancelled) {
+                release();
+                return;
+            }
+            if (invalidRequest != null) {
+                fail(invalidRequest);
+                return;
+            }
+            try {
+                if (rows == null) {
+                    if (requested.get() == 0) {
+                        return;
+                    }
+                    stream = opener.open();
+                    rows = stream.iterator();
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (cancelled) {
+                        release();
+                        return;
+                    }
+                    if (emitted == demand) {
+                        break;
+                    }
+                    if (!rows.hasNext()) {
+                        release();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(rows.next());
+                    emitted++;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            } catch (SQLException | RuntimeException e) {
+                fail(e instanceof IllegalStateException && e.getCause() instanceof SQLException ? e.getCause() : e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            release();
+            subscriber.onError(error);
+        }
+
+        private void release() {
+            terminated = true;
+            if (stream != null) {
+                Stream<T> opened = stream;
+                stream = null;
+                rows = null;
+                opened.close();
+            }
+        }
+    }
+}
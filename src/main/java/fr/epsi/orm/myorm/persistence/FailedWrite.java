@@ -0,0 +1,58 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * A write of the write-behind buffer given up after failing its maximum number of attempts, given to the handler
+ * registered with {@link BasicEntityManager.Builder#writeBehindFailures(int, java.util.function.Consumer)}.
+ */
+public final class FailedWrite {
+
+    private final Object entity;
+    private final Operation operation;
+    private final int attempts;
+    private final Exception failure;
+
+    FailedWrite(Object aEntity, Operation aOperation, int aAttempts, Exception aFailure) {
+        entity = aEntity;
+        operation = aOperation;
+        attempts = aAttempts;
+        failure = aFailure;
+    }
+
+    /**
+     * @return the entity that could not be written, in its current state
+     */
+    public Object getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return {@link Operation#SAVE}, {@link Operation#UPDATE} or {@link Operation#DELETE}
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the number of flushes that tried the write
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the exception of the last attempt
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "FailedWrite{" +
+                "entity=" + entity +
+                ", operation=" + operation +
+                ", attempts=" + attempts +
+                ", failure=" + failure +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener printing each statement executed with its execution time, the EntityManager prints nothing without it.
+ */
+public class LoggingListener implements EntityManagerListener {
+
+    private final PrintStream out;
+
+    /**
+     * Print the statements to the standard output
+     */
+    public LoggingListener() {
+        this(System.out);
+    }
+
+    public LoggingListener(PrintStream aOut) {
+        out = aOut;
+    }
+
+    @Override
+    public void onStatement(String sql, long executeNanos) {
+        out.println(sql + " (" + TimeUnit.NANOSECONDS.toMicros(executeNanos) + " us)");
+    }
+}
@@ -1,63 +1,171 @@
 package fr.epsi.orm.myorm.persistence;
 
-import fr.epsi.orm.myorm.annotation.Transient;
-import fr.epsi.orm.myorm.lib.ReflectionUtil;
-import javaslang.Predicates;
+import fr.epsi.orm.myorm.lib.TypeCodecRegistry;
 
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.time.LocalDate;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by fteychene on 14/05/17.
  */
 public class MappingHelper {
 
+    /**
+     * Read the generated key from the first column of a ResultSet returned by <code>getGeneratedKeys</code> into the id of an entity
+     * @param rs the generated keys positioned on the row to read
+     * @param entity the entity inserted
+     * @param idColumn the id column of the entity
+     */
+    public static void readGeneratedKey(ResultSet rs, Object entity, ColumnMetadata idColumn) throws SQLException {
+        idColumn.getCodec().readProperty(rs, 1, entity, idColumn.getAccessor());
+    }
+
+    /**
+     * Read a column by name with the built-in codec of a type
+     * @throws IllegalArgumentException if the type has no built-in codec
+     */
     public static Object getFromResultSetByType(Class<?> type, ResultSet rs, String columnName) throws SQLException {
-        if (type.equals(String.class)) {
-            return rs.getString(columnName);
-        } else if (type.equals(Integer.class)) {
-            return rs.getInt(columnName);
-        } else if (type.equals(Long.class)) {
-            return rs.getLong(columnName);
-        } else if (type.equals(LocalDate.class)) {
-            return rs.getDate(columnName).toLocalDate();
+        return TypeCodecRegistry.defaults().get(type).read(rs, rs.findColumn(columnName));
+    }
+
+    /**
+     * Resolve the index of columns in a ResultSet, the labels are compared ignoring case
+     * @param metaData the metadata of the ResultSet
+     * @param columnNames the names of the columns to find
+     * @return the index of each column in the ResultSet, in the order of columnNames
+     * @throws SQLException if a column is missing in the ResultSet
+     */
+    public static int[] columnIndexes(ResultSetMetaData metaData, String... columnNames) throws SQLException {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = metaData.getColumnCount(); i >= 1; i--) {
+            labels.put(metaData.getColumnLabel(i).toUpperCase(Locale.ROOT), i);
         }
-        return null;
+        int[] indexes = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            Integer index = labels.get(columnNames[i].toUpperCase(Locale.ROOT));
+            if (index == null) {
+                throw new SQLException("The column " + columnNames[i] + " is missing in the ResultSet");
+            }
+            indexes[i] = index;
+        }
+        return indexes;
     }
 
+    /**
+     * Resolve the plan mapping the rows of a ResultSet to instances of an entity with the reflective mapping
+     * @param metaData the metadata of the ResultSet
+     * @param metadata the metadata of the entity class
+     * @return the RowMapper reading the columns by index
+     */
+    public static <T> RowMapper<T> rowMapper(ResultSetMetaData metaData, EntityMetadata<T> metadata) throws SQLException {
+        List<ColumnMetadata> columns = metadata.getColumns();
+        int[] indexes = columnIndexes(metaData, columns.stream().map(ColumnMetadata::getName).toArray(String[]::new));
+        ColumnMetadata[] plan = columns.toArray(new ColumnMetadata[0]);
+        return rs -> {
+            T instance = metadata.newInstance();
+            for (int i = 0; i < plan.length; i++) {
+                plan[i].getCodec().readProperty(rs, indexes[i], instance, plan[i].getAccessor());
+            }
+            return instance;
+        };
+    }
 
-    public static <T> T mapToInstance(ResultSet rs, Class<T> entityClass) throws SQLException {
-        T instance = ReflectionUtil.instanciate(entityClass).get();
-        List<Field> fields = ReflectionUtil.getFieldsWithoutTransient(instance.getClass()).collect(Collectors.toList());
-        for (Field field : fields) {
-            ReflectionUtil.setValue(field, instance, MappingHelper.getFromResultSetByType(field.getType(), rs, SqlGenerator.getColumnNameForField(field)));
-        }
-        return instance;
+    public static <T> T mapToInstance(ResultSet rs, EntityMetadata<T> metadata) throws SQLException {
+        return rowMapper(rs.getMetaData(), metadata).map(rs);
     }
 
-    public static <T> List<T> mapFromResultSet(Class<? extends T> entityClass, ResultSet rs) throws SQLException {
+    public static <T> List<T> mapFromResultSet(EntityMapper<T> mapper, ResultSet rs) throws SQLException {
         List<T> result = new ArrayList<>();
+        RowMapper<T> rowMapper = mapper.rowMapper(rs.getMetaData());
         while (rs.next()) {
-            result.add(mapToInstance(rs, entityClass));
+            result.add(rowMapper.map(rs));
         }
         return result;
     }
 
-    public static Map<String, Object> entityToParams(Object entity, Predicate<Field>... predicates) {
-        HashMap result = new HashMap<>();
-        ReflectionUtil.getFields(entity.getClass(), predicates).filter(field ->
-            !ReflectionUtil.getAnnotationForField(field, Transient.class).isPresent())
-                .forEach(field -> {
-                    Optional fieldValue = ReflectionUtil.getValue(field, entity);
-                    if (fieldValue.isPresent() && SqlGenerator.getColumnNameForField(field) != "id") {
-                        result.put(SqlGenerator.getColumnNameForField(field), fieldValue.get());
+    /**
+     * Map lazily the rows of a ResultSet, each row is read when the Stream requests the next element.
+     * Errors while reading the rows are thrown as IllegalStateException.
+     * @param mapper the mapper of the entity
+     * @param rs the ResultSet to read, it is not closed by the Stream
+     * @return a sequential Stream of the entities
+     */
+    public static <T> Stream<T> streamFromResultSet(EntityMapper<T> mapper, ResultSet rs) throws SQLException {
+        RowMapper<T> rowMapper = mapper.rowMapper(rs.getMetaData());
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
                     }
-                });
+                    action.accept(rowMapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error while reading the rows of " + mapper.getEntityClass().getName(), e);
+                }
+            }
+        }, false);
+    }
+
+    /**
+     * Get the mapper of an entity with the built-in codecs
+     * @see #getMapper(EntityMetadata, TypeCodecRegistry)
+     */
+    public static <T> EntityMapper<T> getMapper(EntityMetadata<T> metadata) {
+        return getMapper(metadata, TypeCodecRegistry.defaults());
+    }
+
+    /**
+     * Get the mapper of an entity, the mapper generated at compile time if there is one, the reflective mapping instead.
+     * The generated mappers use the built-in codecs, the reflective mapping is used when a field has a custom codec
+     * or is an association.
+     * @param metadata the metadata of the entity class
+     * @param codecs the registry used to create the metadata
+     * @return the mapper to use for the entity
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMapper<T> getMapper(EntityMetadata<T> metadata, TypeCodecRegistry codecs) {
+        Class<T> entityClass = metadata.getEntityClass();
+        if (metadata.hasAssociations() || metadata.getColumns().stream().anyMatch(column -> codecs.isCustom(column.getType()))) {
+            return new ReflectiveEntityMapper<>(metadata);
+        }
+        try {
+            Class<?> generated = Class.forName(entityClass.getName() + "_Mapper", true, entityClass.getClassLoader());
+            if (EntityMapper.class.isAssignableFrom(generated)) {
+                EntityMapper<?> mapper = (EntityMapper<?>) generated.getConstructor().newInstance();
+                if (mapper.getEntityClass().equals(entityClass)) {
+                    return (EntityMapper<T>) mapper;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // No mapper generated for this entity
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to instantiate the generated mapper of " + entityClass.getName(), e);
+        }
+        return new ReflectiveEntityMapper<>(metadata);
+    }
+
+    /**
+     * Extract the values of the non null columns of an entity, the id column is excluded
+     * @param entity the entity to read
+     * @param metadata the metadata of the entity class
+     * @return the values of the entity indexed by column name
+     */
+    public static <T> Map<String, Object> entityToParams(T entity, EntityMetadata<T> metadata) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (ColumnMetadata column : metadata.getColumns()) {
+            if (column.isId()) continue;
+            Object value = column.getAccessor().get(entity);
+            if (value != null) {
+                result.put(column.getName(), value);
+            }
+        }
         return result;
     }
 }
@@ -0,0 +1,141 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener keeping latency histograms and counters for each {@link Operation}, it can be shared by the threads.
+ */
+public class MetricsListener implements EntityManagerListener {
+
+    private final Map<Operation, OperationStats> stats;
+
+    public MetricsListener() {
+        Map<Operation, OperationStats> byOperation = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            byOperation.put(operation, new OperationStats());
+        }
+        stats = Collections.unmodifiableMap(byOperation);
+    }
+
+    @Override
+    public void onOperation(OperationEvent event) {
+        OperationStats operationStats = stats.get(event.getOperation());
+        operationStats.count.increment();
+        if (event.getFailure().isPresent()) {
+            operationStats.failures.increment();
+        }
+        operationStats.total.record(event.getTotalNanos());
+        // The operations run in an open Session don't acquire a connection, they would hide the cost of the pool
+        if (event.getAcquireNanos() > 0) {
+            operationStats.acquire.record(event.getAcquireNanos());
+        }
+        operationStats.execute.record(event.getExecuteNanos());
+        operationStats.mapping.record(event.getMappingNanos());
+        operationStats.statements.add(event.getStatements());
+        operationStats.rows.add(event.getRows());
+        operationStats.boundBytes.add(event.getBoundBytes());
+    }
+
+    /**
+     * @return the measures of an operation since the creation of the listener
+     */
+    public OperationStats getStats(Operation operation) {
+        return stats.get(operation);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("MetricsListener{");
+        stats.forEach((operation, operationStats) -> {
+            if (operationStats.getCount() > 0) {
+                result.append('\n').append(operation).append('=').append(operationStats);
+            }
+        });
+        return result.append('}').toString();
+    }
+
+    /**
+     * The histograms and the counters of an operation, updated by the listener
+     */
+    public static final class OperationStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram acquire = new LatencyHistogram();
+        private final LatencyHistogram execute = new LatencyHistogram();
+        private final LatencyHistogram mapping = new LatencyHistogram();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder boundBytes = new LongAdder();
+
+        private OperationStats() {
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return the durations of the operations, the acquisition of their connection included
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the times spent to get a connection, only for the operations that acquired one
+         */
+        public LatencyHistogram getAcquire() {
+            return acquire;
+        }
+
+        /**
+         * @return the times spent by the driver to execute the statements of each operation
+         */
+        public LatencyHistogram getExecute() {
+            return execute;
+        }
+
+        /**
+         * @return the times spent to read and map the rows of each operation
+         */
+        public LatencyHistogram getMapping() {
+            return mapping;
+        }
+
+        public long getStatements() {
+            return statements.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBoundBytes() {
+            return boundBytes.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "OperationStats{" +
+                    "count=" + getCount() +
+                    ", failures=" + getFailures() +
+                    ", statements=" + getStatements() +
+                    ", rows=" + getRows() +
+                    ", boundBytes=" + getBoundBytes() +
+                    ", total=" + total +
+                    ", acquire=" + acquire +
+                    ", execute=" + execute +
+                    ", mapping=" + mapping +
+                    '}';
+        }
+    }
+}
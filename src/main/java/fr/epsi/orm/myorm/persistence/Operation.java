@@ -0,0 +1,20 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * The operations of an {@link EntityManager} or a {@link Session} reported to the {@link EntityManagerListener}s.
+ * The reads of projections are reported as the reads of their entity.
+ */
+public enum Operation {
+    FIND,
+    FIND_ALL,
+    FIND_ALL_BY_ID,
+    FIND_PAGE,
+    SAVE,
+    SAVE_ALL,
+    UPDATE,
+    DELETE,
+    /**
+     * The write of the changed entities of a Session, or of the writes queued in write-behind mode
+     */
+    FLUSH
+}
@@ -0,0 +1,121 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.util.Optional;
+
+/**
+ * Immutable measures of an operation, given to {@link EntityManagerListener#onOperation(OperationEvent)}.
+ *
+ * The total time of an operation is split into the acquisition of its connection, the execution of its statements
+ * and the mapping of the rows read, the time left is spent in the ORM itself (caches, statement preparation, binding).
+ */
+public final class OperationEvent {
+
+    private final Operation operation;
+    private final Class<?> entityClass;
+    private final long totalNanos;
+    private final long acquireNanos;
+    private final long executeNanos;
+    private final long mappingNanos;
+    private final int statements;
+    private final long rows;
+    private final long boundBytes;
+    private final Throwable failure;
+
+    OperationEvent(Operation aOperation, Class<?> aEntityClass, long aTotalNanos, long aAcquireNanos, long aExecuteNanos,
+                   long aMappingNanos, int aStatements, long aRows, long aBoundBytes, Throwable aFailure) {
+        operation = aOperation;
+        entityClass = aEntityClass;
+        totalNanos = aTotalNanos;
+        acquireNanos = aAcquireNanos;
+        executeNanos = aExecuteNanos;
+        mappingNanos = aMappingNanos;
+        statements = aStatements;
+        rows = aRows;
+        boundBytes = aBoundBytes;
+        failure = aFailure;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the class of the entities of the operation, null for a flush or a saveAll of several classes
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the duration of the operation, the acquisition of its connection included
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the time spent to get a connection from the DataSource, 0 if the operation ran in an open Session
+     */
+    public long getAcquireNanos() {
+        return acquireNanos;
+    }
+
+    /**
+     * @return the time spent by the driver to execute the statements
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * @return the time spent to read the rows from the ResultSets and map them, the fetches of the driver included
+     */
+    public long getMappingNanos() {
+        return mappingNanos;
+    }
+
+    /**
+     * @return the number of statements executed, a JDBC batch counts as one
+     */
+    public int getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the number of rows mapped
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the estimated size of the parameters bound to the statements
+     * @see fr.epsi.orm.myorm.lib.NamedPreparedStatement#countBoundBytes()
+     */
+    public long getBoundBytes() {
+        return boundBytes;
+    }
+
+    /**
+     * @return the exception that failed the operation, empty if it succeeded
+     */
+    public Optional<Throwable> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationEvent{" +
+                "operation=" + operation +
+                ", entityClass=" + (entityClass == null ? null : entityClass.getSimpleName()) +
+                ", totalNanos=" + totalNanos +
+                ", acquireNanos=" + acquireNanos +
+                ", executeNanos=" + executeNanos +
+                ", mappingNanos=" + mappingNanos +
+                ", statements=" + statements +
+                ", rows=" + rows +
+                ", boundBytes=" + boundBytes +
+                ", failed=" + (failure != null) +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+
+/**
+ * Measures of the operations of one {@link BasicSession} for its {@link EntityManagerListener}s.
+ *
+ * A Session is used by one thread at a time, the measures of the operation in progress are plain fields.
+ * Only the outermost operation is measured, the operations it runs add their measures to it.
+ * A listener that throws doesn't fail the operation, its exception is logged by the <code>System.Logger</code> named
+ * after {@link EntityManagerListener}.
+ */
+final class OperationRecorder {
+
+    private static final System.Logger LOGGER = System.getLogger(EntityManagerListener.class.getName());
+
+    private final EntityManagerListener[] listeners;
+    private long pendingAcquireNanos;
+    private boolean active = false;
+    private Operation operation;
+    private Class<?> entityClass;
+    private long start;
+    private long acquireNanos;
+    private long executeNanos;
+    private long mappingNanos;
+    private int statements;
+    private long rows;
+    private long boundBytes;
+
+    /**
+     * @param acquireNanos the time spent to get the connection of the Session, added to its first operation
+     */
+    OperationRecorder(EntityManagerListener[] aListeners, long acquireNanos) {
+        listeners = aListeners;
+        pendingAcquireNanos = acquireNanos;
+    }
+
+    /**
+     * Start to measure an operation
+     * @return false if an operation is already in progress, the new one is part of it
+     */
+    boolean start(Operation aOperation, Class<?> aEntityClass) {
+        if (active) {
+            return false;
+        }
+        active = true;
+        operation = aOperation;
+        entityClass = aEntityClass;
+        acquireNanos = pendingAcquireNanos;
+        pendingAcquireNanos = 0;
+        executeNanos = 0;
+        mappingNanos = 0;
+        statements = 0;
+        rows = 0;
+        boundBytes = 0;
+        start = System.nanoTime();
+        return true;
+    }
+
+    void executed(NamedPreparedStatement statement, long nanos) {
+        executeNanos += nanos;
+        statements++;
+        boundBytes += statement.takeBoundBytes();
+        for (EntityManagerListener listener : listeners) {
+            try {
+                listener.onStatement(statement.getSql(), nanos);
+            } catch (RuntimeException e) {
+                listenerFailed(listener, e);
+            }
+        }
+    }
+
+    void mapped(long count, long nanos) {
+        rows += count;
+        mappingNanos += nanos;
+    }
+
+    /**
+     * End the operation in progress and report it to the listeners
+     * @param failure the exception that failed the operation, null if it succeeded
+     */
+    void finish(Throwable failure) {
+        long total = System.nanoTime() - start + acquireNanos;
+        active = false;
+        OperationEvent event = new OperationEvent(operation, entityClass, total, acquireNanos, executeNanos, mappingNanos,
+                statements, rows, boundBytes, failure);
+        for (EntityManagerListener listener : listeners) {
+            try {
+                listener.onOperation(event);
+            } catch (RuntimeException e) {
+                listenerFailed(listener, e);
+            }
+        }
+    }
+
+    /**
+     * Log the exception thrown by a listener, the listeners are not allowed to fail the operations
+     */
+    static void listenerFailed(EntityManagerListener listener, RuntimeException failure) {
+        LOGGER.log(System.Logger.Level.WARNING, () -> "The listener " + listener + " has failed", failure);
+    }
+}
@@ -0,0 +1,60 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A page of entities ordered by id, read by {@link EntityManager#findPage(Class, Object, int)}.
+ *
+ * The page is a cursor in the table : the next page is read after the id of the last entity of this page.
+ * <pre>
+ * Page&lt;User&gt; page = entityManager.findPage(User.class, null, 50);
+ * while (page.hasNext()) {
+ *     page = entityManager.findPage(User.class, page.getNextAfterId().get(), 50);
+ * }
+ * </pre>
+ *
+ * @param <T> The entity class
+ */
+public final class Page<T> {
+
+    private final List<T> content;
+    private final Object lastId;
+    private final boolean hasNext;
+
+    Page(List<T> aContent, Object aLastId, boolean aHasNext) {
+        content = aContent;
+        lastId = aLastId;
+        hasNext = aHasNext;
+    }
+
+    /**
+     * @return the entities of the page ordered by id, unmodifiable
+     */
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return true if rows remain after this page
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @return the id to read the next page after, empty if this page is the last one
+     */
+    public Optional<Object> getNextAfterId() {
+        return hasNext ? Optional.of(lastId) : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "size=" + content.size() +
+                ", lastId=" + lastId +
+                ", hasNext=" + hasNext +
+                '}';
+    }
+}
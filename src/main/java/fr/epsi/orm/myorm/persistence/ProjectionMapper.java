@@ -0,0 +1,216 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+import fr.epsi.orm.myorm.lib.ReflectionUtil;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Mapping of the rows of an entity table into a projection reading only some of its columns.
+ *
+ * The projection is either a class with a no-arg constructor, whose fields are named like fields of the entity, or an
+ * interface whose getters (<code>getFirstName()</code>, <code>isActive()</code> or <code>firstName()</code>) are named
+ * after fields of the entity. The selects only contain the projected columns, in the order of the projection.
+ * A mapper is built once per entity class and projection.
+ *
+ * @param <P> The projection class
+ */
+final class ProjectionMapper<P> {
+
+    private final Class<P> projection;
+    private final List<ColumnMetadata> columns;
+    private final String selectAll;
+    private final String selectById;
+    private final RowReader<P> reader;
+
+    @FunctionalInterface
+    private interface RowReader<P> {
+        P read(ResultSet rs) throws SQLException;
+    }
+
+    private ProjectionMapper(Class<P> aProjection, EntityMetadata<?> metadata, List<ColumnMetadata> aColumns, RowReader<P> aReader) {
+        projection = aProjection;
+        columns = aColumns;
+        reader = aReader;
+        ColumnMetadata id = metadata.getIdColumn();
+        selectAll = "SELECT " + aColumns.stream().map(ColumnMetadata::getName).collect(Collectors.joining(", ")) +
+                " FROM " + metadata.getTableName();
+        selectById = selectAll + " WHERE " + id.getName() + " = :" + id.getFieldName();
+    }
+
+    /**
+     * Build the mapping of a projection of an entity
+     * @param metadata the metadata of the entity class
+     * @param projection the projection class or interface
+     * @return the mapper of the projection
+     * @throws IllegalArgumentException if a property of the projection doesn't match a field of the entity of the same type
+     */
+    static <P> ProjectionMapper<P> of(EntityMetadata<?> metadata, Class<P> projection) {
+        Map<String, ColumnMetadata> byField = metadata.getColumns().stream()
+                .collect(Collectors.toMap(ColumnMetadata::getFieldName, Function.identity()));
+        if (projection.isInterface()) {
+            return ofInterface(metadata, projection, byField);
+        }
+        return ofClass(metadata, projection, byField);
+    }
+
+    private static <P> ProjectionMapper<P> ofClass(EntityMetadata<?> metadata, Class<P> projection, Map<String, ColumnMetadata> byField) {
+        Supplier<P> instantiator = ReflectionUtil.instantiator(projection);
+        List<ColumnMetadata> columns = new ArrayList<>();
+        List<PropertyAccessor> accessors = new ArrayList<>();
+        ReflectionUtil.getFields(projection, field -> !field.isSynthetic() && !Modifier.isStatic(field.getModifiers()))
+                .forEach(field -> {
+                    columns.add(columnFor(metadata, projection, byField, field.getName(), field.getType()));
+                    accessors.add(PropertyAccessor.of(field));
+                });
+        checkNotEmpty(projection, columns);
+        ColumnMetadata[] projected = columns.toArray(new ColumnMetadata[0]);
+        PropertyAccessor[] targets = accessors.toArray(new PropertyAccessor[0]);
+        return new ProjectionMapper<>(projection, metadata, columns, rs -> {
+            P result = instantiator.get();
+            for (int i = 0; i < projected.length; i++) {
+                projected[i].getCodec().readProperty(rs, i + 1, result, targets[i]);
+            }
+            return result;
+        });
+    }
+
+    private static <P> ProjectionMapper<P> ofInterface(EntityMetadata<?> metadata, Class<P> projection, Map<String, ColumnMetadata> byField) {
+        List<ColumnMetadata> columns = new ArrayList<>();
+        Map<Method, Integer> indexes = new HashMap<>();
+        for (Method method : projection.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue;
+            }
+            if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+                throw new IllegalArgumentException("The method " + method.getName() + " of the projection " + projection.getName() + " is not a getter");
+            }
+            ColumnMetadata column = columnFor(metadata, projection, byField, propertyName(method), method.getReturnType());
+            int index = columns.indexOf(column);
+            if (index < 0) {
+                index = columns.size();
+                columns.add(column);
+            }
+            indexes.put(method, index);
+        }
+        checkNotEmpty(projection, columns);
+        ColumnMetadata[] projected = columns.toArray(new ColumnMetadata[0]);
+        return new ProjectionMapper<>(projection, metadata, columns, rs -> {
+            Object[] values = new Object[projected.length];
+            for (int i = 0; i < projected.length; i++) {
+                values[i] = projected[i].getCodec().read(rs, i + 1);
+            }
+            return projection.cast(Proxy.newProxyInstance(projection.getClassLoader(), new Class<?>[]{projection},
+                    new ProjectionHandler(projection, indexes, values)));
+        });
+    }
+
+    private static ColumnMetadata columnFor(EntityMetadata<?> metadata, Class<?> projection, Map<String, ColumnMetadata> byField,
+                                            String property, Class<?> type) {
+        ColumnMetadata column = Optional.ofNullable(byField.get(property)).orElseThrow(() -> new IllegalArgumentException(
+                "The property " + property + " of the projection " + projection.getName() + " is not a field of " + metadata.getEntityClass().getName()));
+        if (boxed(type) != boxed(column.getType())) {
+            throw new IllegalArgumentException("The property " + property + " of the projection " + projection.getName() +
+                    " should be of type " + column.getType().getName() + ", found " + type.getName());
+        }
+        return column;
+    }
+
+    private static void checkNotEmpty(Class<?> projection, List<ColumnMetadata> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("The projection " + projection.getName() + " has no property");
+        }
+    }
+
+    private static String propertyName(Method method) {
+        String name = method.getName();
+        int prefix = name.startsWith("get") && name.length() > 3 ? 3
+                : name.startsWith("is") && name.length() > 2 && boxed(method.getReturnType()) == Boolean.class ? 2 : 0;
+        if (prefix == 0) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    /**
+     * @return the projected columns, in the order of the selects
+     */
+    List<ColumnMetadata> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the SQL selecting the projected columns of all the rows
+     */
+    String getSelectAll() {
+        return selectAll;
+    }
+
+    /**
+     * @return the SQL selecting the projected columns of a row by id
+     */
+    String getSelectById() {
+        return selectById;
+    }
+
+    /**
+     * Map the current row of a ResultSet of one of the selects of this mapper
+     */
+    P map(ResultSet rs) throws SQLException {
+        return reader.read(rs);
+    }
+
+    private static final class ProjectionHandler implements InvocationHandler {
+        private final Class<?> projection;
+        private final Map<Method, Integer> indexes;
+        private final Object[] values;
+
+        ProjectionHandler(Class<?> aProjection, Map<Method, Integer> aIndexes, Object[] aValues) {
+            projection = aProjection;
+            indexes = aIndexes;
+            values = aValues;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Integer index = indexes.get(method);
+            if (index != null) {
+                return values[index];
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                            && Proxy.getInvocationHandler(args[0]) instanceof ProjectionHandler
+                            && ((ProjectionHandler) Proxy.getInvocationHandler(args[0])).projection == projection
+                            && Arrays.equals(values, ((ProjectionHandler) Proxy.getInvocationHandler(args[0])).values);
+                case "hashCode":
+                    return 31 * projection.hashCode() + Arrays.hashCode(values);
+                case "toString":
+                    return projection.getSimpleName() + Arrays.toString(values);
+                default:
+                    throw new UnsupportedOperationException("The method " + method.getName() + " is not a property of the projection " + projection.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the results of findAll, shared by the sessions of an EntityManager.
+ *
+ * A result is an unmodifiable list. Concurrent misses on the same class are collapsed : the first caller runs
+ * the query while the others wait for its result.
+ * Each write in a table increments the version of the table, a result is only kept if the version of its table
+ * did not change while the query was running.
+ */
+final class QueryCache {
+
+    /**
+     * Query loading a result on a miss
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+        List<T> load() throws SQLException;
+    }
+
+    private final ConcurrentHashMap<Class<?>, CompletableFuture<List<?>>> results = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Get the result of findAll for an entity, loading it if it is not cached
+     * @param metadata the metadata of the entity class
+     * @param loader the query to run on a miss
+     * @return the unmodifiable list of the entities
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(EntityMetadata<T> metadata, Loader<T> loader) throws SQLException {
+        Class<T> entityClass = metadata.getEntityClass();
+        CompletableFuture<List<?>> result = results.get(entityClass);
+        if (result == null) {
+            CompletableFuture<List<?>> loading = new CompletableFuture<>();
+            result = results.putIfAbsent(entityClass, loading);
+            if (result == null) {
+                misses.increment();
+                return (List<T>) load(metadata.getTableName(), entityClass, loading, loader);
+            }
+        }
+        hits.increment();
+        return (List<T>) await(result);
+    }
+
+    private <T> List<T> load(String table, Class<T> entityClass, CompletableFuture<List<?>> loading, Loader<T> loader) throws SQLException {
+        AtomicLong version = versionOf(table);
+        long before = version.get();
+        List<T> loaded;
+        try {
+            loaded = Collections.unmodifiableList(loader.load());
+        } catch (SQLException | RuntimeException e) {
+            results.remove(entityClass, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        loading.complete(loaded);
+        if (version.get() != before) {
+            results.remove(entityClass, loading);
+        }
+        return loaded;
+    }
+
+    private static List<?> await(CompletableFuture<List<?>> result) throws SQLException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw new SQLException("The query shared with a concurrent caller has failed", cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove the results of the entities mapped to a table written in the database
+     * @param metadata the metadata of the entity written
+     */
+    void invalidate(EntityMetadata<?> metadata) {
+        String table = metadata.getTableName();
+        versionOf(table).incrementAndGet();
+        results.keySet().removeIf(entityClass -> SqlGenerator.getTableForEntity(entityClass).equalsIgnoreCase(table));
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), 0);
+    }
+
+    private AtomicLong versionOf(String table) {
+        return versions.computeIfAbsent(table.toUpperCase(Locale.ROOT), name -> new AtomicLong());
+    }
+}
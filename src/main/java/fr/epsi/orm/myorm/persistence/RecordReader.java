@@ -0,0 +1,353 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Reader of the records of a file loaded by a {@link BulkLoader}, one record at a time.
+ *
+ * The names of the fields are resolved to the indexes of the values with a function given by the loader, that throws
+ * an IllegalArgumentException for an unknown name. The errors of the file are IllegalArgumentExceptions naming the line.
+ */
+abstract class RecordReader {
+
+    final CharSource source;
+    final ToIntFunction<String> resolver;
+    final StringBuilder text = new StringBuilder();
+    int line = 1;
+    private int recordLine = 0;
+    private boolean started = false;
+
+    RecordReader(CharSource aSource, ToIntFunction<String> aResolver) {
+        source = aSource;
+        resolver = aResolver;
+    }
+
+    /**
+     * Read the next record
+     * @param values the values of the record by index, the fields missing from the record are set to null
+     * @return false at the end of the file
+     */
+    final boolean next(String[] values) throws IOException {
+        Arrays.fill(values, null);
+        skipBlankLines();
+        if (!started && source.peek() >= 0) {
+            started = true;
+            readHeader();
+            skipBlankLines();
+        }
+        if (source.peek() < 0) {
+            return false;
+        }
+        recordLine = line;
+        readRecord(values);
+        return true;
+    }
+
+    /**
+     * Read the header of the file before its first record, the default does nothing
+     */
+    void readHeader() throws IOException {
+    }
+
+    abstract void readRecord(String[] values) throws IOException;
+
+    /**
+     * @return the line where the last record read starts
+     */
+    final int getLine() {
+        return recordLine;
+    }
+
+    final int resolve(String name, int atLine) {
+        try {
+            return resolver.applyAsInt(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + atLine + ": " + e.getMessage(), e);
+        }
+    }
+
+    final IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + line + ": " + message);
+    }
+
+    private void skipBlankLines() throws IOException {
+        for (int c = source.peek(); c == '\r' || c == '\n'; c = source.peek()) {
+            readLineEnd();
+        }
+    }
+
+    /**
+     * Consume a line end, \n, \r\n or a single \r
+     */
+    final void readLineEnd() throws IOException {
+        if (source.read() == '\r' && source.peek() == '\n') {
+            source.read();
+        }
+        line++;
+    }
+
+    /**
+     * CSV records as in RFC 4180, the first record is the header naming the columns
+     */
+    static final class Csv extends RecordReader {
+
+        private final char delimiter;
+        private final List<String> fields = new ArrayList<>();
+        private int[] indexes;
+
+        Csv(CharSource aSource, char aDelimiter, ToIntFunction<String> aResolver) {
+            super(aSource, aResolver);
+            delimiter = aDelimiter;
+        }
+
+        @Override
+        void readRecord(String[] values) throws IOException {
+            int startLine = line;
+            readFields();
+            if (fields.size() != indexes.length) {
+                throw new IllegalArgumentException("Line " + startLine + ": " + fields.size() + " fields found, the header has " + indexes.length);
+            }
+            for (int i = 0; i < indexes.length; i++) {
+                values[indexes[i]] = fields.get(i);
+            }
+        }
+
+        @Override
+        void readHeader() throws IOException {
+            int headerLine = line;
+            readFields();
+            indexes = new int[fields.size()];
+            BitSet seen = new BitSet();
+            for (int i = 0; i < indexes.length; i++) {
+                String name = fields.get(i);
+                if (name == null) {
+                    throw new IllegalArgumentException("Line " + headerLine + ": the column " + (i + 1) + " of the header has no name");
+                }
+                int index = resolve(name.trim(), headerLine);
+                if (seen.get(index)) {
+                    throw new IllegalArgumentException("Line " + headerLine + ": the column " + name + " is repeated in the header");
+                }
+                seen.set(index);
+                indexes[i] = index;
+            }
+        }
+
+        private void readFields() throws IOException {
+            fields.clear();
+            while (true) {
+                fields.add(readField());
+                int c = source.peek();
+                if (c == delimiter) {
+                    source.read();
+                } else {
+                    if (c >= 0) {
+                        readLineEnd();
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the value of a field, null for an empty field that is not quoted
+         */
+        private String readField() throws IOException {
+            text.setLength(0);
+            if (source.peek() != '"') {
+                for (int c = source.peek(); c >= 0 && c != delimiter && c != '\r' && c != '\n'; c = source.peek()) {
+                    text.append((char) source.read());
+                }
+                return text.length() == 0 ? null : text.toString();
+            }
+            int startLine = line;
+            source.read();
+            while (true) {
+                int c = source.read();
+                if (c < 0) {
+                    throw new IllegalArgumentException("Line " + startLine + ": the quoted field is not closed");
+                }
+                if (c == '"') {
+                    if (source.peek() != '"') {
+                        break;
+                    }
+                    source.read();
+                } else if (c == '\n') {
+                    line++;
+                }
+                text.append((char) c);
+            }
+            int c = source.peek();
+            if (c >= 0 && c != delimiter && c != '\r' && c != '\n') {
+                throw error("unexpected character '" + (char) c + "' after a quoted field");
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Newline-delimited JSON records, one flat object per line
+     */
+    static final class Ndjson extends RecordReader {
+
+        Ndjson(CharSource aSource, ToIntFunction<String> aResolver) {
+            super(aSource, aResolver);
+        }
+
+        @Override
+        void readRecord(String[] values) throws IOException {
+            skipSpaces();
+            expect('{');
+            skipSpaces();
+            if (source.peek() == '}') {
+                source.read();
+            } else {
+                while (true) {
+                    skipSpaces();
+                    expect('"');
+                    String name = readString();
+                    skipSpaces();
+                    expect(':');
+                    skipSpaces();
+                    int index = resolve(name, line);
+                    values[index] = readValue();
+                    skipSpaces();
+                    int c = source.read();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw unexpected(c, "',' or '}'");
+                    }
+                }
+            }
+            skipSpaces();
+            int c = source.peek();
+            if (c == '\r' || c == '\n') {
+                readLineEnd();
+            } else if (c >= 0) {
+                throw unexpected(c, "the end of the line");
+            }
+        }
+
+        /**
+         * @return the text of a string, a number or a boolean, null for a JSON null
+         */
+        private String readValue() throws IOException {
+            int c = source.peek();
+            if (c == '"') {
+                source.read();
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("nested objects and arrays are not supported");
+            }
+            text.setLength(0);
+            for (c = source.peek(); c >= 0 && c != ',' && c != '}' && !isSpace(c) && c != '\r' && c != '\n'; c = source.peek()) {
+                text.append((char) source.read());
+            }
+            String literal = text.toString();
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || isNumber(literal)) {
+                return literal;
+            }
+            throw error("invalid value '" + literal + "'");
+        }
+
+        private static boolean isNumber(String literal) {
+            int start = literal.startsWith("-") ? 1 : 0;
+            if (literal.length() == start || !Character.isDigit(literal.charAt(start))) {
+                return false;
+            }
+            for (int i = start; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if (!Character.isDigit(c) && c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Read a string whose opening quote has been read
+         */
+        private String readString() throws IOException {
+            text.setLength(0);
+            while (true) {
+                int c = source.read();
+                if (c == '"') {
+                    return text.toString();
+                }
+                if (c < 0 || c == '\r' || c == '\n') {
+                    throw error("the string is not closed");
+                }
+                if (c == '\\') {
+                    c = readEscape();
+                }
+                text.append((char) c);
+            }
+        }
+
+        private int readEscape() throws IOException {
+            int c = source.read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    return c;
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(source.read(), 16);
+                        if (digit < 0) {
+                            throw error("invalid unicode escape");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    return code;
+                default:
+                    throw error("invalid escape sequence");
+            }
+        }
+
+        private void expect(char expected) throws IOException {
+            int c = source.read();
+            if (c != expected) {
+                throw unexpected(c, "'" + expected + "'");
+            }
+        }
+
+        private IllegalArgumentException unexpected(int c, String expected) {
+            if (c < 0 || c == '\r' || c == '\n') {
+                return error(expected + " expected before the end of the line");
+            }
+            return error(expected + " expected, got '" + (char) c + "'");
+        }
+
+        private void skipSpaces() throws IOException {
+            while (isSpace(source.peek())) {
+                source.read();
+            }
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\t';
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.TypeCodec;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writer of the rows of a ResultSet into a file exported by a {@link BulkExporter}, the counterpart of {@link RecordReader}.
+ *
+ * The columns of the ResultSet are the columns of the entity in their order, each value is read and converted to its
+ * text form by the codec of its column, without creating the entity. The records are ended by <code>\n</code>.
+ */
+abstract class RecordWriter {
+
+    final CharSink sink;
+    final List<ColumnMetadata> columns;
+    private final TypeCodec<?>[] codecs;
+
+    RecordWriter(CharSink aSink, List<ColumnMetadata> aColumns) {
+        sink = aSink;
+        columns = aColumns;
+        codecs = aColumns.stream().map(ColumnMetadata::getCodec).toArray(TypeCodec<?>[]::new);
+    }
+
+    /**
+     * Write the header of the file before its first record, the default does nothing
+     */
+    void writeHeader() throws IOException {
+    }
+
+    /**
+     * Write the current row of a ResultSet
+     */
+    abstract void writeRecord(ResultSet resultSet) throws SQLException, IOException;
+
+    /**
+     * @return the text form of the value of a column of the current row, null if the column is SQL NULL
+     */
+    final String text(ResultSet resultSet, int column) throws SQLException {
+        return text(codecs[column], resultSet, column + 1);
+    }
+
+    private static <T> String text(TypeCodec<T> codec, ResultSet resultSet, int index) throws SQLException {
+        T value = codec.read(resultSet, index);
+        return value == null ? null : codec.format(value);
+    }
+
+    /**
+     * CSV records as in RFC 4180 with a header naming the columns, a field is quoted if it holds the delimiter, a quote
+     * or a line break, or if it is empty so it's not read back as a null
+     */
+    static final class Csv extends RecordWriter {
+
+        private final char delimiter;
+
+        Csv(CharSink aSink, List<ColumnMetadata> aColumns, char aDelimiter) {
+            super(aSink, aColumns);
+            delimiter = aDelimiter;
+        }
+
+        @Override
+        void writeHeader() throws IOException {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) sink.append(delimiter);
+                writeField(columns.get(i).getName());
+            }
+            sink.append('\n');
+        }
+
+        @Override
+        void writeRecord(ResultSet resultSet) throws SQLException, IOException {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) sink.append(delimiter);
+                String text = text(resultSet, i);
+                if (text != null) {
+                    writeField(text);
+                }
+            }
+            sink.append('\n');
+        }
+
+        private void writeField(String text) throws IOException {
+            if (!needsQuotes(text)) {
+                sink.append(text);
+                return;
+            }
+            sink.append('"');
+            int start = 0;
+            for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', i + 1)) {
+                sink.append(text, start, i + 1);
+                start = i;
+            }
+            sink.append(text, start, text.length());
+            sink.append('"');
+        }
+
+        private boolean needsQuotes(String text) {
+            if (text.isEmpty()) {
+                return true;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == delimiter || c == '"' || c == '\r' || c == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Newline-delimited JSON records, one object per row whose keys are the column names. The numbers and the booleans
+     * are written as JSON literals, the other values as strings, the SQL NULLs as null.
+     */
+    static final class Ndjson extends RecordWriter {
+
+        private final boolean[] literals;
+
+        Ndjson(CharSink aSink, List<ColumnMetadata> aColumns) {
+            super(aSink, aColumns);
+            literals = new boolean[aColumns.size()];
+            for (int i = 0; i < literals.length; i++) {
+                Class<?> type = aColumns.get(i).getType();
+                literals[i] = type.isPrimitive() || Number.class.isAssignableFrom(type) || type == Boolean.class;
+            }
+        }
+
+        @Override
+        void writeRecord(ResultSet resultSet) throws SQLException, IOException {
+            sink.append('{');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) sink.append(',');
+                writeString(columns.get(i).getName());
+                sink.append(':');
+                String text = text(resultSet, i);
+                if (text == null) {
+                    sink.append("null");
+                } else if (literals[i] && isLiteral(text)) {
+                    sink.append(text);
+                } else {
+                    writeString(text);
+                }
+            }
+            sink.append('}');
+            sink.append('\n');
+        }
+
+        /**
+         * @return false for the values without JSON form, like NaN or Infinity
+         */
+        private static boolean isLiteral(String text) {
+            char first = text.charAt(text.length() > 1 && text.charAt(0) == '-' ? 1 : 0);
+            return Character.isDigit(first) || text.equals("true") || text.equals("false");
+        }
+
+        /**
+         * Write a JSON string, the runs of characters without escape are appended at once
+         */
+        private void writeString(String text) throws IOException {
+            sink.append('"');
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+                sink.append(text, start, i);
+                start = i + 1;
+                switch (c) {
+                    case '"':
+                        sink.append("\\\"");
+                        break;
+                    case '\\':
+                        sink.append("\\\\");
+                        break;
+                    case '\n':
+                        sink.append("\\n");
+                        break;
+                    case '\r':
+                        sink.append("\\r");
+                        break;
+                    case '\t':
+                        sink.append("\\t");
+                        break;
+                    default:
+                        sink.append("\\u00");
+                        sink.append(Character.forDigit(c >> 4, 16));
+                        sink.append(Character.forDigit(c & 0xF, 16));
+                }
+            }
+            sink.append(text, start, text.length());
+            sink.append('"');
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.PropertyAccessor;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Codec of a <code>@ManyToOne</code> field, the column holds the id of the referenced entity.
+ *
+ * A value read is a reference : a new instance of the referenced class with only its id set, replaced by the entity
+ * itself when the {@link BasicSession} fetches the associations. The entity bound is written as its id.
+ *
+ * @param <T> The referenced entity class
+ */
+final class ReferenceCodec<T> implements TypeCodec<T> {
+
+    private final Class<T> referencedClass;
+    private final Supplier<T> instantiator;
+    private final PropertyAccessor idAccessor;
+    private final TypeCodec<Object> idCodec;
+
+    @SuppressWarnings("unchecked")
+    ReferenceCodec(Class<T> aReferencedClass, Supplier<T> aInstantiator, PropertyAccessor aIdAccessor, TypeCodec<?> aIdCodec) {
+        referencedClass = aReferencedClass;
+        instantiator = aInstantiator;
+        idAccessor = aIdAccessor;
+        idCodec = (TypeCodec<Object>) aIdCodec;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return referencedClass;
+    }
+
+    @Override
+    public int getSqlType() {
+        return idCodec.getSqlType();
+    }
+
+    @Override
+    public T read(ResultSet rs, int index) throws SQLException {
+        Object id = idCodec.read(rs, index);
+        return id == null ? null : reference(id);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the referenced entity has no id, it should be saved first
+     */
+    @Override
+    public void write(PreparedStatement statement, int index, T value) throws SQLException {
+        Object id = idOf(value);
+        if (id == null) {
+            throw new IllegalArgumentException("The referenced " + referencedClass.getName() + " " + value + " has no id, it should be saved first");
+        }
+        idCodec.write(statement, index, id);
+    }
+
+    @Override
+    public T parse(String text) {
+        return reference(idCodec.parse(text));
+    }
+
+    @Override
+    public String format(T value) {
+        return idCodec.format(idOf(value));
+    }
+
+    /**
+     * @return the id of a referenced entity
+     */
+    Object idOf(T value) {
+        return idAccessor.get(value);
+    }
+
+    /**
+     * @return a new instance of the referenced class with only its id set
+     */
+    T reference(Object id) {
+        T reference = instantiator.get();
+        idAccessor.set(reference, id);
+        return reference;
+    }
+}
@@ -0,0 +1,44 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.NamedPreparedStatement;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * EntityMapper working on the {@link EntityMetadata} of the entity, used when no mapper has been generated.
+ *
+ * @param <T> The entity class mapped
+ */
+class ReflectiveEntityMapper<T> implements EntityMapper<T> {
+
+    private final EntityMetadata<T> metadata;
+    private final SqlTemplates sqlTemplates;
+
+    ReflectiveEntityMapper(EntityMetadata<T> aMetadata) {
+        metadata = aMetadata;
+        sqlTemplates = SqlGenerator.generateTemplates(aMetadata);
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return metadata.getEntityClass();
+    }
+
+    @Override
+    public RowMapper<T> rowMapper(ResultSetMetaData metaData) throws SQLException {
+        return MappingHelper.rowMapper(metaData, metadata);
+    }
+
+    @Override
+    public void bind(T entity, NamedPreparedStatement statement) {
+        for (ColumnMetadata column : metadata.getColumns()) {
+            statement.setProperty(column.getFieldName(), entity, column.getAccessor(), column.getCodec());
+        }
+    }
+
+    @Override
+    public SqlTemplates getSqlTemplates() {
+        return sqlTemplates;
+    }
+}
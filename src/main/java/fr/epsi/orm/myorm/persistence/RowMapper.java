@@ -0,0 +1,19 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Map the current row of a ResultSet, the columns are read by index with a plan resolved once per ResultSet.
+ *
+ * @param <T> The type created from a row
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * @param rs the ResultSet positioned on the row to map
+     * @return the value created from the row
+     */
+    T map(ResultSet rs) throws SQLException;
+}
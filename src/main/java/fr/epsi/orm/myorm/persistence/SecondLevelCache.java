@@ -0,0 +1,184 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.lang.reflect.Array;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of entities shared by the sessions of an EntityManager.
+ *
+ * The entries hold the column values of an entity, a new instance is created for each hit so the callers
+ * never share a mutable instance. The mutable values, arrays and dates, are copied when stored and on each hit
+ * as well. Reads don't lock : the entries are kept in a ConcurrentHashMap and only
+ * their access time is updated.
+ * The cache is bounded by a number of entries, when it is full the least recently used entry of a random
+ * sample is evicted. The entries can also expire after a time to live.
+ *
+ * Each write of an entity class increments the generation of the class, a value read from the database is
+ * only stored if no write happened since the read started so a concurrent write can't be overwritten by a stale value.
+ */
+final class SecondLevelCache {
+
+    private static final int SAMPLE_SIZE = 8;
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final ConcurrentHashMap<EntityKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param aMaxEntries the maximum number of entries
+     * @param aTimeToLiveNanos the time an entry stays valid after being stored, 0 for no expiration
+     */
+    SecondLevelCache(int aMaxEntries, long aTimeToLiveNanos) {
+        maxEntries = aMaxEntries;
+        timeToLiveNanos = aTimeToLiveNanos;
+    }
+
+    private static final class Entry {
+        final Object[] values;
+        final long storedAt;
+        volatile long lastAccess;
+
+        Entry(Object[] aValues, long aStoredAt) {
+            values = aValues;
+            storedAt = aStoredAt;
+            lastAccess = aStoredAt;
+        }
+    }
+
+    /**
+     * Get an entity from the cache
+     * @return a new instance of the entity, null if the entity is not in the cache
+     */
+    <T> T get(EntityMetadata<T> metadata, Object id) {
+        EntityKey key = new EntityKey(metadata.getEntityClass(), id);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (timeToLiveNanos > 0 && now - entry.storedAt > timeToLiveNanos) {
+                if (entries.remove(key, entry)) {
+                    evictions.increment();
+                }
+            } else {
+                entry.lastAccess = now;
+                hits.increment();
+                return hydrate(metadata, entry.values);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @return the generation to give to {@link #put} when the entity has been read
+     */
+    long generation(Class<?> entityClass) {
+        return generationOf(entityClass).get();
+    }
+
+    /**
+     * Store an entity read from the database, nothing is stored if an entity of its class has been written since the generation
+     * @param generation the generation of the class before the entity has been read
+     */
+    <T> void put(EntityMetadata<T> metadata, T entity, long generation) {
+        AtomicLong current = generationOf(metadata.getEntityClass());
+        if (current.get() != generation) {
+            return;
+        }
+        EntityKey key = new EntityKey(metadata.getEntityClass(), metadata.getIdColumn().getAccessor().get(entity));
+        Entry entry = new Entry(dehydrate(metadata, entity), System.nanoTime());
+        entries.put(key, entry);
+        if (current.get() != generation) {
+            entries.remove(key, entry);
+            return;
+        }
+        while (entries.size() > maxEntries) {
+            evictOne();
+        }
+    }
+
+    /**
+     * Remove an entity written in the database
+     */
+    <T> void invalidate(EntityMetadata<T> metadata, T entity) {
+        generationOf(metadata.getEntityClass()).incrementAndGet();
+        entries.remove(new EntityKey(metadata.getEntityClass(), metadata.getIdColumn().getAccessor().get(entity)));
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private AtomicLong generationOf(Class<?> entityClass) {
+        return generations.computeIfAbsent(entityClass, type -> new AtomicLong());
+    }
+
+    private void evictOne() {
+        Iterator<Map.Entry<EntityKey, Entry>> iterator = entries.entrySet().iterator();
+        int skip = ThreadLocalRandom.current().nextInt(SAMPLE_SIZE * 4);
+        for (int i = 0; i < skip && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        if (!iterator.hasNext()) {
+            iterator = entries.entrySet().iterator();
+        }
+        Map.Entry<EntityKey, Entry> oldest = null;
+        for (int i = 0; i < SAMPLE_SIZE && iterator.hasNext(); i++) {
+            Map.Entry<EntityKey, Entry> candidate = iterator.next();
+            if (oldest == null || candidate.getValue().lastAccess - oldest.getValue().lastAccess < 0) {
+                oldest = candidate;
+            }
+        }
+        if (oldest != null && entries.remove(oldest.getKey(), oldest.getValue())) {
+            evictions.increment();
+        }
+    }
+
+    private static <T> Object[] dehydrate(EntityMetadata<T> metadata, T entity) {
+        Object[] values = new Object[metadata.getColumns().size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = copyOf(metadata.getColumns().get(i).getAccessor().get(entity));
+        }
+        return values;
+    }
+
+    private static <T> T hydrate(EntityMetadata<T> metadata, Object[] values) {
+        T instance = metadata.newInstance();
+        for (int i = 0; i < values.length; i++) {
+            metadata.getColumns().get(i).getAccessor().set(instance, copyOf(values[i]));
+        }
+        return instance;
+    }
+
+    /**
+     * @return a copy of the value if it is mutable, an array or a date, the value itself otherwise
+     */
+    private static Object copyOf(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+}
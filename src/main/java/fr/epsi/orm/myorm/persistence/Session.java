@@ -0,0 +1,55 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of work holding one connection of the pool.
+ *
+ * All the operations of a Session run on the same connection and reuse the statements already prepared,
+ * the connection goes back to the pool when the Session is closed :
+ * <pre>
+ * try (Session session = entityManager.openSession()) {
+ *     Optional&lt;User&gt; user = session.find(User.class, 1L);
+ *     ...
+ * }
+ * </pre>
+ * The entities loaded or saved by a Session are kept in its identity map : a find by id returns the instance
+ * already known by the Session without querying the database, and findAll reuses the known instances.
+ * The Session keeps a snapshot of the columns of these entities when they are loaded or written, {@link #flush()}
+ * compares the entities with their snapshot and updates only the changed columns.
+ * A Session is not thread safe.
+ */
+public interface Session extends EntityManager, AutoCloseable {
+
+    /**
+     * Join this Session, the connection is released once every opening of the Session has been closed
+     * @return this Session
+     * @throws IllegalStateException if the Session is closed
+     */
+    @Override
+    Session openSession();
+
+    /**
+     * Write the changes of the entities known by this Session, each changed entity is updated with only its changed
+     * columns and the unchanged entities send no SQL. The Session is not flushed when it is closed.
+     * @return the number of entities updated
+     */
+    int flush() throws SQLException;
+
+    /**
+     * @return the hit and miss counters of the identity map of this Session
+     */
+    CacheStats getIdentityMapStats();
+
+    /**
+     * @return true if the Session has been closed
+     */
+    boolean isClosed();
+
+    /**
+     * Close the statements prepared by the Session and give back its connection to the pool
+     * @throws SQLException if the connection could not be released
+     */
+    @Override
+    void close() throws SQLException;
+}
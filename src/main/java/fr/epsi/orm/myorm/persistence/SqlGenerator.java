@@ -2,18 +2,24 @@ package fr.epsi.orm.myorm.persistence;
 
 import fr.epsi.orm.myorm.annotation.Column;
 import fr.epsi.orm.myorm.annotation.Entity;
-import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.annotation.ManyToOne;
 import fr.epsi.orm.myorm.lib.ReflectionUtil;
 
 import java.lang.reflect.Field;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Created by fteychene on 14/05/17.
  */
 public class SqlGenerator {
 
+    /**
+     * @return the name given by <code>@Column</code>, else the name of the field followed by <code>_id</code> for a
+     * <code>@ManyToOne</code> field and the name of the field for the others
+     */
     public static String getColumnNameForField(Field field) {
         return ReflectionUtil.getAnnotationForField(field, Column.class)
                 .map((column) -> {
@@ -21,7 +27,7 @@ public class SqlGenerator {
                         return null;
                     }
                     return column.name();
-                }).orElse(field.getName());
+                }).orElse(field.isAnnotationPresent(ManyToOne.class) ? field.getName() + "_id" : field.getName());
     }
 
 
@@ -35,12 +41,116 @@ public class SqlGenerator {
                 }).orElse(clazz.getSimpleName());
     }
 
-    public static String generateDeleteSql(Class<?> entityClass) {
-        return ReflectionUtil.getFieldDeclaringAnnotation(entityClass, Id.class)
-                .map((f) ->
-                        "DELETE FROM "+
-                        getTableForEntity(entityClass)+
-                        " WHERE "+ getColumnNameForField(f) + " = :"+f.getName())
-                .orElse("");
+    /**
+     * Generate all the parameterized statements of an entity
+     * @param metadata the metadata of the entity class
+     * @return the SQL templates of the entity
+     */
+    public static SqlTemplates generateTemplates(EntityMetadata<?> metadata) {
+        return new SqlTemplates(
+                generateSelectByIdSql(metadata),
+                generateSelectSql(metadata),
+                generateInsertSql(metadata),
+                generateUpdateSql(metadata),
+                generateDeleteSql(metadata));
+    }
+
+    public static String generateSelectSql(EntityMetadata<?> metadata) {
+        return "SELECT " +
+                metadata.getColumns().stream().map(ColumnMetadata::getName).collect(Collectors.joining(", ")) +
+                " FROM " + metadata.getTableName();
+    }
+
+    public static String generateSelectByIdSql(EntityMetadata<?> metadata) {
+        return generateSelectSql(metadata) + generateWhereId(metadata);
+    }
+
+    /**
+     * Generate the select of the entities matching a list of ids, the ids are the parameters <code>:id0</code> to <code>:idN</code>
+     * named after the id field
+     * @param metadata the metadata of the entity class
+     * @param count the number of ids in the IN list
+     * @return the select query
+     */
+    public static String generateSelectByIdsSql(EntityMetadata<?> metadata, int count) {
+        ColumnMetadata id = metadata.getIdColumn();
+        return generateSelectSql(metadata) + " WHERE " + id.getName() + " IN (" +
+                IntStream.range(0, count).mapToObj(index -> ":" + id.getFieldName() + index).collect(Collectors.joining(", ")) + ")";
+    }
+
+    /**
+     * Generate the select of the entities referencing a list of entities through a <code>@ManyToOne</code> column,
+     * ordered by id. The ids referenced are the parameters <code>:field0</code> to <code>:fieldN</code> named after
+     * the field of the column.
+     * @param metadata the metadata of the entity class
+     * @param reference the <code>@ManyToOne</code> column
+     * @param count the number of ids in the IN list
+     * @return the select query
+     */
+    public static String generateSelectByReferenceSql(EntityMetadata<?> metadata, ColumnMetadata reference, int count) {
+        return generateSelectSql(metadata) + " WHERE " + reference.getName() + " IN (" +
+                IntStream.range(0, count).mapToObj(index -> ":" + reference.getFieldName() + index).collect(Collectors.joining(", ")) + ")" +
+                " ORDER BY " + metadata.getIdColumn().getName();
+    }
+
+    /**
+     * Generate the select of a page of entities ordered by id, the page starts after the id given as the parameter named
+     * after the id field. The position in the table is found with the index of the id so the query doesn't slow down
+     * with the depth of the page, unlike an OFFSET.
+     * @param metadata the metadata of the entity class
+     * @param first true to select the first page, without parameter
+     * @return the select query
+     */
+    public static String generateSelectPageSql(EntityMetadata<?> metadata, boolean first) {
+        ColumnMetadata id = metadata.getIdColumn();
+        return generateSelectSql(metadata) +
+                (first ? "" : " WHERE " + id.getName() + " > :" + id.getFieldName()) +
+                " ORDER BY " + id.getName();
+    }
+
+    public static String generateInsertSql(EntityMetadata<?> metadata) {
+        List<ColumnMetadata> columns = metadata.getColumns().stream()
+                .filter(column -> !(column.isId() && metadata.isIdGenerated()))
+                .collect(Collectors.toList());
+        return "INSERT INTO " + metadata.getTableName() +
+                " (" + columns.stream().map(ColumnMetadata::getName).collect(Collectors.joining(", ")) + ")" +
+                " VALUES (" + columns.stream().map(column -> ":" + column.getFieldName()).collect(Collectors.joining(", ")) + ")";
+    }
+
+    public static String generateUpdateSql(EntityMetadata<?> metadata) {
+        return "UPDATE " + metadata.getTableName() + " SET " +
+                metadata.getColumns().stream()
+                        .filter(column -> !column.isId())
+                        .map(column -> column.getName() + " = :" + column.getFieldName())
+                        .collect(Collectors.joining(", ")) +
+                generateWhereId(metadata);
+    }
+
+    /**
+     * Generate the update of some columns of an entity by id, the parameters are named after the fields
+     * @param metadata the metadata of the entity class
+     * @param columns the indexes of the updated columns in {@link EntityMetadata#getColumns()}, the id column is skipped
+     * @return the update query
+     */
+    public static String generateUpdateSql(EntityMetadata<?> metadata, BitSet columns) {
+        List<ColumnMetadata> all = metadata.getColumns();
+        return "UPDATE " + metadata.getTableName() + " SET " +
+                columns.stream()
+                        .mapToObj(all::get)
+                        .filter(column -> !column.isId())
+                        .map(column -> column.getName() + " = :" + column.getFieldName())
+                        .collect(Collectors.joining(", ")) +
+                generateWhereId(metadata);
+    }
+
+    public static String generateDeleteSql(EntityMetadata<?> metadata) {
+        return "DELETE FROM " +
+                metadata.getTableName() +
+                generateWhereId(metadata);
+    }
+
+    private static String generateWhereId(EntityMetadata<?> metadata) {
+        ColumnMetadata id = metadata.getIdColumn();
+        return " WHERE " + id.getName() + " = :" + id.getFieldName();
     }
 }
@@ -0,0 +1,91 @@
+package fr.epsi.orm.myorm.persistence;
+
+/**
+ * The parameterized SQL statements of an entity, built once per entity class.
+ *
+ * Parameters are named with the name of the fields of the entity, like <code>:firstName</code>,
+ * so each call only has to bind its values through a {@link fr.epsi.orm.myorm.lib.NamedPreparedStatement}.
+ */
+public final class SqlTemplates {
+
+    private final String selectById;
+    private final String selectAll;
+    private final String insert;
+    private final String update;
+    private final String delete;
+
+    public SqlTemplates(String aSelectById, String aSelectAll, String aInsert, String aUpdate, String aDelete) {
+        selectById = aSelectById;
+        selectAll = aSelectAll;
+        insert = aInsert;
+        update = aUpdate;
+        delete = aDelete;
+    }
+
+    /**
+     * @return the SQL selecting a row by id
+     */
+    public String getSelectById() {
+        return selectById;
+    }
+
+    /**
+     * @return the SQL selecting all the rows of the table
+     */
+    public String getSelectAll() {
+        return selectAll;
+    }
+
+    /**
+     * @return the SQL inserting an entity, the id column is omitted if it is generated
+     */
+    public String getInsert() {
+        return insert;
+    }
+
+    /**
+     * @return the SQL updating all the columns of an entity by id
+     */
+    public String getUpdate() {
+        return update;
+    }
+
+    /**
+     * @return the SQL deleting an entity by id
+     */
+    public String getDelete() {
+        return delete;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SqlTemplates that = (SqlTemplates) o;
+
+        return selectById.equals(that.selectById) && selectAll.equals(that.selectAll) && insert.equals(that.insert)
+                && update.equals(that.update) && delete.equals(that.delete);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = selectById.hashCode();
+        result = 31 * result + selectAll.hashCode();
+        result = 31 * result + insert.hashCode();
+        result = 31 * result + update.hashCode();
+        result = 31 * result + delete.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplates{" +
+                "selectById='" + selectById + '\'' +
+                ", selectAll='" + selectAll + '\'' +
+                ", insert='" + insert + '\'' +
+                ", update='" + update + '\'' +
+                ", delete='" + delete + '\'' +
+                '}';
+    }
+}
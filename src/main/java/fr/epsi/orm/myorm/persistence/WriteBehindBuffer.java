@@ -0,0 +1,475 @@
+package fr.epsi.orm.myorm.persistence;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded buffer of the writes of a {@link BasicEntityManager} in write-behind mode.
+ *
+ * The writes are queued by entity, a new write of an entity already queued is coalesced with the queued one so only
+ * the last state of the entity is written. The entities are identified by their id, or by their instance for the saves
+ * of entities with a generated id which have no id until they are flushed. A background thread drains the queue in one transaction, with JDBC batches,
+ * every flush interval or as soon as a batch of writes is queued. When the queue is full the writers wait for a flush.
+ *
+ * When the transaction of a flush fails, its writes are applied again one by one so the writes that can't be written,
+ * a constraint violation for example, don't hold back the others. The writes that failed are put back in the queue and
+ * retried by the next flush. When a handler of the failed writes is set, a write that fails its maximum number of
+ * attempts is given up and handed to the handler, otherwise the writes are never dropped. A flush that can't get or
+ * keep a connection puts its writes back without counting an attempt, the database being unavailable is not a failure
+ * of the writes. The failures of the background flushes are reported to the listeners of the EntityManager.
+ */
+final class WriteBehindBuffer {
+
+    enum Kind {
+        INSERT(Operation.SAVE), UPDATE(Operation.UPDATE), DELETE(Operation.DELETE),
+        /**
+         * Delete then insert, an entity deleted then saved again
+         */
+        REPLACE(Operation.SAVE);
+
+        final Operation operation;
+
+        Kind(Operation aOperation) {
+            operation = aOperation;
+        }
+    }
+
+    /**
+     * A write waiting in the buffer, the entity is written in the state it has when the buffer is flushed
+     */
+    static final class PendingWrite {
+        final Kind kind;
+        final Object entity;
+        /**
+         * The number of flushes that failed to write it
+         */
+        final int attempts;
+
+        PendingWrite(Kind aKind, Object aEntity) {
+            this(aKind, aEntity, 0);
+        }
+
+        PendingWrite(Kind aKind, Object aEntity, int aAttempts) {
+            kind = aKind;
+            entity = aEntity;
+            attempts = aAttempts;
+        }
+    }
+
+    private final BasicEntityManager entityManager;
+    private final int capacity;
+    private final int flushSize;
+    private final int maxAttempts;
+    private final Consumer<FailedWrite> failedWrites;
+    private final EntityManagerListener[] listeners;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private Map<EntityKey, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean closed = false;
+
+    /**
+     * @param aMaxAttempts the number of flushes trying a write before it is given up, and the number of failed flushes
+     *                     tried by {@link #close()}
+     * @param aFailedWrites the handler of the writes given up, null to keep the writes until they are written
+     * @param aListeners the listeners told about the failures of the background flushes
+     */
+    WriteBehindBuffer(BasicEntityManager aEntityManager, int aCapacity, int aFlushSize, long flushIntervalNanos,
+                      int aMaxAttempts, Consumer<FailedWrite> aFailedWrites, EntityManagerListener[] aListeners) {
+        entityManager = aEntityManager;
+        capacity = aCapacity;
+        flushSize = Math.min(aFlushSize, aCapacity);
+        maxAttempts = aMaxAttempts;
+        failedWrites = aFailedWrites;
+        listeners = aListeners;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "myorm-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInBackground, flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The identity of an entity instance, for the entities queued before their id is generated
+     */
+    private static final class Instance {
+        final Object entity;
+
+        Instance(Object aEntity) {
+            entity = aEntity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Instance && ((Instance) o).entity == entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entity);
+        }
+
+        @Override
+        public String toString() {
+            return "new@" + Integer.toHexString(hashCode());
+        }
+    }
+
+    /**
+     * @return the key of an entity by its instance, to queue the save of an entity with a generated id
+     */
+    static EntityKey instanceKey(Object entity) {
+        return new EntityKey(entity.getClass(), new Instance(entity));
+    }
+
+    /**
+     * Queue a write, waiting for a flush if the buffer is full. A write of an entity whose save is queued by its
+     * instance is coalesced with the save, whatever its id.
+     * @param key the key of the entity, null if it has no id yet
+     * @throws IllegalStateException if the buffer is closed
+     * @throws IllegalArgumentException if the entity has no key and no save of the entity is queued
+     */
+    void add(EntityKey key, Kind kind, Object entity) throws InterruptedException {
+        EntityKey instanceKey = instanceKey(entity);
+        int size;
+        lock.lockInterruptibly();
+        try {
+            checkOpen();
+            EntityKey queued = pending.containsKey(instanceKey) ? instanceKey : key;
+            while (pending.size() >= capacity && (queued == null || !pending.containsKey(queued))) {
+                requestFlush();
+                notFull.await();
+                checkOpen();
+                queued = pending.containsKey(instanceKey) ? instanceKey : key;
+            }
+            if (queued == null) {
+                throw new IllegalArgumentException("The entity " + entity + " can't be written without id");
+            }
+            PendingWrite previous = pending.remove(queued);
+            PendingWrite write = previous == null ? new PendingWrite(kind, entity) : coalesce(previous, new PendingWrite(kind, entity));
+            if (write != null) {
+                pending.put(queued, write);
+            }
+            size = pending.size();
+        } finally {
+            lock.unlock();
+        }
+        if (size >= flushSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * @return the write equivalent to a queued write followed by a new write of the same entity, null if none is needed
+     */
+    static PendingWrite coalesce(PendingWrite previous, PendingWrite next) {
+        switch (next.kind) {
+            case UPDATE:
+                if (previous.kind == Kind.DELETE) {
+                    return previous;
+                }
+                return previous.kind == Kind.UPDATE ? next : new PendingWrite(previous.kind, next.entity);
+            case DELETE:
+                return previous.kind == Kind.INSERT ? null : next;
+            case INSERT:
+                return previous.kind == Kind.DELETE || previous.kind == Kind.REPLACE ? new PendingWrite(Kind.REPLACE, next.entity) : next;
+            default:
+                return next;
+        }
+    }
+
+    /**
+     * @return the number of writes waiting in the buffer
+     */
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write all the queued writes in one transaction. If the transaction fails the writes are applied one by one, those
+     * that fail again are put back in the buffer or given up if they reached their maximum number of attempts. The writes
+     * not written because the connection failed are put back without counting an attempt.
+     * @return the number of writes flushed
+     * @throws SQLException if a write failed, the exception of the transaction of all the writes
+     */
+    int flush() throws SQLException {
+        flushLock.lock();
+        try {
+            Map<EntityKey, PendingWrite> drained;
+            lock.lock();
+            try {
+                drained = pending;
+                pending = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (drained.isEmpty()) {
+                return 0;
+            }
+            Exception failure = null;
+            Map<EntityKey, Exception> failures = Collections.emptyMap();
+            Map<EntityKey, PendingWrite> notWritten = Collections.emptyMap();
+            boolean opened = false;
+            try (BasicSession session = entityManager.openBasicSession()) {
+                opened = true;
+                try {
+                    session.applyWrites(new ArrayList<>(drained.values()));
+                } catch (SQLException | RuntimeException e) {
+                    failure = e;
+                    if (isConnectionFailure(e)) {
+                        notWritten = drained;
+                    } else if (drained.size() == 1) {
+                        failures = Collections.singletonMap(drained.keySet().iterator().next(), e);
+                    } else {
+                        notWritten = new LinkedHashMap<>();
+                        failures = applyOneByOne(session, drained, notWritten);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                    if (!opened) {
+                        notWritten = drained;
+                    }
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            if (failure == null) {
+                return drained.size();
+            }
+            retryOrGiveUp(drained, failures, notWritten, failure);
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            }
+            throw (RuntimeException) failure;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Apply the writes of a failed transaction one by one, each in its own transaction. When the connection fails the
+     * writes left are not tried.
+     * @param notWritten filled with the writes not tried because the connection failed
+     * @return the exception of each write that failed
+     */
+    private static Map<EntityKey, Exception> applyOneByOne(BasicSession session, Map<EntityKey, PendingWrite> writes,
+                                                           Map<EntityKey, PendingWrite> notWritten) {
+        Map<EntityKey, Exception> failures = new LinkedHashMap<>();
+        for (Map.Entry<EntityKey, PendingWrite> write : writes.entrySet()) {
+            if (!notWritten.isEmpty()) {
+                notWritten.put(write.getKey(), write.getValue());
+                continue;
+            }
+            try {
+                session.applyWrites(Collections.singletonList(write.getValue()));
+            } catch (SQLException | RuntimeException e) {
+                if (isConnectionFailure(e)) {
+                    notWritten.put(write.getKey(), write.getValue());
+                } else {
+                    failures.put(write.getKey(), e);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return true if the exception is a failure to get or use the connection, not a failure of the write
+     */
+    static boolean isConnectionFailure(Exception e) {
+        if (!(e instanceof SQLException)) {
+            return false;
+        }
+        String state = ((SQLException) e).getSQLState();
+        return e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLRecoverableException || (state != null && state.startsWith("08"));
+    }
+
+    /**
+     * Put back the writes that failed with one more attempt, or hand them to the handler of the failed writes if they
+     * reached their maximum number of attempts, and the writes not written as they are. An exception of the handler
+     * is added to the failure of the flush.
+     */
+    private void retryOrGiveUp(Map<EntityKey, PendingWrite> drained, Map<EntityKey, Exception> failures,
+                               Map<EntityKey, PendingWrite> notWritten, Exception failure) {
+        Map<EntityKey, PendingWrite> retried = new LinkedHashMap<>();
+        List<FailedWrite> givenUp = new ArrayList<>();
+        drained.forEach((key, write) -> {
+            Exception cause = failures.get(key);
+            if (cause == null) {
+                if (notWritten.containsKey(key)) {
+                    retried.put(key, write);
+                }
+                return;
+            }
+            int attempts = write.attempts + 1;
+            if (failedWrites != null && attempts >= maxAttempts) {
+                givenUp.add(new FailedWrite(write.entity, write.kind.operation, attempts, cause));
+            } else {
+                retried.put(key, new PendingWrite(write.kind, write.entity, attempts));
+            }
+        });
+        restore(retried);
+        for (FailedWrite write : givenUp) {
+            try {
+                failedWrites.accept(write);
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Put back the writes of a failed flush before the writes queued since
+     */
+    private void restore(Map<EntityKey, PendingWrite> drained) {
+        lock.lock();
+        try {
+            Map<EntityKey, PendingWrite> restored = new LinkedHashMap<>(drained);
+            pending.forEach((key, write) -> {
+                PendingWrite previous = restored.remove(key);
+                PendingWrite merged = previous == null ? write : coalesce(previous, write);
+                if (merged != null) {
+                    restored.put(key, merged);
+                }
+            });
+            pending = restored;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background flushes and flush the writes left, the writers waiting for space are rejected. The flushes
+     * are tried until the buffer is empty or the maximum number of attempts of flushes failed.
+     * @throws SQLException if writes are left in the buffer, or the failure of the last flush that failed
+     */
+    void close() throws SQLException {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SQLException failure = null;
+        int failed = 0;
+        while (size() > 0 && failed < maxAttempts) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                failure = e;
+                failed++;
+            }
+        }
+        int left = size();
+        if (left > 0) {
+            throw new SQLException(left + " writes of the write-behind buffer could not be written, they are left in the buffer", failure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushInBackground);
+            } catch (RejectedExecutionException e) {
+                // Closing, the writes left are flushed by close
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushInBackground() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            for (EntityManagerListener listener : listeners) {
+                try {
+                    listener.onWriteBehindFailure(e);
+                } catch (RuntimeException listenerFailure) {
+                    OperationRecorder.listenerFailed(listener, listenerFailure);
+                }
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The write-behind buffer is closed");
+        }
+    }
+
+    /**
+     * Group the writes by entity class, the classes referenced by <code>@ManyToOne</code> come before the classes
+     * referencing them so the parents can be inserted first and deleted last. The classes not depending on each
+     * other, or referencing each other, are in the order of the list.
+     * @param metadata the metadata of an entity class
+     * @return the writes of a list grouped by entity class, the parent classes first
+     */
+    static Map<Class<?>, List<PendingWrite>> byClass(List<PendingWrite> writes, Function<Class<?>, EntityMetadata<?>> metadata) {
+        Map<Class<?>, List<PendingWrite>> queued = new LinkedHashMap<>();
+        for (PendingWrite write : writes) {
+            queued.computeIfAbsent(write.entity.getClass(), entityClass -> new ArrayList<>()).add(write);
+        }
+        Map<Class<?>, Set<Class<?>>> parents = new HashMap<>();
+        for (Class<?> entityClass : queued.keySet()) {
+            Set<Class<?>> referenced = new HashSet<>();
+            for (ColumnMetadata column : metadata.apply(entityClass).getColumns()) {
+                if (column.isReference() && column.getType() != entityClass && queued.containsKey(column.getType())) {
+                    referenced.add(column.getType());
+                }
+            }
+            parents.put(entityClass, referenced);
+        }
+        Map<Class<?>, List<PendingWrite>> result = new LinkedHashMap<>();
+        while (result.size() < queued.size()) {
+            Class<?> next = queued.keySet().stream()
+                    .filter(entityClass -> !result.containsKey(entityClass) && result.keySet().containsAll(parents.get(entityClass)))
+                    .findFirst()
+                    // A cycle of references, the first class left is taken
+                    .orElseGet(() -> queued.keySet().stream().filter(entityClass -> !result.containsKey(entityClass)).findFirst().get());
+            result.put(next, queued.get(next));
+        }
+        return result;
+    }
+}
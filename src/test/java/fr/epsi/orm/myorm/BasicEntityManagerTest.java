@@ -5,6 +5,7 @@ import fr.epsi.orm.myorm.annotation.Entity;
 import fr.epsi.orm.myorm.annotation.Id;
 import fr.epsi.orm.myorm.persistence.BasicEntityManager;
 import fr.epsi.orm.myorm.persistence.EntityManager;
+import fr.epsi.orm.myorm.persistence.Page;
 import fr.epsi.orm.myorm.lib.sample.User;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -68,6 +69,11 @@ public class BasicEntityManagerTest {
         assertEquals("User is not coherent with db", expected, actual.get());
     }
 
+    @Test
+    public void testFindMissing() throws SQLException {
+        assertFalse(em.find(User.class, 404L).isPresent());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testFindReject() {
         try {
@@ -106,6 +112,21 @@ public class BasicEntityManagerTest {
         }
     }
 
+    @Test
+    public void testStream() throws SQLException {
+        try (Stream<User> users = em.stream(User.class)) {
+            assertEquals(em.findAll(User.class), users.collect(Collectors.toList()));
+        }
+        try (Stream<User> users = em.stream(User.class)) {
+            assertEquals(Optional.of("Linus"), users.map(User::getFirstName).findFirst());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamReject() throws SQLException {
+        em.stream(InvalidUserNoEntity.class);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testFindAllReject() {
         try {
@@ -144,6 +165,36 @@ public class BasicEntityManagerTest {
         assertEquals(user, actual);
     }
 
+    @Test
+    public void testSaveAll() throws SQLException {
+        HikariDataSource hikariDatasource = new HikariDataSource();
+        hikariDatasource.setDataSource(embeddedDatasource);
+        EntityManager batchEm = BasicEntityManager.builder(hikariDatasource, Stream.of(User.class).collect(Collectors.toSet()))
+                .batchSize(2)
+                .build();
+        List<User> users = Stream.of("Ada", "Grace", "Barbara", "Margaret", "Frances").map(name -> {
+            User user = new User();
+            user.setFirstName(name);
+            user.setEmail(name.toLowerCase() + "@test.com");
+            return user;
+        }).collect(Collectors.toList());
+
+        List<User> saved = batchEm.saveAll(users);
+
+        assertEquals(users, saved);
+        assertEquals(5, saved.stream().map(User::getId).distinct().count());
+        for (User user : saved) {
+            assertNotNull(user.getId());
+            assertEquals(user, batchEm.find(User.class, user.getId()).orElseThrow(() -> new AssertionError("User not inserted")));
+            assertTrue(batchEm.delete(user));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSaveAllReject() throws SQLException {
+        em.saveAll(Arrays.asList(new User(), new InvalidUserNoEntity()));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInsertReject() {
         try {
@@ -211,4 +262,140 @@ public class BasicEntityManagerTest {
         @Id
         private Integer id2;
     }
+
+    @Test
+    public void testSecondLevelCache() throws SQLException {
+        HikariDataSource hikariDatasource = new HikariDataSource();
+        hikariDatasource.setDataSource(embeddedDatasource);
+        BasicEntityManager cachingEm = BasicEntityManager.builder(hikariDatasource, Stream.of(User.class).collect(Collectors.toSet()))
+                .cacheable(User.class)
+                .build();
+
+        User first = cachingEm.find(User.class, 1L).get();
+        User second = cachingEm.find(User.class, 1L).get();
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        assertEquals(1, cachingEm.getSecondLevelCacheStats().getHitCount());
+
+        User user = new User();
+        user.setFirstName("Cached");
+        user.setBirthDate(LocalDate.of(1990, 4, 23));
+        cachingEm.save(user);
+        assertTrue(cachingEm.find(User.class, user.getId()).isPresent());
+        assertTrue(cachingEm.delete(user));
+        assertFalse("A deleted entity is removed from the cache", cachingEm.find(User.class, user.getId()).isPresent());
+        hikariDatasource.close();
+    }
+
+    @Test
+    public void testFindAllCache() throws SQLException {
+        HikariDataSource hikariDatasource = new HikariDataSource();
+        hikariDatasource.setDataSource(embeddedDatasource);
+        BasicEntityManager cachingEm = BasicEntityManager.builder(hikariDatasource, Stream.of(User.class).collect(Collectors.toSet()))
+                .cacheFindAll(User.class)
+                .build();
+
+        List<User> users = cachingEm.findAll(User.class);
+        assertSame(users, cachingEm.findAll(User.class));
+        assertEquals(1, cachingEm.getQueryCacheStats().getMissCount());
+
+        User user = new User();
+        user.setFirstName("Cached");
+        user.setBirthDate(LocalDate.of(1990, 4, 23));
+        cachingEm.save(user);
+        assertEquals(users.size() + 1, cachingEm.findAll(User.class).size());
+        cachingEm.delete(user);
+        assertEquals(users, cachingEm.findAll(User.class));
+        hikariDatasource.close();
+    }
+
+    @Test
+    public void testFindAllById() throws SQLException {
+        HikariDataSource hikariDatasource = new HikariDataSource();
+        hikariDatasource.setDataSource(embeddedDatasource);
+        EntityManager chunkedEm = BasicEntityManager.builder(hikariDatasource, Stream.of(User.class).collect(Collectors.toSet()))
+                .inListSize(2)
+                .build();
+
+        List<User> users = chunkedEm.findAllById(User.class, Arrays.asList(2L, 0L, 404L, 1L, 2L));
+        assertEquals(Arrays.asList(2L, 0L, 1L, 2L), users.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(em.find(User.class, 1L).get(), users.get(2));
+        assertTrue(chunkedEm.findAllById(User.class, Arrays.asList()).isEmpty());
+        hikariDatasource.close();
+    }
+
+    @Test
+    public void testIntegerIdsOfLongIdField() throws SQLException {
+        List<User> users = em.findAllById(User.class, Arrays.asList(1, 2, 1));
+        assertEquals(Arrays.asList(1L, 2L, 1L), users.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(Optional.of(1L), em.find(User.class, 1).map(User::getId));
+        assertEquals(Arrays.asList(2L), em.findPage(User.class, 1, 1).getContent().stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFindPage() throws SQLException {
+        Page<User> first = em.findPage(User.class, null, 2);
+        assertEquals(Arrays.asList(0L, 1L), first.getContent().stream().map(User::getId).collect(Collectors.toList()));
+        assertTrue(first.hasNext());
+        assertEquals(Optional.of(1L), first.getNextAfterId());
+
+        Page<User> last = em.findPage(User.class, first.getNextAfterId().get(), 2);
+        assertEquals(Arrays.asList(2L), last.getContent().stream().map(User::getId).collect(Collectors.toList()));
+        assertFalse(last.hasNext());
+        assertFalse(last.getNextAfterId().isPresent());
+
+        Page<User> exact = em.findPage(User.class, null, 3);
+        assertEquals(3, exact.getContent().size());
+        assertFalse(exact.hasNext());
+        assertTrue(em.findPage(User.class, 2L, 10).getContent().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindPageRejectsNonPositiveLimit() throws SQLException {
+        em.findPage(User.class, null, 0);
+    }
+
+    public static class UserName {
+        private String firstName;
+        private String lastName;
+    }
+
+    public interface UserContact {
+        Long getId();
+
+        String getEmail();
+    }
+
+    @Test
+    public void testFindProjection() throws SQLException {
+        List<UserName> names = em.findAll(User.class, UserName.class);
+        assertEquals(Arrays.asList("Linus", "Brian", "Robert"), names.stream().map(name -> name.firstName).collect(Collectors.toList()));
+        assertEquals(em.find(User.class, 1L).get().getLastName(), names.get(1).lastName);
+
+        UserContact contact = em.find(User.class, 2L, UserContact.class).get();
+        assertEquals(Long.valueOf(2), contact.getId());
+        assertEquals(em.find(User.class, 2L).get().getEmail(), contact.getEmail());
+        assertEquals(contact, em.find(User.class, 2L, UserContact.class).get());
+        assertFalse(em.find(User.class, 404L, UserContact.class).isPresent());
+    }
+
+    @Test
+    public void testUpdateDetachedEntity() throws SQLException {
+        User user = em.find(User.class, 2L).get();
+        user.setEmail("robert@cleancoder.com");
+        try {
+            assertTrue(em.update(user));
+            assertEquals("robert@cleancoder.com", em.find(User.class, 2L).get().getEmail());
+        } finally {
+            user.setEmail("uncle@bob.com");
+            em.update(user);
+        }
+        user.setId(404L);
+        assertFalse(em.update(user));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateRejectsEntityWithoutId() throws SQLException {
+        em.update(new User());
+    }
 }
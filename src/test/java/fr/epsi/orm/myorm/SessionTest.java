@@ -0,0 +1,275 @@
+package fr.epsi.orm.myorm;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import fr.epsi.orm.myorm.persistence.BasicEntityManager;
+import fr.epsi.orm.myorm.persistence.EntityManager;
+import fr.epsi.orm.myorm.persistence.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SessionTest {
+
+    private static final int POOL_SIZE = 2;
+    private static final int CALLERS = 16;
+
+    static DataSource embeddedDatasource;
+    HikariDataSource hikariDatasource;
+    EntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        embeddedDatasource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("session-test")
+                .addScripts("init-db.sql")
+                .build();
+    }
+
+    @Before
+    public void beforeTest() {
+        hikariDatasource = new HikariDataSource();
+        hikariDatasource.setDataSource(embeddedDatasource);
+        hikariDatasource.setMaximumPoolSize(POOL_SIZE);
+        hikariDatasource.setConnectionTimeout(1000);
+        em = BasicEntityManager.create(hikariDatasource, Stream.of(User.class).collect(Collectors.toSet()));
+    }
+
+    @After
+    public void afterTest() {
+        hikariDatasource.close();
+    }
+
+    @Test
+    public void testOperationsShareTheConnection() throws SQLException {
+        try (Session session = em.openSession()) {
+            assertEquals(1, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+            assertTrue(session.find(User.class, 1L).isPresent());
+            assertEquals(3, session.findAll(User.class).size());
+            assertTrue(session.find(User.class, 2L).isPresent());
+            assertEquals(1, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+        }
+        assertEquals(0, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void testJoinedSession() throws SQLException {
+        try (Session session = em.openSession()) {
+            try (Session joined = session.openSession()) {
+                assertSame(session, joined);
+                assertTrue(joined.find(User.class, 1L).isPresent());
+            }
+            assertFalse(session.isClosed());
+            assertTrue(session.find(User.class, 1L).isPresent());
+        }
+        assertEquals(0, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void testStreamHoldsConnectionUntilClosed() throws SQLException {
+        Stream<User> users = em.stream(User.class);
+        assertEquals(1, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+        assertEquals(2, users.limit(2).count());
+        users.close();
+        assertEquals(0, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void testStreamInSession() throws SQLException {
+        try (Session session = em.openSession()) {
+            try (Stream<User> users = session.stream(User.class)) {
+                assertEquals(3, users.count());
+            }
+            assertFalse(session.isClosed());
+            assertTrue(session.find(User.class, 0L).isPresent());
+        }
+    }
+
+    @Test
+    public void testIdentityMap() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = session.find(User.class, 1L).get();
+            assertSame(user, session.find(User.class, 1L).get());
+            assertTrue(session.findAll(User.class).stream().anyMatch(found -> found == user));
+            assertEquals(1, session.getIdentityMapStats().getHitCount());
+            assertEquals(1, session.getIdentityMapStats().getMissCount());
+        }
+    }
+
+    @Test
+    public void testFindAllByIdUsesIdentityMap() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = session.find(User.class, 1L).get();
+            List<User> users = session.findAllById(User.class, Arrays.asList(2L, 1L));
+            assertEquals(2, users.size());
+            assertSame(user, users.get(1));
+            assertEquals(1, session.getIdentityMapStats().getHitCount());
+        }
+    }
+
+    @Test
+    public void testIntegerIdsUseIdentityMap() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = session.find(User.class, 1L).get();
+            assertSame(user, session.find(User.class, 1).get());
+            List<User> users = session.findAllById(User.class, Arrays.asList(2, 1));
+            assertEquals(2, users.size());
+            assertSame(user, users.get(1));
+            assertEquals(2, session.getIdentityMapStats().getHitCount());
+        }
+    }
+
+    @Test
+    public void testIdentityMapFollowsWrites() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = new User();
+            user.setFirstName("Grace");
+            user.setLastName("Hopper");
+            user.setBirthDate(LocalDate.of(1906, 12, 9));
+            session.save(user);
+            assertSame(user, session.find(User.class, user.getId()).get());
+            assertTrue(session.delete(user));
+            assertFalse(session.find(User.class, user.getId()).isPresent());
+            assertEquals(1, session.getIdentityMapStats().getHitCount());
+            assertEquals(1, session.getIdentityMapStats().getMissCount());
+        }
+    }
+
+    @Test
+    public void testUpdateWritesOnlyChangedColumns() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = session.find(User.class, 1L).get();
+            execute("UPDATE users SET email = 'other@oracle.com' WHERE id = 1");
+            user.setFirstName("Bri");
+
+            assertTrue(session.update(user));
+            assertEquals(Arrays.asList("Bri", "other@oracle.com"), selectNameAndEmail(1));
+        } finally {
+            execute("UPDATE users SET first_name = 'Brian', email = 'brian.goetz@oracle.com' WHERE id = 1");
+        }
+    }
+
+    @Test
+    public void testUpdateOfRowDeletedConcurrently() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = new User();
+            user.setFirstName("Grace");
+            session.save(user);
+            User known = session.find(User.class, user.getId()).get();
+            execute("DELETE FROM users WHERE id = " + known.getId());
+
+            known.setLastName("Hopper");
+            assertFalse("No row is updated", session.update(known));
+            assertEquals("The row deleted is not counted by the flush", 0, session.flush());
+        }
+    }
+
+    @Test
+    public void testFlushWritesOnlyChangedEntities() throws SQLException {
+        try (Session session = em.openSession()) {
+            List<User> users = session.findAll(User.class);
+            execute("UPDATE users SET email = 'other@bob.com' WHERE id = 2");
+            assertEquals(0, session.flush());
+            assertEquals("other@bob.com", selectNameAndEmail(2).get(1));
+
+            users.get(0).setLastName("Torvalds");
+            users.get(2).setFirstName("Bob");
+            assertEquals(2, session.flush());
+            assertEquals(0, session.flush());
+            assertEquals(Arrays.asList("Bob", "other@bob.com"), selectNameAndEmail(2));
+            assertEquals("Torvalds", em.find(User.class, 0L).get().getLastName());
+        } finally {
+            execute("UPDATE users SET last_name = 'Torvald' WHERE id = 0");
+            execute("UPDATE users SET first_name = 'Robert', email = 'uncle@bob.com' WHERE id = 2");
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = embeddedDatasource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private List<String> selectNameAndEmail(long id) throws SQLException {
+        try (Connection connection = embeddedDatasource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT first_name, email FROM users WHERE id = " + id)) {
+            assertTrue(rs.next());
+            return Arrays.asList(rs.getString(1), rs.getString(2));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedSessionReject() throws SQLException {
+        Session session = em.openSession();
+        session.close();
+        session.find(User.class, 1L);
+    }
+
+    @Test
+    public void testNoConnectionLeaked() throws SQLException {
+        for (int i = 0; i < POOL_SIZE * 10; i++) {
+            em.find(User.class, 1L);
+            em.findAll(User.class);
+        }
+        assertEquals(0, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    /**
+     * Many callers sharing a small pool : with connections given back after each operation no caller
+     * times out waiting for the pool and the throughput of the last round stays close to the first one.
+     */
+    @Test
+    public void testPoolContention() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Double> throughputs = new ArrayList<>();
+            for (int round = 0; round < 5; round++) {
+                throughputs.add(runRound(executor, 200));
+            }
+            double first = throughputs.get(1);
+            double last = throughputs.get(throughputs.size() - 1);
+            assertTrue("Throughput collapsed from " + first + " to " + last + " op/s", last > first / 2);
+            assertEquals(0, hikariDatasource.getHikariPoolMXBean().getActiveConnections());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private double runRound(ExecutorService executor, int operationsPerCaller) throws Exception {
+        List<Callable<Void>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(() -> {
+                for (int op = 0; op < operationsPerCaller; op++) {
+                    assertTrue(em.find(User.class, (long) (op % 3)).isPresent());
+                }
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        for (Future<Void> result : executor.invokeAll(callers)) {
+            result.get();
+        }
+        return CALLERS * operationsPerCaller / ((System.nanoTime() - start) / 1e9);
+    }
+}
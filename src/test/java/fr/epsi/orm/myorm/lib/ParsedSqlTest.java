@@ -0,0 +1,103 @@
+package fr.epsi.orm.myorm.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParsedSqlTest {
+
+    @Test
+    public void testRewriteToPositionalParameters() {
+        ParsedSql parsed = ParsedSql.parse("UPDATE users SET first_name = :firstName WHERE id = :id");
+        assertEquals("UPDATE users SET first_name = ? WHERE id = ?", parsed.getSql());
+        assertArrayEquals(new int[]{1}, parsed.indexesOf("firstName"));
+        assertArrayEquals(new int[]{2}, parsed.indexesOf("id"));
+        assertArrayEquals(new int[0], parsed.indexesOf("email"));
+    }
+
+    @Test
+    public void testNameUsedSeveralTimes() {
+        ParsedSql parsed = ParsedSql.parse("SELECT * FROM t WHERE a = :value OR b = :other OR c = :value");
+        assertArrayEquals(new int[]{1, 3}, parsed.indexesOf("value"));
+        assertArrayEquals(new int[]{2}, parsed.indexesOf("other"));
+        assertEquals(3, parsed.getParameters().size());
+    }
+
+    @Test
+    public void testQuotesAndCommentsAreCopied() {
+        String sql = "SELECT ':no', \"col:no\", 'it''s :no' /* :no ' */ FROM t -- :no\nWHERE a = :yes";
+        ParsedSql parsed = ParsedSql.parse(sql);
+        assertEquals(sql.replace(":yes", "?"), parsed.getSql());
+        assertEquals(Arrays.asList(new NamedPreparedStatement.Parameter("yes", 1)), parsed.getParameters());
+    }
+
+    @Test
+    public void testCastsAndPositionalParameters() {
+        ParsedSql parsed = ParsedSql.parse("SELECT a::INTEGER FROM t WHERE b = ? AND c = :c AND d = ?");
+        assertEquals("SELECT a::INTEGER FROM t WHERE b = ? AND c = ? AND d = ?", parsed.getSql());
+        assertArrayEquals(new int[]{2}, parsed.indexesOf("c"));
+    }
+
+    @Test
+    public void testUnterminatedTokens() {
+        assertEquals("SELECT 'open :a", ParsedSql.parse("SELECT 'open :a").getSql());
+        assertEquals("SELECT /* open :a", ParsedSql.parse("SELECT /* open :a").getSql());
+        assertEquals("SELECT ? -- :a", ParsedSql.parse("SELECT :b -- :a").getSql());
+        assertEquals("SELECT :", ParsedSql.parse("SELECT :").getSql());
+    }
+
+    @Test
+    public void testParsedStatementsAreCached() {
+        String sql = "SELECT * FROM t WHERE id = :cached";
+        assertSame(ParsedSql.of(sql), ParsedSql.of(sql));
+    }
+
+    /**
+     * Assemble random statements from tokens whose rewriting is known and check the parser against them
+     */
+    @Test
+    public void testFuzz() {
+        Random random = new Random(20170516);
+        String[] words = {"SELECT", "a", "b1", "FROM", "t", "WHERE", "=", ",", "(", ")", "+", "*", " ", "\n", "\t", "a.b"};
+        String[] ignored = {"':x'", "'it''s :x'", "''", "\"col:x\"", "\"a\"\"b\"", "-- :x ' \"\n", "/* :x ' \" -- */", "::INTEGER"};
+        String[] names = {"id", "firstName", "x1", "_y", "1"};
+        for (int round = 0; round < 2_000; round++) {
+            StringBuilder named = new StringBuilder();
+            StringBuilder expected = new StringBuilder();
+            List<NamedPreparedStatement.Parameter> parameters = new ArrayList<>();
+            int position = 0;
+            for (int token = random.nextInt(40); token > 0; token--) {
+                int kind = random.nextInt(4);
+                if (kind == 0) {
+                    String name = names[random.nextInt(names.length)];
+                    named.append(':').append(name).append(' ');
+                    expected.append("? ");
+                    parameters.add(new NamedPreparedStatement.Parameter(name, ++position));
+                } else if (kind == 1) {
+                    String text = ignored[random.nextInt(ignored.length)];
+                    named.append(text);
+                    expected.append(text);
+                } else if (kind == 2 && random.nextInt(4) == 0) {
+                    named.append("? ");
+                    expected.append("? ");
+                    position++;
+                } else {
+                    String text = words[random.nextInt(words.length)] + " ";
+                    named.append(text);
+                    expected.append(text);
+                }
+            }
+            ParsedSql parsed = ParsedSql.parse(named.toString());
+            assertEquals(named.toString(), expected.toString(), parsed.getSql());
+            assertEquals(named.toString(), parameters, parsed.getParameters());
+            for (NamedPreparedStatement.Parameter parameter : parameters) {
+                assertTrue(Arrays.stream(parsed.indexesOf(parameter.name)).anyMatch(index -> index == parameter.index));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package fr.epsi.orm.myorm.lib;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PropertyAccessorTest {
+
+    @Test
+    public void testGetterAndSetter() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(User.class.getDeclaredField("firstName"));
+        User user = new User();
+        accessor.set(user, "Linus");
+        assertEquals("Linus", user.getFirstName());
+        assertEquals("Linus", accessor.get(user));
+    }
+
+    @Test
+    public void testCached() throws NoSuchFieldException {
+        assertSame(PropertyAccessor.of(User.class.getDeclaredField("email")), PropertyAccessor.of(User.class.getDeclaredField("email")));
+    }
+
+    @Test
+    public void testDirectFieldAccess() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(NoAccessors.class.getDeclaredField("value"));
+        NoAccessors instance = new NoAccessors();
+        accessor.set(instance, 42);
+        assertEquals(42, instance.value);
+        assertEquals(42, accessor.get(instance));
+    }
+
+    @Test
+    public void testPrimitiveAccess() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(NoAccessors.class.getDeclaredField("value"));
+        NoAccessors instance = new NoAccessors();
+        accessor.setInt(instance, 7);
+        assertEquals(7, instance.value);
+        assertEquals(7, accessor.getInt(instance));
+        assertEquals(7L, accessor.getLong(instance));
+    }
+
+    @Test
+    public void testTypedAccessOfBoxedProperty() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(User.class.getDeclaredField("id"));
+        User user = new User();
+        accessor.setLong(user, 12L);
+        assertEquals(Long.valueOf(12), user.getId());
+        assertEquals(12L, accessor.getLong(user));
+        assertEquals(12, accessor.getInt(user));
+        assertEquals(12.0, accessor.getDouble(user), 0);
+    }
+
+    @Test
+    public void testRejectTypedReadOfNull() throws NoSuchFieldException {
+        PropertyAccessor accessor = PropertyAccessor.of(User.class.getDeclaredField("id"));
+        try {
+            accessor.getLong(new User());
+            fail("A null value can't be read as a long");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(User.class.getName() + ".id"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectTypedWriteOfWrongType() throws NoSuchFieldException {
+        PropertyAccessor.of(User.class.getDeclaredField("id")).setInt(new User(), 12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectWrongType() throws NoSuchFieldException {
+        PropertyAccessor.of(User.class.getDeclaredField("firstName")).set(new User(), 12L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectNullPrimitive() throws NoSuchFieldException {
+        PropertyAccessor.of(NoAccessors.class.getDeclaredField("value")).set(new NoAccessors(), null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetterFailureIsPropagated() throws NoSuchFieldException {
+        PropertyAccessor.of(FailingSetter.class.getDeclaredField("name")).set(new FailingSetter(), "test");
+    }
+
+    private static class NoAccessors {
+        private int value;
+    }
+
+    public static class FailingSetter {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) throws Exception {
+            throw new Exception("Setter failure");
+        }
+    }
+}
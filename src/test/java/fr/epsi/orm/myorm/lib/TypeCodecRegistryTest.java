@@ -0,0 +1,154 @@
+package fr.epsi.orm.myorm.lib;
+
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TypeCodecRegistryTest {
+
+    enum Status {
+        ACTIVE,
+        LOCKED {
+            @Override
+            public String toString() {
+                return "locked";
+            }
+        }
+    }
+
+    @Test
+    public void testBuiltInCodecs() {
+        TypeCodecRegistry codecs = TypeCodecRegistry.defaults();
+        assertSame(TypeCodecs.STRING, codecs.get(String.class));
+        assertSame(TypeCodecs.PRIMITIVE_INT, codecs.get(int.class));
+        assertSame(TypeCodecs.INTEGER, codecs.get(Integer.class));
+        assertSame(TypeCodecs.BYTES, codecs.get(byte[].class));
+        assertFalse(codecs.find(StringBuilder.class).isPresent());
+    }
+
+    @Test
+    public void testEnumCodecIsSharedByConstantsWithBody() {
+        TypeCodecRegistry codecs = TypeCodecRegistry.defaults();
+        assertSame(codecs.get(Status.class), codecs.find(Status.LOCKED.getClass()).get());
+        assertSame(TypeCodecs.enumCodec(Status.class), codecs.get(Status.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectUnsupportedType() {
+        TypeCodecRegistry.defaults().get(StringBuilder.class);
+    }
+
+    @Test
+    public void testCustomCodecTakesPrecedence() {
+        TypeCodec<Integer> custom = new TypeCodec<Integer>() {
+            @Override
+            public Class<Integer> getType() {
+                return Integer.class;
+            }
+
+            @Override
+            public int getSqlType() {
+                return Types.VARCHAR;
+            }
+
+            @Override
+            public Integer read(ResultSet rs, int index) throws SQLException {
+                return Integer.valueOf(rs.getString(index));
+            }
+
+            @Override
+            public void write(PreparedStatement statement, int index, Integer value) throws SQLException {
+                statement.setString(index, value.toString());
+            }
+        };
+        TypeCodecRegistry codecs = TypeCodecRegistry.defaults().with(Integer.class, custom);
+        assertSame(custom, codecs.get(Integer.class));
+        assertTrue(codecs.isCustom(Integer.class));
+        assertFalse(codecs.isCustom(Long.class));
+        assertSame(TypeCodecs.INTEGER, TypeCodecRegistry.defaults().get(Integer.class));
+    }
+
+    @Test
+    public void testRoundTrip() throws SQLException {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).setName("codecs-test").build();
+        try (Connection connection = database.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE codecs (amount DECIMAL(10, 2), created TIMESTAMP, updated TIMESTAMP, " +
+                        "reference VARCHAR(36), content VARBINARY(16), status VARCHAR(10), counter INTEGER, missing BIGINT)");
+            }
+            List<TypeCodec<?>> order = Arrays.asList(TypeCodecs.BIG_DECIMAL, TypeCodecs.INSTANT, TypeCodecs.LOCAL_DATE_TIME,
+                    TypeCodecs.UUID_TEXT, TypeCodecs.BYTES, TypeCodecs.enumCodec(Status.class), TypeCodecs.PRIMITIVE_INT, TypeCodecs.LONG);
+            Instant created = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            LocalDateTime updated = LocalDate.of(2017, 5, 14).atTime(12, 30);
+            UUID reference = UUID.randomUUID();
+            List<Object> values = Arrays.asList(new BigDecimal("12.50"), created, updated, reference,
+                    new byte[]{1, 2, 3}, Status.LOCKED, 42, null);
+
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO codecs VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < order.size(); i++) {
+                    write(order.get(i), insert, i + 1, values.get(i));
+                }
+                insert.executeUpdate();
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT * FROM codecs")) {
+                assertTrue(rs.next());
+                assertEquals(new BigDecimal("12.50"), TypeCodecs.BIG_DECIMAL.read(rs, 1));
+                assertEquals(created, TypeCodecs.INSTANT.read(rs, 2));
+                assertEquals(updated, TypeCodecs.LOCAL_DATE_TIME.read(rs, 3));
+                assertEquals(reference, TypeCodecs.UUID_TEXT.read(rs, 4));
+                assertArrayEquals(new byte[]{1, 2, 3}, TypeCodecs.BYTES.read(rs, 5));
+                assertEquals(Status.LOCKED, TypeCodecs.enumCodec(Status.class).read(rs, 6));
+                assertEquals(Integer.valueOf(42), TypeCodecs.PRIMITIVE_INT.read(rs, 7));
+                assertNull(TypeCodecs.LONG.read(rs, 8));
+                assertEquals(Long.valueOf(0), TypeCodecs.PRIMITIVE_LONG.read(rs, 8));
+            }
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void testTextForm() {
+        assertEquals(Integer.valueOf(42), TypeCodecs.PRIMITIVE_INT.parse(" 42 "));
+        assertEquals(" padded ", TypeCodecs.STRING.parse(" padded "));
+        assertEquals(Boolean.TRUE, TypeCodecs.BOOLEAN.parse("TRUE"));
+        assertEquals(LocalDate.of(2017, 5, 14), TypeCodecs.LOCAL_DATE.parse("2017-05-14"));
+        assertEquals(Status.LOCKED, TypeCodecs.enumCodec(Status.class).parse("LOCKED"));
+        assertEquals("LOCKED", TypeCodecs.enumCodec(Status.class).format(Status.LOCKED));
+        assertEquals("1000", TypeCodecs.BIG_DECIMAL.format(new BigDecimal("1E+3")));
+        assertArrayEquals(new byte[]{1, 2, 3}, TypeCodecs.BYTES.parse(TypeCodecs.BYTES.format(new byte[]{1, 2, 3})));
+
+        for (String invalid : Arrays.asList("yes", "")) {
+            try {
+                TypeCodecs.BOOLEAN.parse(invalid);
+                fail("The boolean '" + invalid + "' should be rejected");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Invalid Boolean value '" + invalid + "'", e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(TypeCodec<?> codec, PreparedStatement statement, int index, Object value) throws SQLException {
+        ((TypeCodec<Object>) codec).writeNullable(statement, index, value);
+    }
+}
@@ -0,0 +1,267 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.annotation.Column;
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.GenerationType;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.annotation.ManyToOne;
+import fr.epsi.orm.myorm.annotation.OneToMany;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AssociationTest {
+
+    static HikariDataSource dataSource;
+    static final Set<Class<?>> CLASSES = Stream.of(Author.class, Book.class, Chapter.class).collect(Collectors.toSet());
+
+    private final List<String> statements = new ArrayList<>();
+    private BasicEntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("association-test")
+                .addScripts("relations-db.sql")
+                .build());
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Before
+    public void beforeTest() {
+        em = BasicEntityManager.builder(dataSource, CLASSES)
+                .listener(new EntityManagerListener() {
+                    @Override
+                    public void onStatement(String sql, long executeNanos) {
+                        statements.add(sql);
+                    }
+                })
+                .build();
+    }
+
+    @Test
+    public void testMetadata() {
+        EntityMetadata<Book> book = EntityMetadata.of(Book.class);
+        assertEquals(Arrays.asList("id", "title", "author_id"),
+                book.getColumns().stream().map(ColumnMetadata::getName).collect(Collectors.toList()));
+        assertTrue(book.getColumns().get(2).isReference());
+        assertTrue(book.hasAssociations());
+        assertEquals("book", EntityMetadata.of(Chapter.class).getColumns().get(2).getName());
+
+        EntityMetadata<Author> author = EntityMetadata.of(Author.class);
+        assertEquals(2, author.getColumns().size());
+        assertEquals(1, author.getCollections().size());
+        assertEquals(Book.class, author.getCollections().get(0).getElementClass());
+        assertTrue(MappingHelper.getMapper(author) instanceof ReflectiveEntityMapper);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectCollectionNotMapped() {
+        EntityMetadata.of(Library.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectAssociatedClassNotManaged() {
+        BasicEntityManager.create(dataSource, Collections.singleton(Book.class));
+    }
+
+    @Test
+    public void testFindAllLoadsCollectionsWithOneQuery() throws SQLException {
+        List<Author> authors = em.findAll(Author.class);
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(1), statements.get(1).contains("WHERE author_id IN ("));
+        Map<String, Author> byName = authors.stream().collect(Collectors.toMap(author -> author.name, Function.identity()));
+        Author ursula = byName.get("Ursula Le Guin");
+        assertEquals(Arrays.asList("A Wizard of Earthsea", "The Lathe of Heaven"), titles(ursula.books));
+        for (Book book : ursula.books) {
+            assertSame(ursula, book.author);
+        }
+        assertEquals(Collections.singletonList("Dune"), titles(byName.get("Frank Herbert").books));
+        assertEquals(Collections.emptyList(), byName.get("Iain Banks").books);
+    }
+
+    @Test
+    public void testFindAllLoadsReferencesWithOneQuery() throws SQLException {
+        List<Book> books = em.findAll(Book.class);
+
+        assertEquals(3, books.size());
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(1), statements.get(1).contains("FROM authors WHERE id IN ("));
+        Map<String, Book> byTitle = books.stream().collect(Collectors.toMap(book -> book.title, Function.identity()));
+        Author ursula = byTitle.get("A Wizard of Earthsea").author;
+        assertEquals("Ursula Le Guin", ursula.name);
+        assertSame(ursula, byTitle.get("The Lathe of Heaven").author);
+        assertEquals("Frank Herbert", byTitle.get("Dune").author.name);
+        assertNull("The collections of the entities referenced are not loaded", ursula.books);
+    }
+
+    @Test
+    public void testReferencesAreLoadedTransitively() throws SQLException {
+        List<Chapter> chapters = em.findAll(Chapter.class);
+
+        assertEquals(3, chapters.size());
+        assertEquals("One query per table", 3, statements.size());
+        for (Chapter chapter : chapters) {
+            assertNotNull(chapter.book.title);
+            assertNotNull(chapter.book.author.name);
+        }
+    }
+
+    @Test
+    public void testSessionReusesKnownEntities() throws SQLException {
+        try (Session session = em.openSession()) {
+            Book dune = session.findAll(Book.class).stream().filter(book -> book.title.equals("Dune")).findFirst().get();
+            statements.clear();
+
+            Author frank = session.find(Author.class, dune.author.id).get();
+            assertSame(dune.author, frank);
+            assertEquals("Only the books are queried", 1, statements.size());
+            assertEquals(Collections.singletonList(dune), frank.books);
+
+            session.find(Author.class, frank.id);
+            assertEquals("The collection is loaded once per Session", 1, statements.size());
+            assertEquals("The entities fetched are not changed", 0, session.flush());
+        }
+    }
+
+    @Test
+    public void testFindAllByIdBatchesAssociations() throws SQLException {
+        List<Long> ids = em.findAll(Author.class).stream().map(author -> author.id).collect(Collectors.toList());
+        statements.clear();
+
+        List<Author> authors = em.findAllById(Author.class, ids);
+        assertEquals(3, authors.size());
+        assertEquals(2, statements.size());
+        assertEquals(3, authors.stream().mapToInt(author -> author.books.size()).sum());
+    }
+
+    @Test
+    public void testSaveAndUpdateReference() throws SQLException {
+        Map<String, Author> byName = em.findAll(Author.class).stream().collect(Collectors.toMap(author -> author.name, Function.identity()));
+        Book book = new Book();
+        book.title = "Consider Phlebas";
+        book.author = byName.get("Iain Banks");
+        em.save(book);
+        try {
+            assertEquals("Iain Banks", em.find(Book.class, book.id).get().author.name);
+
+            try (Session session = em.openSession()) {
+                Book found = session.find(Book.class, book.id).get();
+                found.author = session.find(Author.class, byName.get("Frank Herbert").id).get();
+                assertEquals(1, session.flush());
+            }
+            assertEquals("Frank Herbert", em.find(Book.class, book.id).get().author.name);
+        } finally {
+            em.delete(book);
+        }
+    }
+
+    @Test
+    public void testWriteBehindWritesParentsFirst() throws SQLException {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build()) {
+            Author author = new Author();
+            author.name = "Ann Leckie";
+            Book book = new Book();
+            book.title = "Ancillary Justice";
+            book.author = author;
+            writeBehind.save(book);
+            writeBehind.save(author);
+            assertEquals(2, writeBehind.flush());
+            assertEquals("Ann Leckie", em.find(Book.class, book.id).get().author.name);
+
+            writeBehind.delete(author);
+            writeBehind.delete(book);
+            assertEquals(2, writeBehind.flush());
+            assertFalse(em.find(Author.class, author.id).isPresent());
+            assertFalse(em.find(Book.class, book.id).isPresent());
+        }
+    }
+
+    @Test
+    public void testClassesAreOrderedByReference() {
+        BasicEntityManager manager = BasicEntityManager.create(dataSource, CLASSES);
+        List<WriteBehindBuffer.PendingWrite> writes = Arrays.asList(
+                new WriteBehindBuffer.PendingWrite(WriteBehindBuffer.Kind.INSERT, new Chapter()),
+                new WriteBehindBuffer.PendingWrite(WriteBehindBuffer.Kind.INSERT, new Book()),
+                new WriteBehindBuffer.PendingWrite(WriteBehindBuffer.Kind.INSERT, new Author()));
+        assertEquals(Arrays.asList(Author.class, Book.class, Chapter.class),
+                new ArrayList<>(WriteBehindBuffer.byClass(writes, manager::getMetadata).keySet()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectUnsavedReference() throws SQLException {
+        Author author = new Author();
+        author.name = "Ann Leckie";
+        Book book = new Book();
+        book.title = "Ancillary Justice";
+        book.author = author;
+        em.save(book);
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(book -> book.title).collect(Collectors.toList());
+    }
+
+    @Entity(table = "authors")
+    static class Author {
+        @Id(generation = GenerationType.IDENTITY)
+        Long id;
+        String name;
+        @OneToMany(mappedBy = "author")
+        List<Book> books;
+    }
+
+    @Entity(table = "books")
+    static class Book {
+        @Id(generation = GenerationType.IDENTITY)
+        Long id;
+        String title;
+        @ManyToOne
+        Author author;
+    }
+
+    @Entity(table = "chapters")
+    static class Chapter {
+        @Id(generation = GenerationType.IDENTITY)
+        Long id;
+        String title;
+        @ManyToOne
+        @Column(name = "book")
+        Book book;
+    }
+
+    @Entity
+    static class Library {
+        @Id
+        Long id;
+        @OneToMany(mappedBy = "library")
+        List<Book> books;
+    }
+}
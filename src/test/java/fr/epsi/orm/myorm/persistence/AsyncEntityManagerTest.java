@@ -0,0 +1,104 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AsyncEntityManagerTest {
+
+    static HikariDataSource dataSource;
+    static BasicEntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("async-test")
+                .addScripts("init-db.sql")
+                .build());
+        dataSource.setMaximumPoolSize(2);
+        em = BasicEntityManager.create(dataSource, Stream.of(User.class).collect(Collectors.toSet()));
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testOperations() {
+        try (AsyncEntityManager async = AsyncEntityManager.bounded(em, 2, 8)) {
+            assertEquals("Brian", async.find(User.class, 1L).join().get().getFirstName());
+            assertEquals(3, async.findAll(User.class).join().size());
+            assertEquals(0, async.getInFlight());
+        }
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() {
+        try (AsyncEntityManager async = AsyncEntityManager.bounded(em, 2, 8)) {
+            async.findAll(String.class).join();
+            fail("The future should complete exceptionally");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testInFlightIsBoundedWithoutBlockingTheCaller() throws Exception {
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try (AsyncEntityManager async = AsyncEntityManager.withExecutor(em, tasks::add, 3)) {
+            List<CompletableFuture<List<User>>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(async.findAll(User.class));
+            }
+            Future<CompletableFuture<List<User>>> fourth = caller.submit(() -> async.findAll(User.class));
+            CompletableFuture<List<User>> rejected = fourth.get(5, TimeUnit.SECONDS);
+            assertTrue("The caller should not wait for an operation to complete", rejected.isCompletedExceptionally());
+            try {
+                rejected.join();
+                fail("The operation beyond the bound should be rejected");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(3, async.getInFlight());
+            assertEquals(3, tasks.size());
+
+            tasks.poll().run();
+            CompletableFuture<List<User>> accepted = async.findAll(User.class);
+            assertFalse(accepted.isDone());
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+            assertEquals(3, accepted.join().size());
+            for (CompletableFuture<List<User>> result : results) {
+                assertEquals(3, result.join().size());
+            }
+            assertEquals(0, async.getInFlight());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+}
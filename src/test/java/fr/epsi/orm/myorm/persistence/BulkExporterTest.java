@@ -0,0 +1,129 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkExporterTest {
+
+    static HikariDataSource dataSource;
+    static final Set<Class<?>> CLASSES = Stream.of(User.class).collect(Collectors.toSet());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BasicEntityManager em;
+    private Long graceId;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("export-test")
+                .addScripts("init-db.sql")
+                .build());
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Before
+    public void beforeTest() throws SQLException {
+        em = BasicEntityManager.create(dataSource, CLASSES);
+        User user = new User();
+        user.setFirstName("Grace, \"Amazing\"");
+        user.setLastName("");
+        user.setEmail("grace@navy.mil\n\u00e9\u2603");
+        em.save(user);
+        graceId = user.getId();
+    }
+
+    @After
+    public void afterTest() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM users WHERE id > 2");
+        }
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.csv");
+
+        assertEquals(4, em.bulkExporter(User.class).export(file));
+
+        assertEquals("id,first_name,last_name,email,birthDate\n" +
+                "0,Linus,Torvald,linux.torvald@linux.org,1969-12-28\n" +
+                "1,Brian,Goetz,brian.goetz@oracle.com,1970-11-22\n" +
+                "2,Robert,Martin,uncle@bob.com,1962-04-17\n" +
+                graceId + ",\"Grace, \"\"Amazing\"\"\",\"\",\"grace@navy.mil\n\u00e9\u2603\",\n", read(file));
+    }
+
+    @Test
+    public void testExportNdjson() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.ndjson");
+
+        assertEquals(4, em.bulkExporter(User.class).format(BulkFormat.NDJSON).export(file));
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("{\"id\":0,\"first_name\":\"Linus\",\"last_name\":\"Torvald\",\"email\":\"linux.torvald@linux.org\",\"birthDate\":\"1969-12-28\"}", lines.get(0));
+        assertEquals("{\"id\":" + graceId + ",\"first_name\":\"Grace, \\\"Amazing\\\"\",\"last_name\":\"\",\"email\":\"grace@navy.mil\\n\u00e9\u2603\",\"birthDate\":null}", lines.get(3));
+    }
+
+    @Test
+    public void testExportIsReadBackByTheLoader() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.csv");
+        List<OperationEvent> events = new ArrayList<>();
+        BasicEntityManager measured = BasicEntityManager.builder(dataSource, CLASSES)
+                .listener(new EntityManagerListener() {
+                    @Override
+                    public void onOperation(OperationEvent event) {
+                        events.add(event);
+                    }
+                })
+                .build();
+
+        measured.bulkExporter(User.class).delimiter(';').fetchSize(2).bufferSize(16).export(file);
+        String exported = read(file);
+        Files.write(file, exported.replaceAll("(?m)^(id|\\d+);", "").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(4, measured.bulkLoader(User.class).delimiter(';').load(file).getRows());
+        List<User> users = measured.findAll(User.class);
+        assertEquals(8, users.size());
+        assertEquals("Grace, \"Amazing\"", users.get(7).getFirstName());
+        assertEquals("", users.get(7).getLastName());
+        assertEquals("grace@navy.mil\n\u00e9\u2603", users.get(7).getEmail());
+        assertNull(users.get(7).getBirthDate());
+        assertEquals(users.get(0).getBirthDate(), users.get(4).getBirthDate());
+
+        OperationEvent export = events.get(0);
+        assertEquals(Operation.FIND_ALL, export.getOperation());
+        assertEquals(1, export.getStatements());
+        assertEquals(4, export.getRows());
+        assertEquals(1, measured.getBufferPool().size());
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,203 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkLoaderTest {
+
+    static HikariDataSource dataSource;
+    static final Set<Class<?>> CLASSES = Stream.of(User.class).collect(Collectors.toSet());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BasicEntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("bulk-test")
+                .addScripts("init-db.sql")
+                .build());
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Before
+    public void beforeTest() {
+        em = BasicEntityManager.create(dataSource, CLASSES);
+    }
+
+    @After
+    public void afterTest() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM users WHERE id > 2");
+        }
+    }
+
+    @Test
+    public void testLoadCsv() throws Exception {
+        Path file = write("users.csv",
+                "first_name,last_name,EMAIL,birthDate\r\n" +
+                "Ada,Lovelace,ada@analytical.org,1815-12-10\r\n" +
+                "\r\n" +
+                "\"Grace, Brewster\",\"Hopper \"\"Amazing\"\"\",,1906-12-09\r\n" +
+                "\"Barbara\",\"Liskov\n(MIT)\",\"\",\n" +
+                "Margaret,Hamilton,,");
+
+        BulkProgress progress = em.bulkLoader(User.class).load(file);
+
+        assertEquals(4, progress.getRows());
+        assertTrue(progress.isDone());
+        assertEquals(Files.size(file), progress.getFileSize());
+        assertEquals(Files.size(file), progress.getBytesRead());
+
+        List<User> loaded = loadedUsers();
+        assertEquals(4, loaded.size());
+        assertUser(loaded.get(0), "Ada", "Lovelace", "ada@analytical.org", LocalDate.of(1815, 12, 10));
+        assertUser(loaded.get(1), "Grace, Brewster", "Hopper \"Amazing\"", null, LocalDate.of(1906, 12, 9));
+        assertUser(loaded.get(2), "Barbara", "Liskov\n(MIT)", "", null);
+        assertUser(loaded.get(3), "Margaret", "Hamilton", null, null);
+    }
+
+    @Test
+    public void testLoadNdjson() throws Exception {
+        Path file = write("users.ndjson",
+                "{\"firstName\": \"Ada\", \"lastName\": \"Lovelace\", \"birthDate\": \"1815-12-10\"}\n" +
+                "\n" +
+                "{ \"first_name\" : \"Gr\\u00e2ce\\t\\\"G\\\"\", \"email\": null, \"last_name\": \"Hopper\\/Navy\" }\r\n" +
+                "{\"firstName\":\"Barbara\"}");
+
+        assertEquals(3, em.bulkLoader(User.class).format(BulkFormat.NDJSON).load(file).getRows());
+
+        List<User> loaded = loadedUsers();
+        assertEquals(3, loaded.size());
+        assertUser(loaded.get(0), "Ada", "Lovelace", null, LocalDate.of(1815, 12, 10));
+        assertUser(loaded.get(1), "Gr\u00e2ce\t\"G\"", "Hopper/Navy", null, null);
+        assertUser(loaded.get(2), "Barbara", null, null, null);
+    }
+
+    @Test
+    public void testProgressByChunk() throws Exception {
+        StringBuilder content = new StringBuilder("first_name;last_name\n");
+        for (int i = 0; i < 25; i++) {
+            content.append("Zo\u00eb").append(i).append(";\u0141ukasiewicz\n");
+        }
+        Path file = write("users.csv", content.toString());
+        List<BulkProgress> progresses = new ArrayList<>();
+
+        BulkProgress done = em.bulkLoader(User.class)
+                .delimiter(';')
+                .chunkSize(10)
+                .bufferSize(16)
+                .onProgress(progresses::add)
+                .load(file);
+
+        assertEquals(3, progresses.size());
+        assertEquals(10, progresses.get(0).getRows());
+        assertEquals(20, progresses.get(1).getRows());
+        assertFalse(progresses.get(1).isDone());
+        assertSame(done, progresses.get(2));
+        assertEquals(25, done.getRows());
+        assertTrue(progresses.get(0).getBytesRead() < progresses.get(1).getBytesRead());
+        assertTrue(done.getRowsPerSecond() > 0);
+
+        List<User> loaded = loadedUsers();
+        assertEquals(25, loaded.size());
+        assertEquals("Zo\u00eb24", loaded.get(24).getFirstName());
+        assertEquals("\u0141ukasiewicz", loaded.get(24).getLastName());
+    }
+
+    @Test
+    public void testInvalidRowKeepsCommittedChunks() throws Exception {
+        Path file = write("users.csv",
+                "first_name,birthDate\n" +
+                "Ada,1815-12-10\n" +
+                "Grace,1906-13-09\n");
+
+        try {
+            em.bulkLoader(User.class).chunkSize(1).load(file);
+            fail("The invalid date should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3, column birthDate"));
+        }
+        assertEquals(1, loadedUsers().size());
+    }
+
+    @Test
+    public void testInvalidFiles() throws Exception {
+        assertRejected(BulkFormat.CSV, "first_name,age\nAda,36\n", "Line 1: Unknown column age");
+        assertRejected(BulkFormat.CSV, "id,first_name\n3,Ada\n", "Line 1: The column id is generated");
+        assertRejected(BulkFormat.CSV, "first_name,FirstName\nAda,Ada\n", "Line 1: the column FirstName is repeated");
+        assertRejected(BulkFormat.CSV, "first_name,last_name\nAda\n", "Line 2: 1 fields found, the header has 2");
+        assertRejected(BulkFormat.CSV, "first_name\n\"Ada\n", "Line 2: the quoted field is not closed");
+        assertRejected(BulkFormat.CSV, "first_name\n\"Ada\"x\n", "Line 2: unexpected character 'x'");
+        assertRejected(BulkFormat.NDJSON, "{\"firstName\": \"Ada\"}\n{\"firstName\": {\"a\": 1}}", "Line 2: nested objects");
+        assertRejected(BulkFormat.NDJSON, "{\"firstName\": \"Ada\"", "Line 1: ',' or '}' expected before the end of the line");
+        assertRejected(BulkFormat.NDJSON, "{\"firstName\": Ada}", "Line 1: invalid value 'Ada'");
+        assertRejected(BulkFormat.NDJSON, "{\"firstName\": \"Ada\"} {}", "Line 1: the end of the line expected");
+        assertEquals(0, loadedUsers().size());
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        assertEquals(0, em.bulkLoader(User.class).load(write("empty.csv", "")).getRows());
+        assertEquals(0, em.bulkLoader(User.class).load(write("header.csv", "first_name\n")).getRows());
+    }
+
+    private void assertRejected(BulkFormat format, String content, String message) throws IOException, SQLException {
+        Path file = write("invalid." + format.name().toLowerCase(), content);
+        try {
+            em.bulkLoader(User.class).format(format).load(file);
+            fail("The file should be rejected : " + content);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<User> loadedUsers() throws SQLException {
+        return em.findAll(User.class).stream()
+                .filter(user -> user.getId() > 2)
+                .sorted(Comparator.comparing(User::getId))
+                .collect(Collectors.toList());
+    }
+
+    private static void assertUser(User user, String firstName, String lastName, String email, LocalDate birthDate) {
+        assertEquals(firstName, user.getFirstName());
+        assertEquals(lastName, user.getLastName());
+        assertEquals(email, user.getEmail());
+        assertEquals(birthDate, user.getBirthDate());
+    }
+}
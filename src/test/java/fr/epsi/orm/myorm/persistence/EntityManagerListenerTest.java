@@ -0,0 +1,224 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class EntityManagerListenerTest {
+
+    static HikariDataSource dataSource;
+    static final Set<Class<?>> CLASSES = Stream.of(User.class).collect(Collectors.toSet());
+
+    private final List<OperationEvent> events = new ArrayList<>();
+    private final List<String> statements = new ArrayList<>();
+    private BasicEntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("listener-test")
+                .addScripts("init-db.sql")
+                .build());
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Before
+    public void beforeTest() {
+        em = BasicEntityManager.builder(dataSource, CLASSES)
+                .listener(new EntityManagerListener() {
+                    @Override
+                    public void onStatement(String sql, long executeNanos) {
+                        statements.add(sql);
+                    }
+
+                    @Override
+                    public void onOperation(OperationEvent event) {
+                        events.add(event);
+                    }
+                })
+                .build();
+    }
+
+    @Test
+    public void testFindIsMeasured() throws SQLException {
+        em.find(User.class, 1L);
+        em.findAll(User.class);
+
+        assertEquals(2, events.size());
+        OperationEvent find = events.get(0);
+        assertEquals(Operation.FIND, find.getOperation());
+        assertEquals(User.class, find.getEntityClass());
+        assertEquals(1, find.getStatements());
+        assertEquals(1, find.getRows());
+        assertEquals(8, find.getBoundBytes());
+        assertTrue(find.getAcquireNanos() > 0);
+        assertTrue(find.getExecuteNanos() > 0);
+        assertTrue(find.getTotalNanos() >= find.getAcquireNanos() + find.getExecuteNanos() + find.getMappingNanos());
+        assertFalse(find.getFailure().isPresent());
+
+        OperationEvent findAll = events.get(1);
+        assertEquals(Operation.FIND_ALL, findAll.getOperation());
+        assertEquals(3, findAll.getRows());
+        assertEquals(0, findAll.getBoundBytes());
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).contains(":id"));
+    }
+
+    @Test
+    public void testOperationsOfSession() throws SQLException {
+        try (Session session = em.openSession()) {
+            User user = newUser();
+            session.save(user);
+            session.find(User.class, user.getId());
+            session.delete(user);
+        }
+        assertEquals(Arrays.asList(Operation.SAVE, Operation.FIND, Operation.DELETE),
+                events.stream().map(OperationEvent::getOperation).collect(Collectors.toList()));
+        assertTrue(events.get(0).getAcquireNanos() > 0);
+        assertEquals(0, events.get(1).getAcquireNanos());
+        assertEquals("The entity saved is found in the identity map", 0, events.get(1).getStatements());
+        assertEquals("Ada".length() + "Lovelace".length() + "ada@example.com".length() + 8, events.get(0).getBoundBytes());
+        assertEquals(8, events.get(2).getBoundBytes());
+    }
+
+    @Test
+    public void testFailedOperation() {
+        User user = newUser();
+        user.setFirstName(null);
+        try {
+            em.save(user);
+            fail("The insert of a null first name should fail");
+        } catch (SQLException e) {
+            assertEquals(1, events.size());
+            assertSame(e, events.get(0).getFailure().get());
+        }
+    }
+
+    @Test
+    public void testMetricsListener() throws SQLException {
+        MetricsListener metrics = new MetricsListener();
+        BasicEntityManager measured = BasicEntityManager.builder(dataSource, CLASSES).listener(metrics).build();
+        for (int i = 0; i < 10; i++) {
+            measured.find(User.class, (long) (i % 3));
+        }
+        measured.findAll(User.class);
+
+        MetricsListener.OperationStats find = metrics.getStats(Operation.FIND);
+        assertEquals(10, find.getCount());
+        assertEquals(10, find.getStatements());
+        assertEquals(10, find.getRows());
+        assertEquals(80, find.getBoundBytes());
+        assertEquals(10, find.getTotal().getCount());
+        assertEquals(10, find.getAcquire().getCount());
+        assertTrue(find.getExecute().getValueAtPercentile(50) > 0);
+        assertTrue(find.getTotal().getMax() >= find.getExecute().getMax());
+        assertEquals(3, metrics.getStats(Operation.FIND_ALL).getRows());
+        assertEquals(0, metrics.getStats(Operation.SAVE).getCount());
+    }
+
+    @Test
+    public void testLoggingIsOptional() throws SQLException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(console, true));
+        try {
+            BasicEntityManager silent = BasicEntityManager.create(dataSource, CLASSES);
+            User user = newUser();
+            silent.save(user);
+            silent.find(User.class, user.getId());
+            silent.delete(user);
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals("", console.toString());
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        BasicEntityManager logged = BasicEntityManager.builder(dataSource, CLASSES)
+                .listener(new LoggingListener(new PrintStream(log, true)))
+                .build();
+        logged.find(User.class, 0L);
+        assertTrue(log.toString(), log.toString().startsWith("SELECT"));
+        assertTrue(log.toString(), log.toString().contains(" us)"));
+    }
+
+    @Test
+    public void testListenerFailureIsLogged() throws SQLException {
+        Logger logger = Logger.getLogger(EntityManagerListener.class.getName());
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        PrintStream err = System.err;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(console, true));
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        try {
+            BasicEntityManager failing = BasicEntityManager.builder(dataSource, CLASSES)
+                    .listener(new EntityManagerListener() {
+                        @Override
+                        public void onOperation(OperationEvent event) {
+                            throw new IllegalStateException("Listener failure");
+                        }
+                    })
+                    .build();
+            assertTrue("The operation is not failed by the listener", failing.find(User.class, 0L).isPresent());
+        } finally {
+            logger.setUseParentHandlers(true);
+            logger.removeHandler(handler);
+            System.setErr(err);
+        }
+        assertEquals(1, records.size());
+        assertEquals(Level.WARNING, records.get(0).getLevel());
+        assertEquals("Listener failure", records.get(0).getThrown().getMessage());
+        assertEquals("", console.toString());
+    }
+
+    private static User newUser() {
+        User user = new User();
+        user.setFirstName("Ada");
+        user.setLastName("Lovelace");
+        user.setEmail("ada@example.com");
+        user.setBirthDate(LocalDate.of(1815, 12, 10));
+        return user;
+    }
+}
@@ -0,0 +1,83 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.lib.TypeCodec;
+import fr.epsi.orm.myorm.lib.TypeCodecRegistry;
+import fr.epsi.orm.myorm.lib.TypeCodecs;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+public class EntityMapperTest {
+
+    @Test
+    public void testGeneratedMapperIsUsed() {
+        EntityMapper<User> mapper = MappingHelper.getMapper(EntityMetadata.of(User.class));
+        assertEquals("fr.epsi.orm.myorm.lib.sample.User_Mapper", mapper.getClass().getName());
+        assertEquals(User.class, mapper.getEntityClass());
+    }
+
+    @Test
+    public void testGeneratedSqlMatchesReflectiveSql() {
+        EntityMetadata<User> metadata = EntityMetadata.of(User.class);
+        EntityMapper<User> generated = MappingHelper.getMapper(metadata);
+        EntityMapper<User> reflective = new ReflectiveEntityMapper<>(metadata);
+
+        assertEquals(reflective.getSqlTemplates(), generated.getSqlTemplates());
+    }
+
+    @Test
+    public void testFallbackOnReflectiveMapper() {
+        EntityMapper<Item> mapper = MappingHelper.getMapper(EntityMetadata.of(Item.class));
+        assertTrue(mapper instanceof ReflectiveEntityMapper);
+        assertEquals("SELECT code, label FROM Item", mapper.getSqlTemplates().getSelectAll());
+    }
+
+    @Test
+    public void testCustomCodecUsesReflectiveMapper() {
+        TypeCodecRegistry codecs = TypeCodecRegistry.defaults().with(String.class, TypeCodecs.STRING);
+        assertFalse(codecs.isCustom(String.class));
+
+        codecs = TypeCodecRegistry.defaults().with(String.class, new TrimmedStringCodec());
+        assertTrue(codecs.isCustom(String.class));
+        EntityMapper<User> mapper = MappingHelper.getMapper(EntityMetadata.of(User.class, codecs), codecs);
+        assertTrue(mapper instanceof ReflectiveEntityMapper);
+    }
+
+    static class TrimmedStringCodec implements TypeCodec<String> {
+        @Override
+        public Class<String> getType() {
+            return String.class;
+        }
+
+        @Override
+        public int getSqlType() {
+            return Types.VARCHAR;
+        }
+
+        @Override
+        public String read(ResultSet rs, int index) throws SQLException {
+            String value = rs.getString(index);
+            return value == null ? null : value.trim();
+        }
+
+        @Override
+        public void write(PreparedStatement statement, int index, String value) throws SQLException {
+            statement.setString(index, value.trim());
+        }
+    }
+
+    @Entity
+    static class Item {
+        @Id
+        private String code;
+        private String label;
+    }
+}
@@ -0,0 +1,73 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.GenerationType;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntityMetadataTest {
+
+    @Test
+    public void testReadUser() {
+        EntityMetadata<User> metadata = EntityMetadata.of(User.class);
+
+        assertEquals("users", metadata.getTableName());
+        assertEquals("id", metadata.getIdColumn().getName());
+        assertEquals(GenerationType.IDENTITY, metadata.getGeneration());
+        assertTrue(metadata.isIdGenerated());
+
+        List<String> columns = metadata.getColumns().stream().map(ColumnMetadata::getName).collect(Collectors.toList());
+        assertEquals(Arrays.asList("id", "first_name", "last_name", "email", "birthDate"), columns);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testColumnsAreImmutable() {
+        EntityMetadata.of(User.class).getColumns().clear();
+    }
+
+    @Test
+    public void testNormalizeId() {
+        EntityMetadata<User> metadata = EntityMetadata.of(User.class);
+
+        assertEquals(1L, metadata.normalizeId(1));
+        assertEquals(1L, metadata.normalizeId((short) 1));
+        assertEquals(1L, metadata.normalizeId(new BigDecimal("1.0")));
+        assertNull(metadata.normalizeId(null));
+        assertEquals(Arrays.asList(2L, null), metadata.normalizeIds(Arrays.asList(2, null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectIdNotConvertible() {
+        EntityMetadata.of(User.class).normalizeId(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectIdOfOtherType() {
+        EntityMetadata.of(User.class).normalizeId("1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectNotEntity() {
+        EntityMetadata.of(String.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectFieldWithoutCodec() {
+        EntityMetadata.of(Unsupported.class);
+    }
+
+    @Entity
+    static class Unsupported {
+        @Id
+        private Long id;
+        private StringBuilder value;
+    }
+}
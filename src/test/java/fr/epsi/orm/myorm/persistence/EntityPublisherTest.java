@@ -0,0 +1,189 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class EntityPublisherTest {
+
+    static HikariDataSource dataSource;
+    static BasicEntityManager em;
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("publisher-test")
+                .addScripts("init-db.sql")
+                .build());
+        dataSource.setMaximumPoolSize(1);
+        em = BasicEntityManager.create(dataSource, Stream.of(User.class).collect(Collectors.toSet()));
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testRowsAreReadOnDemand() throws SQLException {
+        RecordingSubscriber<User> subscriber = new RecordingSubscriber<>();
+        em.publish(User.class, Runnable::run).subscribe(subscriber);
+        assertNotNull(subscriber.subscription);
+        assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.received.size());
+        assertFalse(subscriber.completed);
+        assertEquals(1, dataSource.getHikariPoolMXBean().getActiveConnections());
+
+        subscriber.subscription.request(5);
+        assertEquals(3, subscriber.received.size());
+        assertTrue(subscriber.completed);
+        assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+        assertEquals("Linus", subscriber.received.get(0).getFirstName());
+    }
+
+    @Test
+    public void testNoRowIsReadBeyondDemand() {
+        AtomicInteger read = new AtomicInteger();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        new EntityPublisher<>(() -> IntStream.range(0, 3).boxed().peek(row -> read.incrementAndGet()), Runnable::run)
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.received.size());
+        assertEquals("The cursor should not move past the demand", 2, read.get());
+
+        subscriber.subscription.request(1);
+        assertEquals(3, read.get());
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.completed);
+        assertEquals(3, subscriber.received.size());
+    }
+
+    @Test
+    public void testRequestFromOnNext() {
+        RecordingSubscriber<User> subscriber = new RecordingSubscriber<User>() {
+            @Override
+            public void onNext(User item) {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        em.publish(User.class, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(3, subscriber.received.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testCancelReleasesConnection() throws SQLException {
+        RecordingSubscriber<User> subscriber = new RecordingSubscriber<>();
+        em.publish(User.class, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.received.size());
+        assertFalse(subscriber.completed);
+        assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+        assertEquals(3, em.findAll(User.class).size());
+    }
+
+    @Test
+    public void testInvalidRequestSignalsError() {
+        RecordingSubscriber<User> subscriber = new RecordingSubscriber<>();
+        em.publish(User.class, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void testQueryErrorSignalsError() {
+        SQLException failure = new SQLException("Connection refused");
+        RecordingSubscriber<User> subscriber = new RecordingSubscriber<>();
+        new EntityPublisher<User>(() -> { throw failure; }, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertSame(failure, subscriber.error);
+        assertTrue(subscriber.received.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPublishUnmanagedClass() {
+        em.publish(String.class, Runnable::run);
+    }
+
+    @Test
+    public void testPublishOnExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            RecordingSubscriber<User> subscriber = new RecordingSubscriber<User>() {
+                @Override
+                public void onComplete() {
+                    super.onComplete();
+                    done.countDown();
+                }
+            };
+            em.publish(User.class, executor).subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(3, subscriber.received.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+        final List<T> received = new ArrayList<>();
+        volatile Flow.Subscription subscription;
+        volatile boolean completed = false;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription aSubscription) {
+            subscription = aSubscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package fr.epsi.orm.myorm.persistence;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueOf(index - 1));
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_500, histogram.getMean(), 1);
+        assertWithin(50_000_000, histogram.getValueAtPercentile(50));
+        assertWithin(99_000_000, histogram.getValueAtPercentile(99));
+        assertWithin(100_000_000, histogram.getMax());
+        assertWithin(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long max = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long value = (long) Math.exp(random.nextDouble() * 27);
+            max = Math.max(max, value);
+            histogram.record(value);
+        }
+        assertWithin(max, histogram.getMax());
+    }
+
+    @Test
+    public void testEmptyAndOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyHistogram().getValueAtPercentile(101);
+    }
+
+    /**
+     * The value read is the highest value of the bucket of the expected value
+     */
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " expected, got " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+}
@@ -0,0 +1,58 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ProjectionMapperTest {
+
+    public static class UserName {
+        private String firstName;
+        private String lastName;
+    }
+
+    public interface UserContact {
+        long getId();
+
+        String email();
+    }
+
+    public interface WrongType {
+        LocalDate getEmail();
+    }
+
+    public interface UnknownProperty {
+        String getNickname();
+    }
+
+    @Test
+    public void testClassProjectionSelectsItsFields() {
+        ProjectionMapper<UserName> mapper = ProjectionMapper.of(EntityMetadata.of(User.class), UserName.class);
+
+        assertEquals("SELECT first_name, last_name FROM users", mapper.getSelectAll());
+        assertEquals("SELECT first_name, last_name FROM users WHERE id = :id", mapper.getSelectById());
+    }
+
+    @Test
+    public void testInterfaceProjectionSelectsItsGetters() {
+        ProjectionMapper<UserContact> mapper = ProjectionMapper.of(EntityMetadata.of(User.class), UserContact.class);
+
+        assertEquals(Arrays.asList("email", "id"),
+                mapper.getColumns().stream().map(ColumnMetadata::getName).sorted().collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectPropertyOfAnotherType() {
+        ProjectionMapper.of(EntityMetadata.of(User.class), WrongType.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectUnknownProperty() {
+        ProjectionMapper.of(EntityMetadata.of(User.class), UnknownProperty.class);
+    }
+}
@@ -0,0 +1,117 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+    private final EntityMetadata<User> metadata = EntityMetadata.of(User.class);
+
+    @Test
+    public void testResultIsCachedAndUnmodifiable() throws SQLException {
+        QueryCache cache = new QueryCache();
+        AtomicInteger queries = new AtomicInteger();
+        QueryCache.Loader<User> loader = () -> {
+            queries.incrementAndGet();
+            return new ArrayList<>(Collections.singletonList(new User()));
+        };
+
+        List<User> first = cache.get(metadata, loader);
+        assertSame(first, cache.get(metadata, loader));
+        assertEquals(1, queries.get());
+        assertEquals(new CacheStats(1, 1, 0), cache.stats());
+        try {
+            first.clear();
+            fail("The cached result should be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteInvalidates() throws SQLException {
+        QueryCache cache = new QueryCache();
+        AtomicInteger queries = new AtomicInteger();
+        QueryCache.Loader<User> loader = () -> {
+            queries.incrementAndGet();
+            return new ArrayList<>();
+        };
+        cache.get(metadata, loader);
+        cache.invalidate(metadata);
+        cache.get(metadata, loader);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void testResultReadDuringWriteIsNotKept() throws SQLException {
+        QueryCache cache = new QueryCache();
+        AtomicInteger queries = new AtomicInteger();
+        cache.get(metadata, () -> {
+            queries.incrementAndGet();
+            cache.invalidate(metadata);
+            return new ArrayList<>();
+        });
+        cache.get(metadata, () -> {
+            queries.incrementAndGet();
+            return new ArrayList<>();
+        });
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws SQLException {
+        QueryCache cache = new QueryCache();
+        try {
+            cache.get(metadata, () -> {
+                throw new SQLException("Connection lost");
+            });
+            fail("The failure should be thrown");
+        } catch (SQLException e) {
+            assertEquals("Connection lost", e.getMessage());
+        }
+        assertTrue(cache.get(metadata, ArrayList::new).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsed() throws Exception {
+        QueryCache cache = new QueryCache();
+        int callers = 8;
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<User>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> cache.get(metadata, () -> {
+                    queries.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return new ArrayList<>();
+                })));
+            }
+            while (cache.stats().getRequestCount() < callers) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            List<User> first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<List<User>> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, queries.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SecondLevelCacheTest {
+
+    private final EntityMetadata<User> metadata = EntityMetadata.of(User.class);
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setFirstName("User " + id);
+        user.setBirthDate(LocalDate.of(1970, 1, 1));
+        return user;
+    }
+
+    @Test
+    public void testHitReturnsCopy() {
+        SecondLevelCache cache = new SecondLevelCache(10, 0);
+        User user = user(1);
+        cache.put(metadata, user, cache.generation(User.class));
+        user.setFirstName("Changed");
+
+        User cached = cache.get(metadata, 1L);
+        assertNotSame(user, cached);
+        assertEquals("User 1", cached.getFirstName());
+        assertNull(cache.get(metadata, 2L));
+        assertEquals(new CacheStats(1, 1, 0), cache.stats());
+    }
+
+    @Test
+    public void testArraysAreCopied() {
+        EntityMetadata<Document> documents = EntityMetadata.of(Document.class);
+        SecondLevelCache cache = new SecondLevelCache(10, 0);
+        Document document = new Document();
+        document.id = 1L;
+        document.content = new byte[]{1, 2, 3};
+        cache.put(documents, document, cache.generation(Document.class));
+        document.content[0] = 9;
+
+        Document cached = cache.get(documents, 1L);
+        assertArrayEquals(new byte[]{1, 2, 3}, cached.content);
+        cached.content[1] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(documents, 1L).content);
+    }
+
+    @Test
+    public void testBoundedByEntries() {
+        SecondLevelCache cache = new SecondLevelCache(100, 0);
+        for (long id = 0; id < 1000; id++) {
+            cache.put(metadata, user(id), cache.generation(User.class));
+            cache.get(metadata, 0L);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.stats().getEvictionCount());
+        assertNotNull("The most recently used entry is kept", cache.get(metadata, 0L));
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        SecondLevelCache cache = new SecondLevelCache(10, TimeUnit.MILLISECONDS.toNanos(20));
+        cache.put(metadata, user(1), cache.generation(User.class));
+        assertNotNull(cache.get(metadata, 1L));
+        Thread.sleep(40);
+        assertNull(cache.get(metadata, 1L));
+        assertEquals(1, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testWriteInvalidates() {
+        SecondLevelCache cache = new SecondLevelCache(10, 0);
+        User user = user(1);
+        cache.put(metadata, user, cache.generation(User.class));
+        cache.invalidate(metadata, user);
+        assertNull(cache.get(metadata, 1L));
+    }
+
+    @Test
+    public void testStaleReadIsNotStored() {
+        SecondLevelCache cache = new SecondLevelCache(10, 0);
+        long generation = cache.generation(User.class);
+        cache.invalidate(metadata, user(1));
+        cache.put(metadata, user(1), generation);
+        assertEquals(0, cache.size());
+    }
+
+    @Entity
+    static class Document {
+        @Id
+        Long id;
+        byte[] content;
+    }
+}
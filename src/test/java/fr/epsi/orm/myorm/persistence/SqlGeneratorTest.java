@@ -0,0 +1,64 @@
+package fr.epsi.orm.myorm.persistence;
+
+import fr.epsi.orm.myorm.annotation.Column;
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class SqlGeneratorTest {
+
+    @Test
+    public void testUserTemplates() {
+        SqlTemplates templates = SqlGenerator.generateTemplates(EntityMetadata.of(User.class));
+
+        assertEquals("SELECT id, first_name, last_name, email, birthDate FROM users WHERE id = :id", templates.getSelectById());
+        assertEquals("SELECT id, first_name, last_name, email, birthDate FROM users", templates.getSelectAll());
+        assertEquals("INSERT INTO users (first_name, last_name, email, birthDate) VALUES (:firstName, :lastName, :email, :birthDate)", templates.getInsert());
+        assertEquals("UPDATE users SET first_name = :firstName, last_name = :lastName, email = :email, birthDate = :birthDate WHERE id = :id", templates.getUpdate());
+        assertEquals("DELETE FROM users WHERE id = :id", templates.getDelete());
+    }
+
+    @Test
+    public void testSelectByIds() {
+        assertEquals("SELECT id, first_name, last_name, email, birthDate FROM users WHERE id IN (:id0, :id1, :id2)",
+                SqlGenerator.generateSelectByIdsSql(EntityMetadata.of(User.class), 3));
+    }
+
+    @Test
+    public void testSelectPage() {
+        assertEquals("SELECT id, first_name, last_name, email, birthDate FROM users ORDER BY id",
+                SqlGenerator.generateSelectPageSql(EntityMetadata.of(User.class), true));
+        assertEquals("SELECT id, first_name, last_name, email, birthDate FROM users WHERE id > :id ORDER BY id",
+                SqlGenerator.generateSelectPageSql(EntityMetadata.of(User.class), false));
+    }
+
+    @Test
+    public void testUpdateOfSomeColumns() {
+        BitSet columns = new BitSet();
+        columns.set(0);
+        columns.set(3);
+        assertEquals("UPDATE users SET email = :email WHERE id = :id",
+                SqlGenerator.generateUpdateSql(EntityMetadata.of(User.class), columns));
+    }
+
+    @Test
+    public void testAssignedIdIsInserted() {
+        SqlTemplates templates = SqlGenerator.generateTemplates(EntityMetadata.of(Country.class));
+
+        assertEquals("INSERT INTO countries (code, country_name) VALUES (:code, :name)", templates.getInsert());
+        assertEquals("UPDATE countries SET country_name = :name WHERE code = :code", templates.getUpdate());
+    }
+
+    @Entity(table = "countries")
+    static class Country {
+        @Id
+        private String code;
+        @Column(name = "country_name")
+        private String name;
+    }
+}
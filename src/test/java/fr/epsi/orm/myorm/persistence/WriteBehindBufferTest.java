@@ -0,0 +1,368 @@
+package fr.epsi.orm.myorm.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.epsi.orm.myorm.annotation.Column;
+import fr.epsi.orm.myorm.annotation.Entity;
+import fr.epsi.orm.myorm.annotation.GenerationType;
+import fr.epsi.orm.myorm.annotation.Id;
+import fr.epsi.orm.myorm.lib.sample.User;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static fr.epsi.orm.myorm.persistence.WriteBehindBuffer.Kind.*;
+import static org.junit.Assert.*;
+
+public class WriteBehindBufferTest {
+
+    static HikariDataSource dataSource;
+    static BasicEntityManager em;
+    static final Set<Class<?>> CLASSES = Stream.of(User.class).collect(Collectors.toSet());
+
+    @BeforeClass
+    public static void beforeClass() {
+        dataSource = new HikariDataSource();
+        dataSource.setDataSource(new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("write-behind-test")
+                .addScripts("init-db.sql")
+                .build());
+        em = BasicEntityManager.create(dataSource, CLASSES);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        dataSource.close();
+    }
+
+    @After
+    public void afterTest() throws SQLException {
+        for (User user : em.findAll(User.class)) {
+            if (user.getId() > 2) {
+                em.delete(user);
+            }
+        }
+    }
+
+    @Test
+    public void testCoalesce() {
+        Object first = new Object();
+        Object second = new Object();
+        assertKind(INSERT, second, coalesce(INSERT, first, UPDATE, second));
+        assertNull(WriteBehindBuffer.coalesce(new WriteBehindBuffer.PendingWrite(INSERT, first), new WriteBehindBuffer.PendingWrite(DELETE, second)));
+        assertKind(UPDATE, second, coalesce(UPDATE, first, UPDATE, second));
+        assertKind(DELETE, second, coalesce(UPDATE, first, DELETE, second));
+        assertKind(DELETE, first, coalesce(DELETE, first, UPDATE, second));
+        assertKind(REPLACE, second, coalesce(DELETE, first, INSERT, second));
+        assertKind(REPLACE, second, coalesce(REPLACE, first, UPDATE, second));
+        assertKind(DELETE, second, coalesce(REPLACE, first, DELETE, second));
+    }
+
+    @Test
+    public void testWritesAreQueuedUntilFlush() throws SQLException {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build()) {
+            List<User> users = newUsers(3);
+            writeBehind.saveAll(users);
+            assertEquals(3, writeBehind.getPendingWrites());
+            assertEquals(3, em.findAll(User.class).size());
+            assertNull(users.get(0).getId());
+
+            assertEquals(3, writeBehind.flush());
+            assertEquals(0, writeBehind.getPendingWrites());
+            assertEquals(6, em.findAll(User.class).size());
+            assertNotNull(users.get(0).getId());
+
+            User user = users.get(1);
+            user.setEmail("first@example.com");
+            writeBehind.update(user);
+            user.setEmail("second@example.com");
+            writeBehind.update(user);
+            assertTrue(writeBehind.delete(users.get(2)));
+            assertEquals(2, writeBehind.getPendingWrites());
+
+            assertEquals(2, writeBehind.flush());
+            assertEquals("second@example.com", em.find(User.class, user.getId()).get().getEmail());
+            assertFalse(em.find(User.class, users.get(2).getId()).isPresent());
+        }
+    }
+
+    @Test
+    public void testNewEntitiesAreQueuedByInstance() throws SQLException {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, Stream.of(User.class, Person.class).collect(Collectors.toSet()))
+                .writeBehind(100, Duration.ofHours(1))
+                .build()) {
+            Person first = new Person();
+            first.firstName = "Ada";
+            Person second = new Person();
+            second.firstName = "Grace";
+            writeBehind.save(first);
+            writeBehind.save(second);
+            assertEquals("The entities without id yet are not coalesced", 2, writeBehind.getPendingWrites());
+
+            User user = newUsers(1).get(0);
+            writeBehind.save(user);
+            writeBehind.save(user);
+            user.setEmail("updated@example.com");
+            writeBehind.update(user);
+            assertEquals(3, writeBehind.getPendingWrites());
+
+            User deleted = newUsers(1).get(0);
+            writeBehind.save(deleted);
+            assertTrue(writeBehind.delete(deleted));
+            assertEquals(3, writeBehind.getPendingWrites());
+
+            assertEquals(3, writeBehind.flush());
+            assertNotEquals(first.id, second.id);
+            assertEquals(3 + 3, em.findAll(User.class).size());
+            assertEquals("updated@example.com", em.find(User.class, user.getId()).get().getEmail());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectUpdateWithoutId() throws SQLException {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build()) {
+            writeBehind.update(newUsers(1).get(0));
+        }
+    }
+
+    @Test
+    public void testFlushOnBatchSize() throws Exception {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .batchSize(10)
+                .writeBehind(1000, Duration.ofHours(1))
+                .build()) {
+            writeBehind.saveAll(newUsers(25));
+            awaitRows(3 + 10);
+        }
+        assertEquals(3 + 25, em.findAll(User.class).size());
+    }
+
+    @Test
+    public void testFlushOnInterval() throws Exception {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofMillis(20))
+                .build()) {
+            writeBehind.save(newUsers(1).get(0));
+            awaitRows(4);
+        }
+    }
+
+    @Test
+    public void testCloseFlushesAndRejectsWrites() throws SQLException {
+        BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build();
+        writeBehind.saveAll(newUsers(2));
+        writeBehind.close();
+        assertEquals(5, em.findAll(User.class).size());
+        try {
+            writeBehind.save(newUsers(1).get(0));
+            fail("The write should be rejected after close");
+        } catch (IllegalStateException e) {
+            assertEquals(0, writeBehind.getPendingWrites());
+        }
+    }
+
+    @Test
+    public void testFailedFlushKeepsFailedWrites() throws SQLException {
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build()) {
+            List<User> users = newUsers(2);
+            users.get(1).setFirstName(null);
+            writeBehind.saveAll(users);
+            try {
+                writeBehind.flush();
+                fail("The insert of a null first name should fail");
+            } catch (SQLException e) {
+                assertEquals(1, writeBehind.getPendingWrites());
+                assertEquals("The valid write is not held back", 4, em.findAll(User.class).size());
+            }
+            users.get(1).setFirstName("Grace");
+            assertEquals(1, writeBehind.flush());
+            assertEquals(5, em.findAll(User.class).size());
+        }
+    }
+
+    @Test
+    public void testWriteViolatingConstraintIsGivenUp() throws Exception {
+        List<FailedWrite> failedWrites = new CopyOnWriteArrayList<>();
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .writeBehindFailures(2, failedWrites::add)
+                .build()) {
+            List<User> users = newUsers(4);
+            User poison = users.get(2);
+            poison.setFirstName(null);
+            writeBehind.saveAll(users);
+            for (int attempt = 1; attempt <= 2; attempt++) {
+                try {
+                    writeBehind.flush();
+                    fail("The insert of a null first name should fail");
+                } catch (SQLException e) {
+                    assertEquals(3 + 3, em.findAll(User.class).size());
+                }
+            }
+            assertEquals(0, writeBehind.getPendingWrites());
+            assertEquals(1, failedWrites.size());
+            FailedWrite failed = failedWrites.get(0);
+            assertSame(poison, failed.getEntity());
+            assertEquals(Operation.SAVE, failed.getOperation());
+            assertEquals(2, failed.getAttempts());
+            assertTrue(failed.getFailure() instanceof SQLException);
+
+            writeBehind.save(newUsers(1).get(0));
+            assertEquals("The next flushes are not failed by the write given up", 1, writeBehind.flush());
+        }
+    }
+
+    @Test
+    public void testWritesAreKeptWithoutHandler() throws Exception {
+        BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .build();
+        User poison = newUsers(1).get(0);
+        poison.setFirstName(null);
+        writeBehind.save(poison);
+        for (int attempt = 1; attempt <= BasicEntityManager.DEFAULT_WRITE_BEHIND_MAX_ATTEMPTS + 1; attempt++) {
+            try {
+                writeBehind.flush();
+                fail("The insert of a null first name should fail");
+            } catch (SQLException e) {
+                assertEquals(1, writeBehind.getPendingWrites());
+            }
+        }
+        try {
+            writeBehind.close();
+            fail("The close should fail with a write left");
+        } catch (SQLException e) {
+            assertEquals(1, writeBehind.getPendingWrites());
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void testConnectionFailureIsNotAnAttempt() throws Exception {
+        AtomicBoolean down = new AtomicBoolean(true);
+        DataSource unavailable = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection") && down.get()) {
+                        throw new SQLTransientConnectionException("The database is down");
+                    }
+                    try {
+                        return method.invoke(dataSource, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        List<FailedWrite> failedWrites = new CopyOnWriteArrayList<>();
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(unavailable, CLASSES)
+                .writeBehind(100, Duration.ofHours(1))
+                .writeBehindFailures(1, failedWrites::add)
+                .build()) {
+            writeBehind.saveAll(newUsers(2));
+            for (int attempt = 1; attempt <= 3; attempt++) {
+                try {
+                    writeBehind.flush();
+                    fail("The flush should fail while the database is down");
+                } catch (SQLTransientConnectionException e) {
+                    assertEquals(2, writeBehind.getPendingWrites());
+                }
+            }
+            assertTrue(failedWrites.isEmpty());
+
+            down.set(false);
+            assertEquals(2, writeBehind.flush());
+            assertEquals(5, em.findAll(User.class).size());
+        }
+    }
+
+    @Test
+    public void testBackgroundFailureIsReported() throws Exception {
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        List<FailedWrite> failedWrites = new CopyOnWriteArrayList<>();
+        try (BasicEntityManager writeBehind = BasicEntityManager.builder(dataSource, CLASSES)
+                .writeBehind(100, Duration.ofMillis(20))
+                .writeBehindFailures(3, failedWrites::add)
+                .listener(new EntityManagerListener() {
+                    @Override
+                    public void onWriteBehindFailure(Exception failure) {
+                        failures.add(failure);
+                    }
+                })
+                .build()) {
+            User poison = newUsers(1).get(0);
+            poison.setFirstName(null);
+            writeBehind.save(poison);
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (failures.size() < 3) {
+                assertTrue("The failures were not reported in time", System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            assertEquals(1, failedWrites.size());
+            assertEquals(0, writeBehind.getPendingWrites());
+        }
+    }
+
+    private static WriteBehindBuffer.PendingWrite coalesce(WriteBehindBuffer.Kind previous, Object previousEntity,
+                                                           WriteBehindBuffer.Kind next, Object nextEntity) {
+        return WriteBehindBuffer.coalesce(new WriteBehindBuffer.PendingWrite(previous, previousEntity),
+                new WriteBehindBuffer.PendingWrite(next, nextEntity));
+    }
+
+    private static void assertKind(WriteBehindBuffer.Kind kind, Object entity, WriteBehindBuffer.PendingWrite write) {
+        assertEquals(kind, write.kind);
+        assertSame(entity, write.entity);
+    }
+
+    private static void awaitRows(int count) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (em.findAll(User.class).size() < count) {
+            assertTrue("The writes were not flushed in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<User> newUsers(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setFirstName("Ada" + i);
+            user.setLastName("Lovelace");
+            user.setEmail("ada" + i + "@example.com");
+            user.setBirthDate(LocalDate.of(1815, 12, 10));
+            users.add(user);
+        }
+        return users;
+    }
+
+    @Entity(table = "users")
+    static class Person {
+        @Id(generation = GenerationType.IDENTITY)
+        long id;
+        @Column(name = "first_name")
+        String firstName;
+    }
+}
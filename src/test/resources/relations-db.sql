@@ -0,0 +1,28 @@
+CREATE TABLE authors (
+  id BIGINT IDENTITY PRIMARY KEY,
+  name VARCHAR(30) NOT NULL
+);
+
+CREATE TABLE books (
+  id BIGINT IDENTITY PRIMARY KEY,
+  title VARCHAR(50) NOT NULL,
+  author_id BIGINT REFERENCES authors (id)
+);
+
+CREATE TABLE chapters (
+  id BIGINT IDENTITY PRIMARY KEY,
+  title VARCHAR(50) NOT NULL,
+  book BIGINT REFERENCES books (id)
+);
+
+INSERT INTO authors (name) VALUES ('Ursula Le Guin');
+INSERT INTO authors (name) VALUES ('Frank Herbert');
+INSERT INTO authors (name) VALUES ('Iain Banks');
+
+INSERT INTO books (title, author_id) SELECT 'A Wizard of Earthsea', id FROM authors WHERE name = 'Ursula Le Guin';
+INSERT INTO books (title, author_id) SELECT 'The Lathe of Heaven', id FROM authors WHERE name = 'Ursula Le Guin';
+INSERT INTO books (title, author_id) SELECT 'Dune', id FROM authors WHERE name = 'Frank Herbert';
+
+INSERT INTO chapters (title, book) SELECT 'Warriors in the Mist', id FROM books WHERE title = 'A Wizard of Earthsea';
+INSERT INTO chapters (title, book) SELECT 'Book One', id FROM books WHERE title = 'Dune';
+INSERT INTO chapters (title, book) SELECT 'Book Two', id FROM books WHERE title = 'Dune';